@@ -18,9 +18,14 @@
  */
 package com.github.essobedo.appma.core;
 
+import com.github.essobedo.appma.core.io.MemoryArena;
 import com.github.essobedo.appma.exception.ApplicationException;
 import com.github.essobedo.appma.task.Task;
+import java.io.InputStream;
+import java.net.SocketAddress;
+import java.nio.channels.ServerSocketChannel;
 import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.function.Predicate;
 import javafx.stage.Stage;
 
@@ -53,6 +58,33 @@ public interface ApplicationManager {
      */
     Future<Void> upgrade();
 
+    /**
+     * Triggers the staging of the new version of the application. The patch is downloaded, verified if
+     * enabled and installed into its own folder by the application manager asynchronously while the
+     * current version keeps running, the staged version can then be applied with {@link #applyStaged()}.
+     * @return The {@link Future} representing the staging task, its result indicates whether a new version
+     * has been staged.
+     * @since 1.1.3
+     */
+    Future<Boolean> stage();
+
+    /**
+     * Triggers the replacement of the current version of the application with the staged version. As the staged
+     * version is already installed, the application is only stopped while the staged version is started.
+     * @return The {@link Future} representing the task.
+     * @since 1.1.3
+     */
+    Future<Void> applyStaged();
+
+    /**
+     * Triggers the replacement of the current version of the application with the most recent previous version
+     * that has been retained on disk. As the previous version is still installed with its configuration, the
+     * application is only stopped while the previous version is started, nothing is downloaded or extracted.
+     * @return The {@link Future} representing the rollback task.
+     * @since 1.1.3
+     */
+    Future<Void> rollback();
+
     /**
      * Callback allowing to notify the application manager that an application exit has been
      * requested.
@@ -66,4 +98,65 @@ public interface ApplicationManager {
      * @param predicate The predicate to test.
      */
     void setOnCloseRequestPredicate(Predicate<Void> predicate);
+
+    /**
+     * Gives the listening socket registered with the specified name. The socket is opened and bound by the
+     * application manager the first time it is requested, then the same socket is given to the next versions
+     * of the application, so that the connections received while the application is being upgraded are
+     * queued instead of being refused. The socket is owned by the application manager which closes it when it
+     * stops, so the application must not close it.
+     * @param name the name of the socket.
+     * @param address the address to which the socket is bound if it has to be opened.
+     * @return the listening socket registered with the specified name.
+     * @throws ApplicationException if the socket could not be opened or if the socket with the same name is
+     * already bound to another port.
+     * @since 1.1.3
+     */
+    ServerSocketChannel getServerSocketChannel(String name, SocketAddress address) throws ApplicationException;
+
+    /**
+     * Gives the snapshot with the specified name that the previous version of the application wrote into
+     * the {@link com.github.essobedo.appma.spi.StateWriter} provided to
+     * {@link com.github.essobedo.appma.spi.Manageable#exportState(com.github.essobedo.appma.spi.StateWriter)}.
+     * The snapshots are only available while the new version of the application is initialized and warmed up.
+     * @param name the name of the snapshot.
+     * @return a stream allowing to read the content of the snapshot, {@code null} if there is no snapshot
+     * with this name.
+     * @since 1.1.3
+     */
+    InputStream getState(String name);
+
+    /**
+     * Gives the off-heap memory arena registered with the specified name. The arena is mapped by the application
+     * manager to a file of the root folder the first time it is requested, then the same arena is given to the
+     * next versions of the application and its content is preserved when the application manager restarts, so
+     * that large data structures don't need to be rebuilt. The arena is owned by the application manager which
+     * writes its content into its file when it stops.
+     * @param name the name of the arena, only letters, digits, dots, dashes and underscores are allowed.
+     * @param size the size in bytes of the arena, the file is resized if its size is not the expected one.
+     * @return the memory arena registered with the specified name.
+     * @throws ApplicationException if the name is invalid, if the arena could not be mapped or if the arena
+     * has already been mapped with another size.
+     * @since 1.1.3
+     */
+    MemoryArena getMemoryArena(String name, long size) throws ApplicationException;
+
+    /**
+     * Gives the thread pool registered with the specified name. The threads are created and owned by the
+     * application manager and are kept for the next versions of the application, the tasks submitted by a
+     * version of the application are cancelled when it is destroyed, so the application doesn't need to shut
+     * down the thread pool. The tasks are executed with the classloader of the version of the application that
+     * submitted them as context classloader, this version is identified by the context classloader of the
+     * calling thread which is the classloader of the application when
+     * {@link com.github.essobedo.appma.spi.Manageable#init(ApplicationManager, String...)} is called. If the
+     * context classloader doesn't belong to a running version of the application, the tasks are bound to the
+     * current version. Shutting down the returned executor only affects the tasks of the calling version.
+     * @param name the name of the thread pool.
+     * @param poolSize the amount of threads to keep in the pool, the pool is enlarged if it has fewer threads.
+     * @return the thread pool registered with the specified name.
+     * @throws ApplicationException if the amount of threads is not positive, if the application manager has
+     * been stopped or if no version of the application is running.
+     * @since 1.1.3
+     */
+    ScheduledExecutorService getExecutor(String name, int poolSize) throws ApplicationException;
 }
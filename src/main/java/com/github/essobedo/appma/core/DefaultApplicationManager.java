@@ -20,14 +20,28 @@ package com.github.essobedo.appma.core;
 
 import com.github.essobedo.appma.core.config.ConfigFromProperties;
 import com.github.essobedo.appma.core.config.ConfigurationFactory;
-import com.github.essobedo.appma.core.io.Folder;
+import com.github.essobedo.appma.core.config.StartupRecord;
+import com.github.essobedo.appma.core.io.ContentStore;
+import com.github.essobedo.appma.core.io.MemoryArena;
+import com.github.essobedo.appma.core.loader.ClassList;
+import com.github.essobedo.appma.core.loader.ClassListRecorder;
+import com.github.essobedo.appma.core.loader.ClassLoadingListener;
+import com.github.essobedo.appma.core.loader.ClassLoadingProfiler;
+import com.github.essobedo.appma.core.loader.ClassPreloader;
+import com.github.essobedo.appma.core.loader.GuestClassLoader;
 import com.github.essobedo.appma.core.progress.LogProgress;
 import com.github.essobedo.appma.core.progress.StatusBar;
+import com.github.essobedo.appma.core.util.ClassVerifier;
 import com.github.essobedo.appma.core.util.Classpath;
+import com.github.essobedo.appma.core.util.SharedArchive;
 import com.github.essobedo.appma.core.zip.UnzipTask;
 import com.github.essobedo.appma.exception.ApplicationException;
+import com.github.essobedo.appma.exception.InvalidPatchException;
 import com.github.essobedo.appma.exception.TaskInterruptedException;
+import com.github.essobedo.appma.exception.UpgradeAbortedException;
+import com.github.essobedo.appma.i18n.Localization;
 import com.github.essobedo.appma.spi.Manageable;
+import com.github.essobedo.appma.spi.QuiesceReport;
 import com.github.essobedo.appma.spi.VersionManager;
 import com.github.essobedo.appma.task.Task;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
@@ -35,17 +49,28 @@ import java.io.Closeable;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
+import java.lang.management.CompilationMXBean;
+import java.lang.management.ManagementFactory;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
+import java.net.SocketAddress;
 import java.net.URL;
-import java.net.URLClassLoader;
+import java.nio.channels.ServerSocketChannel;
 import java.nio.file.Files;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.ServiceLoader;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Predicate;
 import java.util.logging.Level;
@@ -77,11 +102,192 @@ class DefaultApplicationManager implements ApplicationManager {
     private static final String COULD_NOT_UPGRADE_ILLEGAL_STATE =
         "Could not upgrade the application as the state is illegal: %s";
 
+    /**
+     * The name of the system parameter allowing to enable the verification of the classes of a
+     * new version before destroying the current version.
+     */
+    private static final String PARAM_VERIFY = "essobedo.appma.core.verify";
+
+    /**
+     * The name of the system parameter allowing to enable the profiling of the class loading
+     * of the application while it is created and initialized. The value is the path of the file
+     * in which the collected data is written, relative to the root folder if not absolute.
+     */
+    private static final String PARAM_PROFILE = "essobedo.appma.core.profile";
+
+    /**
+     * The maximum amount of classes and classpath entries to log once the class loading has been profiled.
+     */
+    private static final int PROFILE_REPORT_LIMIT = 20;
+
+    /**
+     * The name of the system parameter allowing to enable the recording of the classes loaded while
+     * the application is created and initialized in order to preload them in parallel on the next start.
+     */
+    private static final String PARAM_PRELOAD = "essobedo.appma.core.preload";
+
+    /**
+     * The extension of the file in which the list of classes to preload is stored.
+     */
+    private static final String CLASS_LIST_EXTENSION = ".classlist";
+
+    /**
+     * The name of the system parameter allowing to enable the generation of an application class data
+     * sharing archive of the application manager for the installed version of the application.
+     */
+    private static final String PARAM_CDS = "essobedo.appma.core.cds";
+
+    /**
+     * The extension of the application class data sharing archive.
+     */
+    private static final String ARCHIVE_EXTENSION = ".jsa";
+
+    /**
+     * The name of the system parameter allowing to indicate whether the application is expected to be
+     * a Java FX application, in order to start the Java FX toolkit while the application is created.
+     */
+    private static final String PARAM_JAVAFX = "essobedo.appma.core.javafx";
+
+    /**
+     * The extension of the file in which the startup record is stored.
+     */
+    private static final String STARTUP_RECORD_EXTENSION = ".startup";
+
+    /**
+     * The key of the startup record indicating whether the application is a Java FX application.
+     */
+    private static final String RECORD_JAVAFX = "javafx";
+
+    /**
+     * The key of the startup record containing the name of the class of the application that accepted the
+     * arguments of the last launch.
+     */
+    private static final String RECORD_PROVIDER = "provider";
+
+    /**
+     * The key of the startup record containing the hash code of the arguments of the last launch.
+     */
+    private static final String RECORD_ARGUMENTS = "provider.arguments";
+
+    /**
+     * The key of the startup record containing the fingerprint of the classpath from which the class of the
+     * application has been loaded on the last launch.
+     */
+    private static final String RECORD_CLASSPATH = "provider.classpath";
+
+    /**
+     * The name of the system parameter allowing to enable the blue/green upgrades, in which case the new
+     * version of the application is created and initialized while the current version is still running
+     * if the application supports it.
+     */
+    private static final String PARAM_BLUE_GREEN = "essobedo.appma.core.bluegreen";
+
+    /**
+     * The name of the system parameter allowing to install each new version of the application into its
+     * own folder and to switch to it atomically instead of patching the installation folder in place.
+     */
+    private static final String PARAM_VERSIONED = "essobedo.appma.core.versioned";
+
+    /**
+     * The name of the system parameter allowing to apply the staged version of the application at launch.
+     */
+    private static final String PARAM_STAGED_AUTO = "essobedo.appma.core.staged.auto";
+
+    /**
+     * The name of the sub folder of the internal folder containing the files to which the memory arenas
+     * are mapped.
+     */
+    private static final String ARENAS_FOLDER = "arenas";
+
+    /**
+     * The name of the sub folder of the internal folder into which the patches are downloaded and extracted
+     * by default.
+     */
+    private static final String STAGING_FOLDER = "staging";
+
+    /**
+     * The name of the system parameter allowing to define the folder into which the patches are downloaded
+     * and extracted.
+     */
+    private static final String PARAM_STAGING = "essobedo.appma.core.staging";
+
+    /**
+     * The prefix of the names of the files and folders created into the staging folder.
+     */
+    private static final String STAGING_PREFIX = "upgrade";
+
+    /**
+     * The name of the file of the internal folder containing the journal of the upgrade in progress.
+     */
+    private static final String JOURNAL = "journal";
+
+    /**
+     * The name of the system parameter allowing to define the maximum time in milliseconds given to the
+     * application to complete its work in progress before being destroyed.
+     */
+    private static final String PARAM_QUIESCE_TIMEOUT = "essobedo.appma.core.quiesce.timeout";
+
+    /**
+     * The default maximum time in milliseconds given to the application to complete its work in progress.
+     */
+    private static final long DEFAULT_QUIESCE_TIMEOUT = 10000L;
+
+    /**
+     * The time in milliseconds that the application manager waits after the deadline of the quiesce phase
+     * or of the warm-up phase.
+     */
+    private static final long GRACE_PERIOD = 500L;
+
+    /**
+     * The name of the system parameter allowing to define the maximum time in milliseconds given to the
+     * application to warm up once initialized, the warm-up phase is skipped if it is not positive.
+     */
+    private static final String PARAM_WARMUP_TIMEOUT = "essobedo.appma.core.warmup.timeout";
+
+    /**
+     * The default maximum time in milliseconds given to the application to warm up.
+     */
+    private static final long DEFAULT_WARMUP_TIMEOUT = 5000L;
+
+    /**
+     * The name of the system parameter allowing to enable the guarded upgrades, in which case the previous
+     * installation is kept until the new version has been started and stayed healthy during the health window,
+     * otherwise the previous version is restored automatically.
+     */
+    private static final String PARAM_GUARDED = "essobedo.appma.core.guarded";
+
+    /**
+     * The name of the system parameter allowing to define the duration in milliseconds of the health window
+     * that follows the initialization of a new version in case of a guarded upgrade.
+     */
+    private static final String PARAM_HEALTH_WINDOW = "essobedo.appma.core.health.window";
+
+    /**
+     * The default duration in milliseconds of the health window.
+     */
+    private static final long DEFAULT_HEALTH_WINDOW = 10000L;
+
+    /**
+     * The name of the system parameter allowing to define the time in milliseconds between two calls to the
+     * health probe of the application, which is also the maximum time given to the probe to answer.
+     */
+    private static final String PARAM_HEALTH_INTERVAL = "essobedo.appma.core.health.interval";
+
+    /**
+     * The default time in milliseconds between two calls to the health probe of the application.
+     */
+    private static final long DEFAULT_HEALTH_INTERVAL = 1000L;
+
     /**
      * The arguments to pass to the application on initialization.
      */
     private final String[] arguments;
 
+    /**
+     * What has been learnt about the application during the previous launches.
+     */
+    private final StartupRecord startupRecord;
+
     /**
      * The root directory of the application.
      */
@@ -102,6 +308,12 @@ class DefaultApplicationManager implements ApplicationManager {
      */
     private Configuration configuration;
 
+    /**
+     * The result of the last generation of the application class data sharing archive, {@code null} if no
+     * generation has been launched.
+     */
+    private Future<Boolean> archiveGeneration;
+
     /**
      * The current application.
      */
@@ -117,6 +329,31 @@ class DefaultApplicationManager implements ApplicationManager {
      */
     private final AsyncTaskExecutor executor = new AsyncTaskExecutor();
 
+    /**
+     * The listening sockets owned by the application manager.
+     */
+    private final ServerSocketRegistry serverSockets = new ServerSocketRegistry();
+
+    /**
+     * The off-heap memory arenas owned by the application manager.
+     */
+    private final MemoryArenaRegistry memoryArenas;
+
+    /**
+     * The installer managing the installations of the application.
+     */
+    private final Installer installer;
+
+    /**
+     * The journal of the upgrade in progress.
+     */
+    private final UpgradeJournal journal;
+
+    /**
+     * The thread pools owned by the application manager.
+     */
+    private final ExecutorRegistry executors = new ExecutorRegistry();
+
     /**
      * The current stage.
      */
@@ -127,6 +364,49 @@ class DefaultApplicationManager implements ApplicationManager {
      */
     private Predicate<Void> onCloseRequestPredicate;
 
+    /**
+     * The profiler of the class loading of the application being created and initialized, {@code null}
+     * if the profiling is disabled.
+     */
+    private ClassLoadingProfiler profiler;
+
+    /**
+     * The recorder of the classes loaded by the application being created and initialized, {@code null}
+     * if nothing is recorded.
+     */
+    private ClassListRecorder recorder;
+
+    /**
+     * The preloader of the classes of the current application, {@code null} if no classes are preloaded.
+     */
+    private ClassPreloader preloader;
+
+    /**
+     * The version manager of the current application, {@code null} if it has not been resolved yet.
+     */
+    private VersionManager<?> versionManager;
+
+    /**
+     * The classloader from which the cached version manager has been resolved.
+     */
+    private ClassLoader versionManagerClassLoader;
+
+    /**
+     * The report of the last quiesce phase, {@code null} if unknown.
+     */
+    private QuiesceReport quiesceReport;
+
+    /**
+     * The amount of calls executed during the last warm-up phase, {@code -1} if unknown.
+     */
+    private int warmUpCalls = -1;
+
+    /**
+     * The snapshots of the state of the previous version of the application, only set while the new version
+     * is initialized.
+     */
+    private StateStore states;
+
     /**
      * Constructs a {@code DefaultApplicationManager} with the specified root folder and arguments.
      * @param root the root folder of the application.
@@ -155,28 +435,60 @@ class DefaultApplicationManager implements ApplicationManager {
         this.arguments = arguments;
         this.patchTargetFile = patchTargetFile;
         this.patchContentTargetFolder = patchContentTargetFolder;
+        this.memoryArenas = new MemoryArenaRegistry(new File(ConfigurationFactory.getInternalFolder(root),
+            DefaultApplicationManager.ARENAS_FOLDER));
+        this.installer = new Installer(root, this::patch);
+        this.journal = new UpgradeJournal(new File(ConfigurationFactory.getInternalFolder(root),
+            DefaultApplicationManager.JOURNAL));
         loadConfiguration();
+        new UpgradeRecovery(journal, installer, new RecoveryActions()).recover();
+        sweepStagingFolder();
+        collectGarbage();
+        applyStagedAtLaunch();
+        this.startupRecord = new StartupRecord(
+            getFileNextToConfiguration(DefaultApplicationManager.STARTUP_RECORD_EXTENSION));
     }
 
     /**
-     * Loads the configuration from the root directory.
+     * Loads the configuration from the active installation of the application as given by
+     * {@link ConfigurationFactory#getActiveFolder(File)}.
      * @throws ApplicationException If the configuration could not be loaded.
      */
     private void loadConfiguration() throws ApplicationException {
-        final ConfigurationFactory factory = new ConfigurationFactory(root);
+        final ConfigurationFactory factory = new ConfigurationFactory(ConfigurationFactory.getActiveFolder(root));
         setConfiguration(factory.create());
     }
 
     /**
-     * Persists if needed the provided configuration and reloads the configuration from the
-     * root directory.
+     * Gives the folder in which the application is installed.
+     * @return the folder in which the application is installed.
+     */
+    File getInstallFolder() {
+        return installer.getInstallFolder();
+    }
+
+    /**
+     * Gives the previous installations of the application that have been retained, from the most recent to
+     * the oldest.
+     * @return the folders of the previous installations that still exist.
+     */
+    List<File> getPreviousFolders() {
+        return installer.getPreviousFolders();
+    }
+
+    /**
+     * Persists if needed the provided configuration into the installation folder and reloads the
+     * configuration from the root directory.
      * @param configuration The configuration to store if needed.
      * @throws ApplicationException If the configuration could not be re-loaded.
      */
     private void reload(final Configuration configuration) throws ApplicationException {
         final String configurationName = ConfigurationFactory.getConfigurationName();
-        final File configFile = new File(root, configurationName);
-        if (configuration == null) {
+        final File configFile = new File(getInstallFolder(), configurationName);
+        if (configuration == null && !getInstallFolder().equals(root)) {
+            // The default configuration is the one of the installation folder
+            loadConfiguration();
+        } else if (configuration == null) {
             if (configFile.exists() && !configFile.delete() && LOG.isLoggable(Level.WARNING)) {
                 LOG.log(Level.WARNING, String.format("The file '%s' could not be deleted",
                     configFile.getAbsolutePath()));
@@ -184,7 +496,7 @@ class DefaultApplicationManager implements ApplicationManager {
             loadConfiguration();
         } else {
             try {
-                ConfigFromProperties.store(configuration, configFile);
+                ConfigFromProperties.store(configuration, configFile, Installer.isDurable());
                 setConfiguration(configuration);
             } catch (IOException e) {
                 if (LOG.isLoggable(Level.SEVERE)) {
@@ -232,6 +544,36 @@ class DefaultApplicationManager implements ApplicationManager {
         }
     }
 
+    @Override
+    public ServerSocketChannel getServerSocketChannel(final String name, final SocketAddress address)
+        throws ApplicationException {
+        return serverSockets.get(name, address);
+    }
+
+    @Override
+    public ScheduledExecutorService getExecutor(final String name, final int poolSize) throws ApplicationException {
+        final Manageable current = getApplication();
+        return executors.get(name, poolSize, Thread.currentThread().getContextClassLoader(),
+            current == null ? null : current.getClass().getClassLoader());
+    }
+
+    @Override
+    public MemoryArena getMemoryArena(final String name, final long size) throws ApplicationException {
+        return memoryArenas.get(name, size);
+    }
+
+    @Override
+    public InputStream getState(final String name) {
+        final StateStore store;
+        synchronized (this) {
+            store = this.states;
+        }
+        if (store == null) {
+            return null;
+        }
+        return store.get(name);
+    }
+
     @Override
     public void setOnCloseRequestPredicate(final Predicate<Void> predicate) {
         synchronized (this) {
@@ -259,29 +601,40 @@ class DefaultApplicationManager implements ApplicationManager {
                 "Could not create the application as the state is illegal: %s", state.get()));
         }
 
-        final ClassLoader classLoader = getClassLoader(getConfiguration());
-        final ServiceLoader<Manageable> loader = ServiceLoader.load(Manageable.class, classLoader);
-        Manageable application = null;
-        for (final Manageable app : loader) {
-            if (LOG.isLoggable(Level.FINE)) {
-                LOG.log(Level.FINE, String.format("The application '%s' version '%s' has ben found", app.name(),
-                    app.version()));
-            }
-            if (app.accept(arguments)) {
-                application = app;
-                break;
-            } else if (LOG.isLoggable(Level.FINE)) {
-                LOG.log(Level.FINE, String.format(
-                    "The application '%s' version '%s' is not compatible with the arguments '%s'",
-                    app.name(), app.version(), Arrays.toString(arguments)));
+        final List<ClassLoadingListener> listeners = new ArrayList<>();
+        final ClassLoadingProfiler profiler = createProfiler();
+        if (profiler != null) {
+            listeners.add(profiler);
+        }
+        final ClassList classList = loadClassList();
+        if (classList == null && Boolean.getBoolean(DefaultApplicationManager.PARAM_PRELOAD)) {
+            final ClassListRecorder recorder = new ClassListRecorder();
+            synchronized (this) {
+                this.recorder = recorder;
             }
+            listeners.add(recorder);
+        }
+        final ClassLoader classLoader = getClassLoader(getConfiguration(),
+            listeners.toArray(new ClassLoadingListener[listeners.size()]));
+        if (classList != null) {
+            startPreload(classLoader, classList);
         }
+        final Manageable application = findApplication(classLoader, getConfiguration());
         if (application == null) {
             throw new ApplicationException("Could not find any compliant application");
         }
+        if (classList != null && !classList.getVersion().equals(application.version())) {
+            if (LOG.isLoggable(Level.INFO)) {
+                LOG.log(Level.INFO, String.format("The list of classes to preload has been recorded for the version"
+                    + " '%s' and is now invalidated", classList.getVersion()));
+            }
+            stopPreload();
+            deleteClassList();
+        }
         synchronized (this) {
             this.application = application;
         }
+        storeStartupRecord(application, getConfiguration());
         state.set(ApplicationState.CREATED);
         if (LOG.isLoggable(Level.INFO)) {
             LOG.log(Level.INFO, String.format("The application '%s' version '%s' has ben found", application.name(),
@@ -290,6 +643,136 @@ class DefaultApplicationManager implements ApplicationManager {
         return application;
     }
 
+    /**
+     * Records what has been learnt about the specified application for the next launches. Only the application
+     * that accepted the arguments of the last launch is recorded, so that the record doesn't grow with the
+     * different arguments.
+     * @param application the application that has been created.
+     * @param configuration the configuration from which the application has been created.
+     */
+    private void storeStartupRecord(final Manageable application, final Configuration configuration) {
+        startupRecord.set(DefaultApplicationManager.RECORD_JAVAFX, Boolean.toString(application.isJavaFX()));
+        startupRecord.set(DefaultApplicationManager.RECORD_PROVIDER, application.getClass().getName());
+        startupRecord.set(DefaultApplicationManager.RECORD_ARGUMENTS, getArgumentsHash());
+        startupRecord.set(DefaultApplicationManager.RECORD_CLASSPATH,
+            ClassList.fingerprint(configuration.getClasspath()));
+        startupRecord.store();
+    }
+
+    /**
+     * Finds the application that accepts the arguments. The class of the application that has been
+     * accepted with the same arguments and the same classpath on a previous launch is tried first, the other
+     * applications are then instantiated one by one using a {@link ServiceLoader} until one accepts the
+     * arguments.
+     * @param classLoader the classloader from which the application is loaded.
+     * @param configuration the configuration from which the classloader has been created.
+     * @return the application that accepts the arguments, {@code null} if none could be found.
+     */
+    private Manageable findApplication(final ClassLoader classLoader, final Configuration configuration) {
+        String recorded = startupRecord.get(DefaultApplicationManager.RECORD_PROVIDER);
+        if (recorded != null
+            && (!getArgumentsHash().equals(startupRecord.get(DefaultApplicationManager.RECORD_ARGUMENTS))
+            || !ClassList.fingerprint(configuration.getClasspath()).equals(
+                startupRecord.get(DefaultApplicationManager.RECORD_CLASSPATH)))) {
+            recorded = null;
+        }
+        if (recorded != null) {
+            final Manageable app = newApplication(recorded, classLoader);
+            if (app != null && accept(app)) {
+                return app;
+            }
+        }
+        final ServiceLoader<Manageable> loader = ServiceLoader.load(Manageable.class, classLoader);
+        for (final Manageable app : loader) {
+            if (!app.getClass().getName().equals(recorded) && accept(app)) {
+                return app;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Gives the hash code of the arguments as stored into the startup record.
+     * @return the hash code of the arguments in hexadecimal.
+     */
+    private String getArgumentsHash() {
+        return String.format("%08x", Arrays.hashCode(arguments));
+    }
+
+    /**
+     * Instantiates the application of the specified class.
+     * @param className the full qualified name of the class of the application.
+     * @param classLoader the classloader from which the class of the application is loaded.
+     * @return the application, {@code null} if it could not be instantiated.
+     */
+    private static Manageable newApplication(final String className, final ClassLoader classLoader) {
+        try {
+            final Class<?> clazz = Class.forName(className, false, classLoader);
+            if (Manageable.class.isAssignableFrom(clazz)) {
+                return (Manageable) clazz.getConstructor().newInstance();
+            }
+        } catch (ReflectiveOperationException | LinkageError e) {
+            if (LOG.isLoggable(Level.FINE)) {
+                LOG.log(Level.FINE, String.format("The application '%s' could not be instantiated", className), e);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Indicates whether the specified application accepts the arguments.
+     * @param application the application to check.
+     * @return {@code true} if the application accepts the arguments, {@code false} otherwise.
+     */
+    private boolean accept(final Manageable application) {
+        if (LOG.isLoggable(Level.FINE)) {
+            LOG.log(Level.FINE, String.format("The application '%s' version '%s' has ben found", application.name(),
+                application.version()));
+        }
+        if (application.accept(arguments)) {
+            return true;
+        } else if (LOG.isLoggable(Level.FINE)) {
+            LOG.log(Level.FINE, String.format(
+                "The application '%s' version '%s' is not compatible with the arguments '%s'",
+                application.name(), application.version(), Arrays.toString(arguments)));
+        }
+        return false;
+    }
+
+    /**
+     * Triggers the creation of the application. It will be done asynchronously in order to be able to
+     * start the Java FX toolkit meanwhile.
+     * @return The {@link Future} object allowing to get the application once it has been created.
+     */
+    Future<Manageable> asyncCreate() {
+        final Callable<Manageable> task = () -> {
+            try {
+                return create();
+            } catch (ApplicationException e) {
+                if (LOG.isLoggable(Level.SEVERE)) {
+                    LOG.log(Level.SEVERE, e.getMessage(), e);
+                }
+                throw e;
+            }
+        };
+        final FutureTask<Manageable> future = new FutureTask<>(task);
+        executor.execute(future);
+        return future;
+    }
+
+    /**
+     * Indicates whether the application is expected to be a Java FX application according to the
+     * system parameter {@code essobedo.appma.core.javafx} if set, or to the previous launch otherwise.
+     * @return {@code true} if the application is expected to be a Java FX application, {@code false} otherwise.
+     */
+    boolean isJavaFXExpected() {
+        String value = System.getProperty(DefaultApplicationManager.PARAM_JAVAFX);
+        if (value == null) {
+            value = startupRecord.get(DefaultApplicationManager.RECORD_JAVAFX);
+        }
+        return Boolean.parseBoolean(value);
+    }
+
     /**
      * Initializes the application.
      * @return The {@link Scene} of the initialized application in case of a Java FX application
@@ -311,6 +794,7 @@ class DefaultApplicationManager implements ApplicationManager {
                 LOG.log(Level.INFO, String.format("Init the application '%s' version '%s'", application.name(),
                     application.version()));
             }
+            executors.open(application.getClass().getClassLoader());
             scene = application.init(this, arguments);
             state.set(ApplicationState.INITIALIZED);
 
@@ -322,27 +806,293 @@ class DefaultApplicationManager implements ApplicationManager {
             throw new ApplicationException("Could not init the application", e);
         } finally {
             Thread.currentThread().setContextClassLoader(contextCL);
+            reportProfile();
+            storeClassList(application);
         }
+        warmUp(application);
+        updateSharedArchive(application);
         return scene;
     }
 
     /**
-     * Creates the {@link ClassLoader} corresponding to the specified {@link Configuration}.
-     * @param configuration The configuration to use to create the {@link ClassLoader}.
-     * @return The {@link ClassLoader} corresponding to the specified {@link Configuration}.
-     * @throws ApplicationException if the {@link ClassLoader} could not be created.
+     * Launches in background the generation of the application class data sharing archive if it has been
+     * enabled and the archive is missing or has been generated for another version of the application
+     * or another configuration. The result of the generation is available from
+     * {@link #getArchiveGeneration()}.
+     * @param application the application that has been initialized.
      */
-    private ClassLoader getClassLoader(final Configuration configuration) throws ApplicationException {
-        final URL[] urls = configuration.getClasspathAsUrls();
-        return new URLClassLoader(urls, getClass().getClassLoader());
+    private void updateSharedArchive(final Manageable application) {
+        if (!Boolean.getBoolean(DefaultApplicationManager.PARAM_CDS)) {
+            return;
+        }
+        if (!SharedArchive.isSupported()) {
+            if (LOG.isLoggable(Level.INFO)) {
+                LOG.log(Level.INFO, "The application class data sharing is not supported by this JVM");
+            }
+            return;
+        }
+        final SharedArchive archive = new SharedArchive(
+            getFileNextToConfiguration(DefaultApplicationManager.ARCHIVE_EXTENSION));
+        final List<File> classpath = getManagerClasspath();
+        final List<File> files = new ArrayList<>(classpath);
+        files.add(new File(root, ConfigurationFactory.getConfigurationName()));
+        final String stamp = String.format("%s;%s", application.version(), ClassList.fingerprint(files));
+        if (archive.isUpToDate(stamp)) {
+            if (!archive.isInUse() && LOG.isLoggable(Level.INFO)) {
+                LOG.log(Level.INFO, String.format("The archive '%s' is up to date but is not used, add the JVM option"
+                    + " -XX:SharedArchiveFile=%s to the launcher", archive.getArchive().getAbsolutePath(),
+                    archive.getArchive().getAbsolutePath()));
+            }
+            return;
+        }
+        Future<Boolean> generation;
+        try {
+            generation = archive.generate(classpath, stamp);
+        } catch (ApplicationException e) {
+            if (LOG.isLoggable(Level.WARNING)) {
+                LOG.log(Level.WARNING, "Could not generate the application class data sharing archive", e);
+            }
+            final CompletableFuture<Boolean> failure = new CompletableFuture<>();
+            failure.completeExceptionally(e);
+            generation = failure;
+        }
+        synchronized (this) {
+            this.archiveGeneration = generation;
+        }
     }
 
     /**
-     * Destroys the application.
-     * @throws ApplicationException if the application could not be created.
+     * Gives the result of the last generation of the application class data sharing archive.
+     * @return the {@link Future} object allowing to know whether the archive could be generated, {@code null}
+     * if no generation has been launched.
      */
-    protected void destroy() throws ApplicationException {
-        if (!state.compareAndSet(ApplicationState.INITIALIZED, ApplicationState.DESTROYING)) {
+    Future<Boolean> getArchiveGeneration() {
+        synchronized (this) {
+            return archiveGeneration;
+        }
+    }
+
+    /**
+     * Gives the classpath of the application manager.
+     * @return the entries of the classpath of the application manager.
+     */
+    private static List<File> getManagerClasspath() {
+        final List<File> classpath = new ArrayList<>();
+        for (final String path : System.getProperty("java.class.path").split(File.pathSeparator)) {
+            if (!path.isEmpty()) {
+                classpath.add(new File(path).getAbsoluteFile());
+            }
+        }
+        return classpath;
+    }
+
+    /**
+     * Creates the profiler of the class loading if it has been enabled.
+     * @return the profiler of the class loading, {@code null} if the profiling is disabled.
+     */
+    private ClassLoadingProfiler createProfiler() {
+        if (System.getProperty(DefaultApplicationManager.PARAM_PROFILE) == null) {
+            return null;
+        }
+        final ClassLoadingProfiler profiler = new ClassLoadingProfiler();
+        synchronized (this) {
+            this.profiler = profiler;
+        }
+        return profiler;
+    }
+
+    /**
+     * Logs the report of the class loading profiler if any and writes the collected data into the file
+     * defined by the system parameter {@code essobedo.appma.core.profile}.
+     */
+    private void reportProfile() {
+        final ClassLoadingProfiler profiler;
+        synchronized (this) {
+            profiler = this.profiler;
+            this.profiler = null;
+        }
+        if (profiler == null) {
+            return;
+        }
+        if (LOG.isLoggable(Level.INFO)) {
+            LOG.log(Level.INFO, String.format("Class loading profile of the application:%n%s",
+                profiler.getReport(DefaultApplicationManager.PROFILE_REPORT_LIMIT)));
+        }
+        File target = new File(System.getProperty(DefaultApplicationManager.PARAM_PROFILE));
+        if (!target.isAbsolute()) {
+            target = new File(root, target.getPath());
+        }
+        try {
+            profiler.writeReport(target);
+        } catch (IOException e) {
+            if (LOG.isLoggable(Level.WARNING)) {
+                LOG.log(Level.WARNING, String.format("Could not write the class loading profile into '%s'",
+                    target.getAbsolutePath()), e);
+            }
+        }
+    }
+
+    /**
+     * Gives the file in which the list of classes to preload is stored, it is located next to the
+     * configuration file.
+     * @return the file in which the list of classes to preload is stored.
+     */
+    private File getClassListFile() {
+        return getFileNextToConfiguration(DefaultApplicationManager.CLASS_LIST_EXTENSION);
+    }
+
+    /**
+     * Gives the file located next to the configuration file with the same base name and the specified extension.
+     * @param extension the extension of the file.
+     * @return the file located next to the configuration file.
+     */
+    private File getFileNextToConfiguration(final String extension) {
+        final String configurationName = ConfigurationFactory.getConfigurationName();
+        final int index = configurationName.lastIndexOf('.');
+        final String baseName;
+        if (index > 0) {
+            baseName = configurationName.substring(0, index);
+        } else {
+            baseName = configurationName;
+        }
+        return new File(root, baseName + extension);
+    }
+
+    /**
+     * Loads the list of classes to preload if the preloading has been enabled and the list matches with
+     * the current classpath.
+     * @return the list of classes to preload, {@code null} if there is nothing to preload.
+     */
+    private ClassList loadClassList() {
+        if (!Boolean.getBoolean(DefaultApplicationManager.PARAM_PRELOAD)) {
+            return null;
+        }
+        final File file = getClassListFile();
+        try {
+            final ClassList classList = ClassList.load(file);
+            if (classList == null) {
+                return null;
+            } else if (!classList.getFingerprint().equals(ClassList.fingerprint(getConfiguration().getClasspath()))) {
+                if (LOG.isLoggable(Level.INFO)) {
+                    LOG.log(Level.INFO, "The classpath has changed since the list of classes to preload has been"
+                        + " recorded, it will be recorded again");
+                }
+                return null;
+            }
+            return classList;
+        } catch (IOException e) {
+            if (LOG.isLoggable(Level.WARNING)) {
+                LOG.log(Level.WARNING, String.format("Could not read the list of classes to preload from '%s'",
+                    file.getAbsolutePath()), e);
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Starts preloading in background the classes of the specified list.
+     * @param classLoader the classloader to use to load the classes.
+     * @param classList the list of classes to preload.
+     */
+    private void startPreload(final ClassLoader classLoader, final ClassList classList) {
+        if (LOG.isLoggable(Level.INFO)) {
+            LOG.log(Level.INFO, String.format("Preloading %d classes", classList.getClassNames().size()));
+        }
+        final ClassPreloader preloader = new ClassPreloader(classLoader, classList.getClassNames());
+        synchronized (this) {
+            this.preloader = preloader;
+        }
+        preloader.start();
+    }
+
+    /**
+     * Stops preloading the classes if needed.
+     */
+    private void stopPreload() {
+        final ClassPreloader preloader;
+        synchronized (this) {
+            preloader = this.preloader;
+            this.preloader = null;
+        }
+        if (preloader != null) {
+            preloader.stop();
+        }
+    }
+
+    /**
+     * Stops recording the loaded classes if needed and stores them into the file from which they
+     * will be preloaded on the next start if the application could be initialized.
+     * @param application the application whose loaded classes have been recorded.
+     */
+    private void storeClassList(final Manageable application) {
+        final ClassListRecorder recorder;
+        synchronized (this) {
+            recorder = this.recorder;
+            this.recorder = null;
+        }
+        if (recorder == null) {
+            return;
+        }
+        final List<String> classNames = recorder.stop();
+        if (state.get() != ApplicationState.INITIALIZED) {
+            return;
+        }
+        final File file = getClassListFile();
+        try {
+            final ClassList classList = new ClassList(application.version(),
+                ClassList.fingerprint(getConfiguration().getClasspath()), classNames);
+            classList.store(file);
+            if (LOG.isLoggable(Level.INFO)) {
+                LOG.log(Level.INFO, String.format("The list of %d classes to preload has been stored into '%s'",
+                    classNames.size(), file.getAbsolutePath()));
+            }
+        } catch (IOException e) {
+            if (LOG.isLoggable(Level.WARNING)) {
+                LOG.log(Level.WARNING, String.format("Could not store the list of classes to preload into '%s'",
+                    file.getAbsolutePath()), e);
+            }
+        }
+    }
+
+    /**
+     * Deletes the list of classes to preload if it exists.
+     */
+    private void deleteClassList() {
+        final File file = getClassListFile();
+        if (file.exists() && !file.delete() && LOG.isLoggable(Level.WARNING)) {
+            LOG.log(Level.WARNING, String.format("The file '%s' could not be deleted", file.getAbsolutePath()));
+        }
+    }
+
+    /**
+     * Creates the {@link ClassLoader} corresponding to the specified {@link Configuration} that notifies
+     * the specified listeners each time a class is loaded.
+     * @param configuration The configuration to use to create the {@link ClassLoader}.
+     * @param listeners The listeners to notify each time a class is loaded.
+     * @return The {@link ClassLoader} corresponding to the specified {@link Configuration}.
+     * @throws ApplicationException if the {@link ClassLoader} could not be created.
+     */
+    private ClassLoader getClassLoader(final Configuration configuration, final ClassLoadingListener... listeners)
+        throws ApplicationException {
+        final URL[] urls = configuration.getClasspathAsUrls();
+        return new GuestClassLoader(urls, getClass().getClassLoader(), listeners);
+    }
+
+    /**
+     * Destroys the application.
+     * @throws ApplicationException if the application could not be created.
+     */
+    protected void destroy() throws ApplicationException {
+        destroy(false);
+    }
+
+    /**
+     * Destroys the application.
+     * @param handOver indicates whether the application must export its state before being destroyed.
+     * @throws ApplicationException if the application could not be destroyed.
+     */
+    private void destroy(final boolean handOver) throws ApplicationException {
+        if (!state.compareAndSet(ApplicationState.INITIALIZED, ApplicationState.DESTROYING)) {
             throw new ApplicationException(String.format(
                 "Could not destroy the application as the state is illegal: %s", state.get()));
         }
@@ -357,7 +1107,17 @@ class DefaultApplicationManager implements ApplicationManager {
             if (getStage() != null && application.icon() != null) {
                 Platform.runLater(() -> getStage().getIcons().removeAll(application.icon()));
             }
+            stopPreload();
+            synchronized (this) {
+                this.versionManager = null;
+                this.versionManagerClassLoader = null;
+            }
+            quiesce(application);
+            if (handOver) {
+                exportState(application);
+            }
             application.destroy();
+            executors.release(application.getClass().getClassLoader());
             closeClasspath(getConfiguration());
             close(application.getClass().getClassLoader());
             synchronized (this) {
@@ -376,6 +1136,198 @@ class DefaultApplicationManager implements ApplicationManager {
         }
     }
 
+    /**
+     * Asks the application to complete its work in progress before the deadline defined by the system
+     * parameter {@code essobedo.appma.core.quiesce.timeout}. The quiesce phase is executed by a dedicated
+     * thread in order to be able to stop waiting for it shortly after the deadline.
+     * @param application the application to quiesce.
+     */
+    private void quiesce(final Manageable application) {
+        final long timeout = Long.getLong(DefaultApplicationManager.PARAM_QUIESCE_TIMEOUT,
+            DefaultApplicationManager.DEFAULT_QUIESCE_TIMEOUT);
+        final long deadline = System.currentTimeMillis() + timeout;
+        QuiesceReport report = null;
+        try {
+            report = callBefore("appma-quiesce", application, () -> application.quiesce(deadline), timeout);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            if (LOG.isLoggable(Level.WARNING)) {
+                LOG.log(Level.WARNING, String.format("The application '%s' version '%s' could not be quiesced",
+                    application.name(), application.version()), e.getCause());
+            }
+        } catch (TimeoutException e) {
+            if (LOG.isLoggable(Level.WARNING)) {
+                LOG.log(Level.WARNING, String.format("The application '%s' version '%s' could not be quiesced"
+                    + " within %d ms", application.name(), application.version(), timeout));
+            }
+        }
+        synchronized (this) {
+            this.quiesceReport = report;
+        }
+        if (report != null && LOG.isLoggable(Level.INFO)) {
+            LOG.log(Level.INFO, String.format("The application '%s' version '%s' has been quiesced in %d ms (%s)",
+                application.name(), application.version(), System.currentTimeMillis() - deadline + timeout, report));
+        }
+    }
+
+    /**
+     * Asks the specified application to export its state in order to hand it over to the next version,
+     * an error is only logged in which case the next version starts cold.
+     * @param application the application whose state must be exported.
+     */
+    private void exportState(final Manageable application) {
+        final long start = System.currentTimeMillis();
+        final StateStore store = new StateStore();
+        final ClassLoader contextCL = Thread.currentThread().getContextClassLoader();
+        try {
+            Thread.currentThread().setContextClassLoader(application.getClass().getClassLoader());
+            application.exportState(store);
+        } catch (ApplicationException | RuntimeException e) {
+            if (LOG.isLoggable(Level.WARNING)) {
+                LOG.log(Level.WARNING, String.format("The state of the application '%s' version '%s' could not be"
+                    + " exported", application.name(), application.version()), e);
+            }
+            return;
+        } finally {
+            Thread.currentThread().setContextClassLoader(contextCL);
+        }
+        synchronized (this) {
+            this.states = store;
+        }
+        if (store.size() > 0 && LOG.isLoggable(Level.INFO)) {
+            LOG.log(Level.INFO, String.format("%d snapshot(s) of %d bytes exported by the application '%s' version"
+                + " '%s' in %d ms", store.size(), store.length(), application.name(), application.version(),
+                System.currentTimeMillis() - start));
+        }
+    }
+
+    /**
+     * Releases the snapshots of the state of the previous version of the application.
+     */
+    private void discardState() {
+        synchronized (this) {
+            this.states = null;
+        }
+    }
+
+    /**
+     * Calls the specified task of the specified application from a dedicated thread in order to be able
+     * to stop waiting for it shortly after the specified timeout, in which case the task is cancelled.
+     * @param threadName the name of the thread executing the task.
+     * @param application the application whose task is called.
+     * @param task the task to call.
+     * @param timeout the maximum time in milliseconds given to the task.
+     * @param <T> the type of the result of the task.
+     * @return the result of the task.
+     * @throws InterruptedException if the current thread has been interrupted while waiting.
+     * @throws ExecutionException if the task failed.
+     * @throws TimeoutException if the task could not be completed in time.
+     */
+    private static <T> T callBefore(final String threadName, final Manageable application, final Callable<T> task,
+                                    final long timeout)
+        throws InterruptedException, ExecutionException, TimeoutException {
+        final FutureTask<T> future = new FutureTask<>(task);
+        final Thread thread = new Thread(future, threadName);
+        thread.setDaemon(true);
+        thread.setContextClassLoader(application.getClass().getClassLoader());
+        thread.start();
+        try {
+            return future.get(timeout + DefaultApplicationManager.GRACE_PERIOD, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            throw e;
+        }
+    }
+
+    /**
+     * Gives the application the time defined by the system parameter {@code essobedo.appma.core.warmup.timeout}
+     * to execute its hot paths, so that they are compiled by the JIT compiler before the application is exposed
+     * to the users. The time spent by the JIT compiler meanwhile is logged. The warm-up phase is skipped if the
+     * application doesn't implement {@link Manageable#warmUp(long)}.
+     * @param application the application to warm up.
+     */
+    private void warmUp(final Manageable application) {
+        final long timeout = Long.getLong(DefaultApplicationManager.PARAM_WARMUP_TIMEOUT,
+            DefaultApplicationManager.DEFAULT_WARMUP_TIMEOUT);
+        if (timeout <= 0L || !DefaultApplicationManager.isWarmUpImplemented(application)) {
+            synchronized (this) {
+                this.warmUpCalls = -1;
+            }
+            return;
+        }
+        final CompilationMXBean compilation = ManagementFactory.getCompilationMXBean();
+        final boolean monitored = compilation != null && compilation.isCompilationTimeMonitoringSupported();
+        long compilationTime = 0L;
+        if (monitored) {
+            compilationTime = compilation.getTotalCompilationTime();
+        }
+        final long start = System.currentTimeMillis();
+        final long deadline = start + timeout;
+        int calls = -1;
+        try {
+            calls = callBefore("appma-warmup", application, () -> application.warmUp(deadline), timeout);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            if (LOG.isLoggable(Level.WARNING)) {
+                LOG.log(Level.WARNING, String.format("The application '%s' version '%s' could not be warmed up",
+                    application.name(), application.version()), e.getCause());
+            }
+        } catch (TimeoutException e) {
+            if (LOG.isLoggable(Level.WARNING)) {
+                LOG.log(Level.WARNING, String.format("The application '%s' version '%s' could not be warmed up"
+                    + " within %d ms", application.name(), application.version(), timeout));
+            }
+        }
+        synchronized (this) {
+            this.warmUpCalls = calls;
+        }
+        if (calls > 0 && LOG.isLoggable(Level.INFO)) {
+            String jit = "unknown";
+            if (monitored) {
+                jit = String.format("%d ms", compilation.getTotalCompilationTime() - compilationTime);
+            }
+            LOG.log(Level.INFO, String.format("The application '%s' version '%s' has been warmed up in %d ms"
+                + " (calls: %d, JIT compilation: %s)", application.name(), application.version(),
+                System.currentTimeMillis() - start, calls, jit));
+        }
+    }
+
+    /**
+     * Indicates whether the specified application overrides the default implementation of
+     * {@link Manageable#warmUp(long)} which has nothing to warm up.
+     * @param application the application to check.
+     * @return {@code true} if the application implements the warm-up phase, {@code false} otherwise.
+     */
+    private static boolean isWarmUpImplemented(final Manageable application) {
+        try {
+            return application.getClass().getMethod("warmUp", long.class).getDeclaringClass() != Manageable.class;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Gives the amount of calls executed during the last warm-up phase.
+     * @return the amount of calls executed during the last warm-up phase, {@code -1} if unknown.
+     */
+    int getWarmUpCalls() {
+        synchronized (this) {
+            return warmUpCalls;
+        }
+    }
+
+    /**
+     * Gives the report of the last quiesce phase.
+     * @return the report of the last quiesce phase, {@code null} if unknown.
+     */
+    QuiesceReport getQuiesceReport() {
+        synchronized (this) {
+            return quiesceReport;
+        }
+    }
+
     /**
      * Closes all the resources corresponding to the classpath.
      * @param configuration The configuration from which it extracts the URLs corresponding to the classpath.
@@ -389,109 +1341,616 @@ class DefaultApplicationManager implements ApplicationManager {
             classpath.release();
         } catch (ApplicationException e) {
             if (LOG.isLoggable(Level.WARNING)) {
-                LOG.log(Level.WARNING, "Could not close the jar files used by the classloader", e);
+                LOG.log(Level.WARNING, "Could not close the jar files used by the classloader", e);
+            }
+        }
+    }
+
+    /**
+     * Closes the classloader if possible in order to properly release the resources.
+     * @param classLoader The classloader to close.
+     */
+    @SuppressWarnings("PMD.DoNotCallGarbageCollectionExplicitly")
+    @SuppressFBWarnings(value = "DM_GC", justification = "Needed to properly release the jar files")
+    private void close(final ClassLoader classLoader) {
+        if (classLoader == null) {
+            return;
+        }
+        if (classLoader instanceof Closeable) {
+            if (LOG.isLoggable(Level.INFO)) {
+                LOG.log(Level.INFO, "Closing the classloader");
+            }
+            try {
+                ((Closeable) classLoader).close();
+            } catch (IOException e) {
+                if (LOG.isLoggable(Level.WARNING)) {
+                    LOG.log(Level.WARNING, "Could not close properly the classloader", e);
+                }
+            } finally {
+                // Ensure that there is no more references relying on this classloader.
+                System.gc();
+            }
+        }
+    }
+
+    @Override
+    public Task<String> checkForUpdate() throws ApplicationException {
+        final Manageable application = getApplication();
+        if (application == null) {
+            throw new ApplicationException("Could not check for update as there is no application running");
+        }
+        final ClassLoader contextCL = Thread.currentThread().getContextClassLoader();
+        try {
+            Thread.currentThread().setContextClassLoader(application.getClass().getClassLoader());
+            final VersionManager versionManager = getVersionManager(application);
+            if (versionManager == null) {
+                throw new ApplicationException("No version manager could be found");
+            }
+            if (LOG.isLoggable(Level.INFO)) {
+                LOG.log(Level.INFO, String.format("Checking for update for the application '%s' version '%s'",
+                    application.name(),
+                    application.version()));
+            }
+            return versionManager.check(application);
+        } catch (ApplicationException e) {
+            if (LOG.isLoggable(Level.SEVERE)) {
+                LOG.log(Level.SEVERE, "Could not check for update", e);
+            }
+            throw e;
+        } finally {
+            Thread.currentThread().setContextClassLoader(contextCL);
+        }
+    }
+
+    @Override
+    public Future<Void> upgrade() {
+        final Callable<Void> task = () -> {
+            try {
+                doUpgrade();
+            } catch (ApplicationException e) {
+                if (LOG.isLoggable(Level.SEVERE)) {
+                    LOG.log(Level.SEVERE, e.getMessage(), e);
+                }
+                if (!(e instanceof UpgradeAbortedException)) {
+                    exit();
+                }
+                throw e;
+            }
+            return null;
+        };
+        final FutureTask<Void> future = new FutureTask<>(task);
+        executor.execute(future);
+        return future;
+    }
+
+    /**
+     * Upgrades the application.
+     * @throws ApplicationException if the application could not be upgraded.
+     */
+    void doUpgrade() throws ApplicationException {
+        if (state.get() != ApplicationState.INITIALIZED) {
+            throw new ApplicationException(String.format(COULD_NOT_UPGRADE_ILLEGAL_STATE, state.get()));
+        }
+        final Manageable application = getApplication();
+        if (application == null) {
+            throw new ApplicationException(String.format(COULD_NOT_UPGRADE_ILLEGAL_STATE, state.get()));
+        }
+        final String className = application.getClass().getName();
+        final VersionManager versionManager = getVersionManager(application);
+        if (versionManager == null) {
+            throw new ApplicationException("No version manager could be found");
+        }
+        // The staged version is superseded by this upgrade
+        installer.discardStaged();
+        final boolean concurrent = Boolean.getBoolean(DefaultApplicationManager.PARAM_BLUE_GREEN)
+            && application.supportsConcurrentInstances();
+        final boolean versioned = concurrent || Boolean.getBoolean(DefaultApplicationManager.PARAM_VERSIONED)
+            || Boolean.getBoolean(DefaultApplicationManager.PARAM_GUARDED);
+        journal.startUpgrade(className, application.version(), versioned);
+        try {
+            final File patchFolder = getPatchContent(application, versionManager, concurrent, versioned);
+            if (patchFolder != null && Boolean.getBoolean(DefaultApplicationManager.PARAM_VERIFY)) {
+                verify(patchFolder);
+            }
+            if (patchFolder != null) {
+                journal.recordExtracted(patchFolder);
+            }
+            if (patchFolder != null && concurrent) {
+                exportState(application);
+                upgradeConcurrently(application, patchFolder);
+                return;
+            } else if (patchFolder != null && versioned) {
+                upgradeVersioned(application, patchFolder);
+                return;
+            }
+            final String oldVersion = application.version();
+            destroy(patchFolder != null);
+            applyNShow(className, patchFolder, oldVersion);
+        } finally {
+            discardState();
+            journal.endUpgrade();
+        }
+    }
+
+    /**
+     * Upgrades the application while it is running. The installation folder is copied into a new folder
+     * in which the patch is applied, the new version is then created and initialized in its own classloader
+     * while the current version is still running. Once ready, the new version replaces the current version
+     * which is finally destroyed.
+     * @param application the current version of the application.
+     * @param patchFolder the folder that contains the content of the patch.
+     * @throws UpgradeAbortedException if the new version could not be started, the current version is kept.
+     */
+    private void upgradeConcurrently(final Manageable application, final File patchFolder)
+        throws UpgradeAbortedException {
+        if (LOG.isLoggable(Level.INFO)) {
+            LOG.log(Level.INFO, String.format("Upgrade the application '%s' version '%s' while it is running",
+                application.name(), application.version()));
+        }
+        final long start = System.currentTimeMillis();
+        final File instanceFolder = installer.newInstanceFolder();
+        final ClassLoader contextCL = Thread.currentThread().getContextClassLoader();
+        Configuration config = null;
+        ClassLoader classLoader = null;
+        Manageable newApplication = null;
+        boolean initialized = false;
+        final Scene scene;
+        try {
+            journal.recordInstalling(instanceFolder);
+            config = installer.install(application.getClass().getName(), application.version(), patchFolder,
+                instanceFolder);
+            classLoader = getClassLoader(config);
+            Thread.currentThread().setContextClassLoader(classLoader);
+            newApplication = findApplication(classLoader, config);
+            if (newApplication == null) {
+                throw new ApplicationException("Could not find any compliant application");
+            }
+            if (LOG.isLoggable(Level.INFO)) {
+                LOG.log(Level.INFO, String.format("Init the application '%s' version '%s'", newApplication.name(),
+                    newApplication.version()));
+            }
+            executors.open(newApplication.getClass().getClassLoader());
+            scene = newApplication.init(this, arguments);
+            initialized = true;
+            warmUp(newApplication);
+            ConfigFromProperties.store(config, new File(instanceFolder, ConfigurationFactory.getConfigurationName()),
+                Installer.isDurable());
+            journal.recordInstalled(instanceFolder, getInstallFolder());
+            installer.storeInstallFolder(instanceFolder);
+        } catch (ApplicationException | RuntimeException | IOException e) {
+            if (initialized) {
+                destroyPrevious(newApplication, config);
+            } else {
+                if (newApplication != null
+                    && newApplication.getClass().getClassLoader() != application.getClass().getClassLoader()) {
+                    executors.release(newApplication.getClass().getClassLoader());
+                }
+                closeClasspath(config);
+                close(classLoader);
+            }
+            installer.delete(instanceFolder);
+            throw new UpgradeAbortedException("The new version could not be started, the current version is kept", e);
+        } catch (TaskInterruptedException e) {
+            closeClasspath(config);
+            close(classLoader);
+            installer.delete(instanceFolder);
+            throw new UpgradeAbortedException("The upgrade has been interrupted, the current version is kept", e);
+        } finally {
+            Thread.currentThread().setContextClassLoader(contextCL);
+            installer.delete(patchFolder);
+        }
+        switchTo(application, newApplication, config, scene);
+        if (LOG.isLoggable(Level.INFO)) {
+            LOG.log(Level.INFO, String.format("The application '%s' has been upgraded to the version '%s' in %d ms",
+                newApplication.name(), newApplication.version(), System.currentTimeMillis() - start));
+        }
+    }
+
+    /**
+     * Upgrades the application by installing the new version into its own folder while the current version
+     * is still running, then by stopping the current version, switching atomically the pointer file to the
+     * new installation folder and starting the new version. The previous installation is left untouched until
+     * the switch such that a crash can never leave a mix of both versions.
+     * @param application the current version of the application.
+     * @param patchFolder the folder that contains the content of the patch.
+     * @throws ApplicationException if the new version could not be started.
+     * @throws UpgradeAbortedException if the new version could not be installed, the current version is kept,
+     * or if the previous version has been restored by a guarded upgrade.
+     */
+    private void upgradeVersioned(final Manageable application, final File patchFolder)
+        throws ApplicationException {
+        final long start = System.currentTimeMillis();
+        final File instanceFolder = installer.newInstanceFolder();
+        try {
+            journal.recordInstalling(instanceFolder);
+            final Configuration config = installer.install(application.getClass().getName(), application.version(),
+                patchFolder, instanceFolder);
+            ConfigFromProperties.store(config, new File(instanceFolder, ConfigurationFactory.getConfigurationName()),
+                Installer.isDurable());
+            journal.recordInstalled(instanceFolder, getInstallFolder());
+        } catch (ApplicationException | RuntimeException | IOException e) {
+            installer.delete(instanceFolder);
+            throw new UpgradeAbortedException("The new version could not be installed, the current version is kept",
+                e);
+        } catch (TaskInterruptedException e) {
+            installer.delete(instanceFolder);
+            throw new UpgradeAbortedException("The upgrade has been interrupted, the current version is kept", e);
+        } finally {
+            installer.delete(patchFolder);
+        }
+        final File previousFolder = getInstallFolder();
+        destroy(true);
+        activate(instanceFolder);
+        startGuarded(previousFolder);
+        installer.retire(previousFolder);
+        if (LOG.isLoggable(Level.INFO)) {
+            LOG.log(Level.INFO, String.format("The application '%s' has been upgraded to the version '%s' in %d ms",
+                getApplication().name(), getApplication().version(), System.currentTimeMillis() - start));
+        }
+    }
+
+    @Override
+    public Future<Boolean> stage() {
+        final Callable<Boolean> task = () -> {
+            try {
+                return doStage();
+            } catch (ApplicationException e) {
+                if (LOG.isLoggable(Level.SEVERE)) {
+                    LOG.log(Level.SEVERE, e.getMessage(), e);
+                }
+                throw e;
+            }
+        };
+        final FutureTask<Boolean> future = new FutureTask<>(task);
+        executor.execute(future);
+        return future;
+    }
+
+    /**
+     * Downloads, verifies if enabled and installs the new version of the application into its own folder
+     * while the current version keeps running, so that it can be applied quickly later.
+     * @return {@code true} if a new version has been staged, {@code false} if there is no patch.
+     * @throws ApplicationException if the new version could not be staged, the current version is kept.
+     */
+    boolean doStage() throws ApplicationException {
+        if (state.get() != ApplicationState.INITIALIZED) {
+            throw new ApplicationException(String.format("Could not stage the new version as the state is illegal: %s",
+                state.get()));
+        }
+        final Manageable application = getApplication();
+        final VersionManager<?> versionManager = getVersionManager(application);
+        if (versionManager == null) {
+            throw new ApplicationException("No version manager could be found");
+        }
+        final long start = System.currentTimeMillis();
+        final File patchFolder = getPatchContent(application, versionManager, true, true);
+        if (patchFolder == null) {
+            return false;
+        }
+        installer.discardStaged();
+        final File instanceFolder = installer.newInstanceFolder();
+        try {
+            if (Boolean.getBoolean(DefaultApplicationManager.PARAM_VERIFY)) {
+                verify(patchFolder);
+            }
+            final Configuration config = installer.install(application.getClass().getName(), application.version(),
+                patchFolder, instanceFolder);
+            ConfigFromProperties.store(config, new File(instanceFolder, ConfigurationFactory.getConfigurationName()),
+                Installer.isDurable());
+            resolveVersionManager(application.getClass().getName(), config);
+            installer.storeStagedFolder(instanceFolder);
+        } catch (ApplicationException | RuntimeException | IOException e) {
+            installer.delete(instanceFolder);
+            if (e instanceof UpgradeAbortedException) {
+                throw (UpgradeAbortedException) e;
+            }
+            throw new UpgradeAbortedException("The new version could not be staged, the current version is kept", e);
+        } catch (TaskInterruptedException e) {
+            installer.delete(instanceFolder);
+            throw new UpgradeAbortedException("The staging has been interrupted, the current version is kept", e);
+        } finally {
+            installer.delete(patchFolder);
+        }
+        if (LOG.isLoggable(Level.INFO)) {
+            LOG.log(Level.INFO, String.format("A new version of the application '%s' has been staged into '%s'"
+                + " in %d ms", application.name(), instanceFolder.getAbsolutePath(),
+                System.currentTimeMillis() - start));
+        }
+        return true;
+    }
+
+    /**
+     * Checks that the version manager of the specified staged configuration can be found, so that the
+     * next version could be upgraded too.
+     * @param className the name of the class of the application.
+     * @param config the configuration of the staged version.
+     * @throws ApplicationException if no version manager could be found.
+     */
+    private void resolveVersionManager(final String className, final Configuration config)
+        throws ApplicationException {
+        final ClassLoader contextCL = Thread.currentThread().getContextClassLoader();
+        ClassLoader classLoader = null;
+        try {
+            classLoader = getClassLoader(config);
+            Thread.currentThread().setContextClassLoader(classLoader);
+            if (getVersionManager(className, classLoader) == null) {
+                throw new ApplicationException("No version manager could be found in the staged version");
+            }
+        } finally {
+            Thread.currentThread().setContextClassLoader(contextCL);
+            closeClasspath(config);
+            close(classLoader);
+        }
+    }
+
+    /**
+     * Gives the folder in which the staged version of the application has been installed.
+     * @return the folder of the staged version, {@code null} if no version has been staged.
+     */
+    File getStagedFolder() {
+        return installer.getStagedFolder();
+    }
+
+    @Override
+    public Future<Void> applyStaged() {
+        final Callable<Void> task = () -> {
+            try {
+                doApplyStaged();
+            } catch (ApplicationException e) {
+                if (LOG.isLoggable(Level.SEVERE)) {
+                    LOG.log(Level.SEVERE, e.getMessage(), e);
+                }
+                if (!(e instanceof UpgradeAbortedException)) {
+                    exit();
+                }
+                throw e;
+            }
+            return null;
+        };
+        final FutureTask<Void> future = new FutureTask<>(task);
+        executor.execute(future);
+        return future;
+    }
+
+    /**
+     * Replaces the current version of the application with the staged version. As the staged version
+     * is already installed, the current version is only stopped while the staged version is started.
+     * @throws ApplicationException if the staged version could not be applied.
+     * @throws UpgradeAbortedException if no version has been staged, the current version is kept, or if the
+     * previous version has been restored by a guarded upgrade.
+     */
+    void doApplyStaged() throws ApplicationException {
+        if (state.get() != ApplicationState.INITIALIZED) {
+            throw new ApplicationException(String.format(COULD_NOT_UPGRADE_ILLEGAL_STATE, state.get()));
+        }
+        final File stagedFolder = getStagedFolder();
+        if (stagedFolder == null) {
+            throw new UpgradeAbortedException("No version has been staged");
+        }
+        final long start = System.currentTimeMillis();
+        final File previousFolder = getInstallFolder();
+        try {
+            destroy(true);
+            switchToStaged(stagedFolder);
+            startGuarded(previousFolder);
+        } finally {
+            discardState();
+        }
+        installer.retire(previousFolder);
+        if (LOG.isLoggable(Level.INFO)) {
+            LOG.log(Level.INFO, String.format("The application '%s' has been upgraded to the version '%s' in %d ms",
+                getApplication().name(), getApplication().version(), System.currentTimeMillis() - start));
+        }
+    }
+
+    @Override
+    public Future<Void> rollback() {
+        final Callable<Void> task = () -> {
+            try {
+                doRollback();
+            } catch (ApplicationException e) {
+                if (LOG.isLoggable(Level.SEVERE)) {
+                    LOG.log(Level.SEVERE, e.getMessage(), e);
+                }
+                if (!(e instanceof UpgradeAbortedException)) {
+                    exit();
+                }
+                throw e;
+            }
+            return null;
+        };
+        final FutureTask<Void> future = new FutureTask<>(task);
+        executor.execute(future);
+        return future;
+    }
+
+    /**
+     * Replaces the current version of the application with the most recent previous version that has been
+     * retained. The current version is stopped, the pointer file is switched back to the previous installation
+     * whose configuration is reloaded and the previous version is started. The installation of the replaced
+     * version is then deleted, unless it is the root folder.
+     * @throws ApplicationException if the previous version could not be started.
+     * @throws UpgradeAbortedException if no previous version has been retained, the current version is kept.
+     */
+    void doRollback() throws ApplicationException {
+        if (state.get() != ApplicationState.INITIALIZED) {
+            throw new ApplicationException(String.format("Could not roll back the application as the state is"
+                + " illegal: %s", state.get()));
+        }
+        final List<File> previous = getPreviousFolders();
+        if (previous.isEmpty()) {
+            throw new UpgradeAbortedException("No previous version has been retained");
+        }
+        final long start = System.currentTimeMillis();
+        final File target = previous.remove(0);
+        final File currentFolder = getInstallFolder();
+        // The state of the faulty version is not handed over
+        destroy(false);
+        activate(target);
+        installer.restored(target);
+        start();
+        if (!currentFolder.equals(root)) {
+            installer.delete(currentFolder);
+        }
+        if (LOG.isLoggable(Level.INFO)) {
+            LOG.log(Level.INFO, String.format("The application '%s' has been rolled back to the version '%s' in %d ms",
+                getApplication().name(), getApplication().version(), System.currentTimeMillis() - start));
+        }
+    }
+
+    /**
+     * Makes the specified staged version the current installation of the application.
+     * @param stagedFolder the folder in which the staged version has been installed.
+     * @throws ApplicationException if the staged version could not be made the current installation.
+     */
+    private void switchToStaged(final File stagedFolder) throws ApplicationException {
+        activate(stagedFolder);
+        installer.clearStagedFolder();
+    }
+
+    /**
+     * Makes the specified folder the current installation of the application by replacing atomically
+     * the pointer file, then reloads the configuration from this folder.
+     * @param folder the folder in which the version to activate has been installed.
+     * @throws ApplicationException if the specified folder could not be made the current installation.
+     */
+    private void activate(final File folder) throws ApplicationException {
+        try {
+            installer.storeInstallFolder(folder);
+        } catch (IOException e) {
+            throw new ApplicationException(String.format("Could not switch to the version installed in '%s'",
+                folder.getAbsolutePath()), e);
+        }
+        loadConfiguration();
+        deleteClassList();
+    }
+
+    /**
+     * Applies the staged version of the application if any at launch when it has been enabled by the system
+     * parameter {@code essobedo.appma.core.staged.auto}, an error is only logged.
+     */
+    private void applyStagedAtLaunch() {
+        if (!Boolean.getBoolean(DefaultApplicationManager.PARAM_STAGED_AUTO)) {
+            return;
+        }
+        final File stagedFolder = getStagedFolder();
+        if (stagedFolder == null) {
+            return;
+        }
+        final File previousFolder = getInstallFolder();
+        try {
+            switchToStaged(stagedFolder);
+        } catch (ApplicationException e) {
+            if (LOG.isLoggable(Level.WARNING)) {
+                LOG.log(Level.WARNING, "Could not apply the staged version at launch", e);
             }
+            return;
+        }
+        installer.retire(previousFolder);
+        if (LOG.isLoggable(Level.INFO)) {
+            LOG.log(Level.INFO, String.format("The staged version in '%s' has been applied at launch",
+                stagedFolder.getAbsolutePath()));
         }
     }
 
     /**
-     * Closes the classloader if possible in order to properly release the resources.
-     * @param classLoader The classloader to close.
+     * Replaces the current version of the application with the new version then destroys the previous
+     * version and deletes its installation folder if it has been created by a previous blue/green upgrade.
+     * @param previous the version of the application to replace.
+     * @param application the new version of the application.
+     * @param config the configuration of the new version of the application.
+     * @param scene the scene of the new version of the application.
      */
-    @SuppressWarnings("PMD.DoNotCallGarbageCollectionExplicitly")
-    @SuppressFBWarnings(value = "DM_GC", justification = "Needed to properly release the jar files")
-    private void close(final ClassLoader classLoader) {
-        if (classLoader == null) {
-            return;
+    private void switchTo(final Manageable previous, final Manageable application, final Configuration config,
+                          final Scene scene) {
+        final Configuration previousConfig = getConfiguration();
+        final File previousFolder = getInstallFolder();
+        synchronized (this) {
+            this.application = application;
+            this.configuration = config;
+            this.versionManager = null;
+            this.versionManagerClassLoader = null;
         }
-        if (classLoader instanceof Closeable) {
-            if (LOG.isLoggable(Level.INFO)) {
-                LOG.log(Level.INFO, "Closing the classloader");
-            }
-            try {
-                ((Closeable) classLoader).close();
-            } catch (IOException e) {
-                if (LOG.isLoggable(Level.WARNING)) {
-                    LOG.log(Level.WARNING, "Could not close properly the classloader", e);
+        stopPreload();
+        storeStartupRecord(application, config);
+        deleteClassList();
+        final Stage stage = getStage();
+        if (stage != null) {
+            Platform.runLater(() -> {
+                if (previous.icon() != null) {
+                    stage.getIcons().removeAll(previous.icon());
                 }
-            } finally {
-                // Ensure that there is no more references relying on this classloader.
-                System.gc();
-            }
+                decorate(stage, application);
+                if (scene != null) {
+                    showApplication(application, scene);
+                }
+            });
         }
+        destroyPrevious(previous, previousConfig);
+        installer.retire(previousFolder);
     }
 
-    @Override
-    public Task<String> checkForUpdate() throws ApplicationException {
-        final Manageable application = getApplication();
-        if (application == null) {
-            throw new ApplicationException("Could not check for update as there is no application running");
-        }
+    /**
+     * Destroys the specified version of the application that is not the current version anymore and releases
+     * its resources, an error is only logged.
+     * @param application the version of the application to destroy.
+     * @param config the configuration of the version of the application to destroy.
+     */
+    private void destroyPrevious(final Manageable application, final Configuration config) {
         final ClassLoader contextCL = Thread.currentThread().getContextClassLoader();
         try {
             Thread.currentThread().setContextClassLoader(application.getClass().getClassLoader());
-            final VersionManager versionManager = getVersionManager(application.getClass().getName(),
-                application.getClass().getClassLoader());
-            if (versionManager == null) {
-                throw new ApplicationException("No version manager could be found");
-            }
             if (LOG.isLoggable(Level.INFO)) {
-                LOG.log(Level.INFO, String.format("Checking for update for the application '%s' version '%s'",
-                    application.name(),
+                LOG.log(Level.INFO, String.format("Destroy the application '%s' version '%s'", application.name(),
                     application.version()));
             }
-            return versionManager.check(application);
-        } catch (ApplicationException e) {
-            if (LOG.isLoggable(Level.SEVERE)) {
-                LOG.log(Level.SEVERE, "Could not check for update", e);
+            quiesce(application);
+            application.destroy();
+        } catch (ApplicationException | RuntimeException e) {
+            if (LOG.isLoggable(Level.WARNING)) {
+                LOG.log(Level.WARNING, String.format("Could not destroy the application '%s' version '%s'",
+                    application.name(), application.version()), e);
             }
-            throw e;
         } finally {
             Thread.currentThread().setContextClassLoader(contextCL);
+            executors.release(application.getClass().getClassLoader());
+            closeClasspath(config);
+            close(application.getClass().getClassLoader());
         }
     }
 
-    @Override
-    public Future<Void> upgrade() {
-        final Callable<Void> task = () -> {
-            try {
-                doUpgrade();
-            } catch (ApplicationException e) {
-                if (LOG.isLoggable(Level.SEVERE)) {
-                    LOG.log(Level.SEVERE, e.getMessage(), e);
-                }
-                exit();
-                throw e;
-            }
-            return null;
-        };
-        final FutureTask<Void> future = new FutureTask<>(task);
-        executor.execute(future);
-        return future;
-    }
-
     /**
-     * Upgrades the application.
-     * @throws ApplicationException if the application could not be upgraded.
+     * Loads and links all the classes of the new version of the application in an isolated classloader.
+     * The classpath of the current version is used to resolve the dependencies that are not part of
+     * the patch.
+     * @param patchFolder the folder that contains the content of the patch.
+     * @throws UpgradeAbortedException if the classes could not be verified, the current version is kept.
+     * @throws InvalidPatchException if the patch could not be read or if at least one class could not be linked,
+     * the patch is then deleted.
      */
-    void doUpgrade() throws ApplicationException {
-        if (state.get() != ApplicationState.INITIALIZED) {
-            throw new ApplicationException(String.format(COULD_NOT_UPGRADE_ILLEGAL_STATE, state.get()));
-        }
-        final Manageable application = getApplication();
-        if (application == null) {
-            throw new ApplicationException(String.format(COULD_NOT_UPGRADE_ILLEGAL_STATE, state.get()));
+    private void verify(final File patchFolder) throws UpgradeAbortedException {
+        final List<String> errors;
+        try {
+            final ClassVerifier verifier = new ClassVerifier(getClass().getClassLoader(),
+                new ConfigurationFactory(patchFolder).create().getClasspathAsUrls(),
+                getConfiguration().getClasspathAsUrls());
+            errors = verifier.verify();
+        } catch (InvalidPatchException e) {
+            installer.delete(patchFolder);
+            throw e;
+        } catch (UpgradeAbortedException e) {
+            throw e;
+        } catch (ApplicationException e) {
+            installer.delete(patchFolder);
+            throw new InvalidPatchException(String.format("The classes of the patch '%s' could not be read",
+                patchFolder.getAbsolutePath()), e);
         }
-        final String className = application.getClass().getName();
-        final VersionManager versionManager = getVersionManager(className,
-                                                                application.getClass().getClassLoader());
-        if (versionManager == null) {
-            throw new ApplicationException("No version manager could be found");
+        if (!errors.isEmpty()) {
+            installer.delete(patchFolder);
+            throw new InvalidPatchException(String.format(
+                "The upgrade has been aborted as %d class(es) of the new version could not be linked",
+                errors.size()));
         }
-        final File patchFolder = getPatchContent(application, versionManager);
-        final String oldVersion = application.version();
-        destroy();
-        applyNShow(className, patchFolder, oldVersion);
     }
 
     /**
@@ -512,6 +1971,14 @@ class DefaultApplicationManager implements ApplicationManager {
         if (!state.compareAndSet(ApplicationState.UPGRADING, ApplicationState.DESTROYED)) {
             throw new ApplicationException(String.format(COULD_NOT_UPGRADE_ILLEGAL_STATE, state.get()));
         }
+        start();
+    }
+
+    /**
+     * Creates, initializes and shows the application of the current installation.
+     * @throws ApplicationException in case the application could not be created or initialized.
+     */
+    private void start() throws ApplicationException {
         create();
         if (getStage() != null && getApplication().icon() != null) {
             Platform.runLater(() -> getStage().getIcons().add(getApplication().icon()));
@@ -519,6 +1986,135 @@ class DefaultApplicationManager implements ApplicationManager {
         initNShow();
     }
 
+    /**
+     * Starts the new version of the application that has just been activated. If the guarded upgrades have
+     * been enabled by the system parameter {@code essobedo.appma.core.guarded} and the new version could not
+     * be started or doesn't stay healthy during the health window, the reason is recorded, the new version is
+     * released, its installation is deleted and the previous version is restarted from the specified folder.
+     * @param previousFolder the installation folder of the previous version.
+     * @throws ApplicationException if the new version could not be started while the upgrade is not guarded,
+     * or if the previous version could not be restored.
+     * @throws UpgradeAbortedException if the previous version has been restored.
+     */
+    private void startGuarded(final File previousFolder) throws ApplicationException {
+        if (!Boolean.getBoolean(DefaultApplicationManager.PARAM_GUARDED)) {
+            start();
+            return;
+        }
+        String reason;
+        ApplicationException cause = null;
+        try {
+            start();
+            reason = checkHealth(getApplication());
+        } catch (ApplicationException e) {
+            reason = String.format("The new version could not be started: %s", e.getMessage());
+            cause = e;
+        }
+        if (reason == null) {
+            return;
+        }
+        if (LOG.isLoggable(Level.SEVERE)) {
+            LOG.log(Level.SEVERE, String.format("%s, the previous version is restored", reason), cause);
+        }
+        installer.recordRollbackReason(reason);
+        final File failedFolder = getInstallFolder();
+        // The previous version is restored even if the health check has been interrupted
+        final boolean interrupted = Thread.interrupted();
+        try {
+            abandon();
+            activate(previousFolder);
+            start();
+            if (!failedFolder.equals(root) && !failedFolder.equals(previousFolder)) {
+                installer.delete(failedFolder);
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        throw new UpgradeAbortedException(String.format("%s, the previous version has been restored", reason), cause);
+    }
+
+    /**
+     * Calls the health probe of the specified application periodically until the end of the health window
+     * defined by the system parameter {@code essobedo.appma.core.health.window}. If the current thread is
+     * interrupted meanwhile, the check is considered as failed as the application could not be proven healthy,
+     * and the interrupt status of the thread is restored.
+     * @param application the application to check.
+     * @return the reason why the application is considered as unhealthy, {@code null} if it stayed healthy.
+     */
+    private static String checkHealth(final Manageable application) {
+        final long window = Long.getLong(DefaultApplicationManager.PARAM_HEALTH_WINDOW,
+            DefaultApplicationManager.DEFAULT_HEALTH_WINDOW);
+        final long interval = Math.max(1L, Long.getLong(DefaultApplicationManager.PARAM_HEALTH_INTERVAL,
+            DefaultApplicationManager.DEFAULT_HEALTH_INTERVAL));
+        final long deadline = System.currentTimeMillis() + window;
+        try {
+            while (true) {
+                try {
+                    if (!callBefore("appma-health", application, application::isHealthy, interval)) {
+                        return String.format("The application '%s' version '%s' is unhealthy", application.name(),
+                            application.version());
+                    }
+                } catch (ExecutionException e) {
+                    return String.format("The health probe of the application '%s' version '%s' failed: %s",
+                        application.name(), application.version(), e.getCause());
+                } catch (TimeoutException e) {
+                    return String.format("The health probe of the application '%s' version '%s' didn't answer"
+                        + " within %d ms", application.name(), application.version(), interval);
+                }
+                final long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0L) {
+                    return null;
+                }
+                Thread.sleep(Math.min(remaining, interval));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return String.format("The health check of the application '%s' version '%s' has been interrupted",
+                application.name(), application.version());
+        }
+    }
+
+    /**
+     * Releases what could be released of the current version of the application whatever its state,
+     * an error is only logged.
+     */
+    private void abandon() {
+        if (state.get() == ApplicationState.INITIALIZED) {
+            try {
+                destroy(false);
+                return;
+            } catch (ApplicationException e) {
+                if (LOG.isLoggable(Level.WARNING)) {
+                    LOG.log(Level.WARNING, "Could not destroy the new version of the application", e);
+                }
+            }
+        }
+        final Manageable application;
+        synchronized (this) {
+            application = this.application;
+            this.application = null;
+            this.versionManager = null;
+            this.versionManagerClassLoader = null;
+        }
+        stopPreload();
+        closeClasspath(getConfiguration());
+        if (application != null) {
+            executors.release(application.getClass().getClassLoader());
+            close(application.getClass().getClassLoader());
+        }
+        state.set(ApplicationState.DESTROYED);
+    }
+
+    /**
+     * Gives the reason of the last automatic rollback.
+     * @return the reason of the last automatic rollback, {@code null} if there was none.
+     */
+    String getRollbackReason() {
+        return installer.getRollbackReason();
+    }
+
     /**
      * Triggers an initialization of the application. It will be done asynchronously.
      * @param stage the stage to use to initialize the application.
@@ -528,9 +2124,19 @@ class DefaultApplicationManager implements ApplicationManager {
     Future<Void> asyncInitNShow(final Stage stage, final Runnable callbackOnError) {
         final Callable<Void> task = () -> {
             try {
+                final Manageable application = getApplication();
+                if (application != null && !application.isJavaFX()) {
+                    // The Java FX toolkit has been started for nothing, the application will be initialized
+                    // once it is stopped
+                    Platform.runLater(Platform::exit);
+                    return null;
+                }
                 synchronized (this) {
                     this.stage = stage;
                 }
+                if (application != null) {
+                    Platform.runLater(() -> decorate(stage, application));
+                }
                 initNShow();
             } catch (ApplicationException e) {
                 if (callbackOnError != null) {
@@ -548,6 +2154,22 @@ class DefaultApplicationManager implements ApplicationManager {
         return future;
     }
 
+    /**
+     * Sets the title and the icon of the application to the specified stage.
+     * @param stage the stage to decorate.
+     * @param application the application from which the title and the icon are retrieved.
+     */
+    private static void decorate(final Stage stage, final Manageable application) {
+        if (application.title() == null) {
+            stage.setTitle(Localization.getMessage("title.window"));
+        } else {
+            stage.setTitle(application.title());
+        }
+        if (application.icon() != null) {
+            stage.getIcons().add(application.icon());
+        }
+    }
+
     /**
      * Initializes and shows the application.
      * @throws ApplicationException in case the application could not be initialized.
@@ -600,21 +2222,15 @@ class DefaultApplicationManager implements ApplicationManager {
      */
     private boolean applyPatch(final String className, final File patchFolder,
                                final String oldVersion) throws ApplicationException {
-        final ClassLoader contextCL = Thread.currentThread().getContextClassLoader();
-        Configuration config = null;
-        ClassLoader classLoader = null;
         try {
-            final ConfigurationFactory factory = new ConfigurationFactory(patchFolder);
-            config = factory.create();
-            classLoader = getClassLoader(config);
-            Thread.currentThread().setContextClassLoader(classLoader);
-            final VersionManager versionManager = getVersionManager(className, classLoader);
-            if (versionManager == null) {
-                throw new ApplicationException("No version manager could be found");
-            }
-            final Configuration configuration = executeTask("Applying the patch",
-                ((VersionManager<?>) versionManager).upgrade(patchFolder, root, oldVersion));
+            journal.recordPatching();
+            final long since = Installer.modificationStart();
+            final Configuration configuration = patch(className, patchFolder, getInstallFolder(), oldVersion);
+            installer.force(getInstallFolder(), since);
             reload(configuration);
+            deleteClassList();
+            // The installation folder is consistent again
+            journal.endUpgrade();
         } catch (TaskInterruptedException e) {
             if (LOG.isLoggable(Level.FINE)) {
                 LOG.log(Level.FINE, "The task has been interrupted", e);
@@ -627,25 +2243,63 @@ class DefaultApplicationManager implements ApplicationManager {
         } catch (RuntimeException e) {
             state.set(ApplicationState.UNKNOWN);
             throw new ApplicationException("Could not upgrade the application", e);
+        } finally {
+            installer.delete(patchFolder);
+        }
+        return true;
+    }
+
+    /**
+     * Applies the patch to the specified installation folder using the version manager of the new version.
+     * @param className The name of the application to upgrade.
+     * @param patchFolder the folder containing the content of the patch.
+     * @param appRoot the folder in which the application is installed.
+     * @param oldVersion the previous version of the application.
+     * @return the new configuration of the application, {@code null} if the default configuration must be used.
+     * @throws ApplicationException in case the patch could not be applied.
+     * @throws TaskInterruptedException if the task has been interrupted.
+     */
+    private Configuration patch(final String className, final File patchFolder, final File appRoot,
+                                final String oldVersion) throws ApplicationException, TaskInterruptedException {
+        final ClassLoader contextCL = Thread.currentThread().getContextClassLoader();
+        Configuration config = null;
+        ClassLoader classLoader = null;
+        try {
+            final ConfigurationFactory factory = new ConfigurationFactory(patchFolder);
+            config = factory.create();
+            classLoader = getClassLoader(config);
+            Thread.currentThread().setContextClassLoader(classLoader);
+            final VersionManager versionManager = getVersionManager(className, classLoader);
+            if (versionManager == null) {
+                throw new ApplicationException("No version manager could be found");
+            }
+            // The status is not shown if the current version is still running
+            return executeTask("Applying the patch",
+                ((VersionManager<?>) versionManager).upgrade(patchFolder, appRoot, oldVersion),
+                state.get() != ApplicationState.INITIALIZED);
         } finally {
             Thread.currentThread().setContextClassLoader(contextCL);
             closeClasspath(config);
             close(classLoader);
-            final Folder folder = new Folder(patchFolder);
-            folder.delete();
         }
-        return true;
     }
 
     /**
      * Gets the content of the patch and stores it into a folder.
      * @param application the application for which we want to get the patch.
      * @param versionManager the version manager to use to get the content of the patch.
+     * @param running {@code true} if the current version keeps running meanwhile, in which case the progress
+     * of the tasks is only logged and a failure only aborts the upgrade, {@code false} to show the progress of
+     * the tasks in the window of the application if any.
+     * @param installed {@code true} if the patch is applied to a new installation folder, {@code false} if it is
+     * applied in place to the root folder.
      * @return a {@code File} corresponding to the folder that contains the content of the patch.
      * @throws ApplicationException if the content of the patch could not be retrieved.
+     * @throws UpgradeAbortedException if the content of the patch could not be retrieved while the current
+     * version keeps running.
      */
-    private File getPatchContent(final Manageable application, final VersionManager versionManager)
-                                 throws ApplicationException {
+    private File getPatchContent(final Manageable application, final VersionManager versionManager,
+                                 final boolean running, final boolean installed) throws ApplicationException {
         File destFolder;
         final ClassLoader contextCL = Thread.currentThread().getContextClassLoader();
         File file2Delete = null;
@@ -655,22 +2309,28 @@ class DefaultApplicationManager implements ApplicationManager {
             file2Delete = zipFile;
             try (OutputStream out = new FileOutputStream(zipFile)) {
                 executeTask(String.format("Getting the new version of the application '%s'",
-                    application.name()), versionManager.store(application, out));
+                    application.name()), versionManager.store(application, out), !running);
             }
-            destFolder = getPatchContentTargetFolder();
-            final Task<Void> unzip = new UnzipTask(zipFile, destFolder);
-            executeTask("Unzipping the patch", unzip);
+            destFolder = getPatchContentTargetFolder(installed);
+            final Task<Void> unzip = new UnzipTask(zipFile, destFolder, Installer.isDurable());
+            executeTask("Unzipping the patch", unzip, !running);
         } catch (TaskInterruptedException e) {
+            if (running) {
+                throw new UpgradeAbortedException("The download of the patch has been interrupted", e);
+            }
             if (LOG.isLoggable(Level.FINE)) {
                 LOG.log(Level.FINE, "The task has been interrupted", e);
             }
             exit();
             destFolder = null;
-        } catch (ApplicationException e) {
-            state.set(ApplicationState.UNKNOWN);
-            throw e;
-        } catch (RuntimeException | IOException e) {
+        } catch (ApplicationException | RuntimeException | IOException e) {
+            if (running) {
+                throw new UpgradeAbortedException("The patch could not be retrieved, the current version is kept", e);
+            }
             state.set(ApplicationState.UNKNOWN);
+            if (e instanceof ApplicationException) {
+                throw (ApplicationException) e;
+            }
             throw new ApplicationException("Could not upgrade the application", e);
         } finally {
             if (file2Delete != null && !file2Delete.delete() && LOG.isLoggable(Level.WARNING)) {
@@ -683,31 +2343,118 @@ class DefaultApplicationManager implements ApplicationManager {
     }
 
     /**
-     * Gives the folder that will contain the content of the patch.
+     * Gives the folder that will contain the content of the patch, which is a new folder of the staging folder
+     * by default. If the patch is applied in place while the staging folder is inside the root folder, a new
+     * temporary folder is used instead as the version manager may replace the whole content of the root folder.
+     * @param installed {@code true} if the patch is applied to a new installation folder, {@code false} if it is
+     * applied in place to the root folder.
      * @return the folder that will contain the content of the patch.
-     * @throws IOException in case the temporary directory could not be created.
+     * @throws IOException in case the folder could not be created.
      */
-    private File getPatchContentTargetFolder() throws IOException {
+    private File getPatchContentTargetFolder(final boolean installed) throws IOException {
         if (patchContentTargetFolder == null) {
-            return new File(Files.createTempDirectory("upgrade").toString());
+            final File staging = getStagingFolder();
+            if (!installed && staging.getAbsoluteFile().toPath().startsWith(root.getAbsoluteFile().toPath())) {
+                return new File(Files.createTempDirectory(DefaultApplicationManager.STAGING_PREFIX).toString());
+            }
+            prepareStagingFolder(staging);
+            return Files.createTempDirectory(staging.toPath(), DefaultApplicationManager.STAGING_PREFIX).toFile();
         } else {
             return patchContentTargetFolder;
         }
     }
 
     /**
-     * Gives the file that will contain the patch.
+     * Gives the file that will contain the patch, which is a new file of the staging folder by default.
      * @return the file that will contain the patch.
-     * @throws IOException in case the temporary file could not be created.
+     * @throws IOException in case the file could not be created.
      */
     private File getPatchTargetFile() throws IOException {
         if (patchTargetFile == null) {
-            return File.createTempFile("upgrade", "tmp");
+            final File staging = getStagingFolder();
+            prepareStagingFolder(staging);
+            return Files.createTempFile(staging.toPath(), DefaultApplicationManager.STAGING_PREFIX, "tmp").toFile();
         } else {
             return patchTargetFile;
         }
     }
 
+    /**
+     * Gives the folder into which the patches are downloaded and extracted, which is defined by the system
+     * parameter {@code essobedo.appma.core.staging}. By default, it is a sub folder of the internal folder so
+     * that it is on the same file store as the installation folders and the content of the patch can be moved
+     * instead of being copied.
+     * @return the staging folder.
+     */
+    File getStagingFolder() {
+        final String location = System.getProperty(DefaultApplicationManager.PARAM_STAGING);
+        if (location == null) {
+            return new File(ConfigurationFactory.getInternalFolder(root), DefaultApplicationManager.STAGING_FOLDER);
+        }
+        return new File(location);
+    }
+
+    /**
+     * Creates if needed the specified staging folder and checks that it is on the same file store as the root
+     * folder, otherwise a warning is logged as the content of the patch can only be copied.
+     * @param staging the staging folder to prepare.
+     * @throws IOException if the staging folder could not be created.
+     */
+    private void prepareStagingFolder(final File staging) throws IOException {
+        Files.createDirectories(staging.toPath());
+        if (!Files.getFileStore(staging.toPath()).equals(Files.getFileStore(root.toPath()))
+            && LOG.isLoggable(Level.WARNING)) {
+            LOG.log(Level.WARNING, String.format("The staging folder '%s' is not on the same file store as the"
+                + " root folder, the content of the patches cannot be moved atomically", staging.getAbsolutePath()));
+        }
+    }
+
+    /**
+     * Deletes at launch the patches left into the default staging folder by an upgrade that has been
+     * interrupted, once the upgrade has been recovered.
+     */
+    private void sweepStagingFolder() {
+        if (System.getProperty(DefaultApplicationManager.PARAM_STAGING) != null) {
+            // The staging folder may be shared, nothing is deleted
+            return;
+        }
+        final File[] files = getStagingFolder().listFiles(
+            (dir, name) -> name.startsWith(DefaultApplicationManager.STAGING_PREFIX));
+        if (files == null) {
+            return;
+        }
+        for (final File file : files) {
+            if (file.isDirectory()) {
+                installer.delete(file);
+            } else if (!file.delete() && LOG.isLoggable(Level.WARNING)) {
+                LOG.log(Level.WARNING, String.format("The file '%s' could not be deleted", file.getAbsolutePath()));
+            }
+        }
+    }
+
+    /**
+     * Deletes at launch the blobs of the store shared by all the installations that are not used anymore by
+     * any installation, an error is only logged.
+     */
+    private static void collectGarbage() {
+        final ContentStore store = ContentStore.getShared();
+        if (store == null) {
+            return;
+        }
+        try {
+            final int deleted = store.collectGarbage();
+            if (deleted > 0 && LOG.isLoggable(Level.INFO)) {
+                LOG.log(Level.INFO, String.format("%d unused blobs have been deleted from the store '%s'", deleted,
+                    store.getFolder().getAbsolutePath()));
+            }
+        } catch (IOException e) {
+            if (LOG.isLoggable(Level.WARNING)) {
+                LOG.log(Level.WARNING, String.format("The unused blobs of the store '%s' could not be deleted",
+                    store.getFolder().getAbsolutePath()), e);
+            }
+        }
+    }
+
     /**
      * Executes the specified task and use {@link LogProgress} or {@link StatusBar} to
      * provide information about how the task is progressing. If the application is
@@ -715,17 +2462,19 @@ class DefaultApplicationManager implements ApplicationManager {
      * {@link LogProgress}.
      * @param messageInfo the info message to log before executing the task.
      * @param task the task to execute.
+     * @param showStatus {@code true} to show the progress of the task in the window of the application
+     * if any, {@code false} to only log it.
      * @param <T> the return type of the task to execute.
      * @return The result of the task
      * @throws ApplicationException if the task fails.
      * @throws TaskInterruptedException if the task has been interrupted.
      */
-    private <T> T executeTask(final String messageInfo, final Task<T> task)
+    private <T> T executeTask(final String messageInfo, final Task<T> task, final boolean showStatus)
                                 throws ApplicationException, TaskInterruptedException {
         if (LOG.isLoggable(Level.INFO)) {
             LOG.log(Level.INFO, messageInfo);
         }
-        if (getStage() == null) {
+        if (getStage() == null || !showStatus) {
             new LogProgress(task);
         } else {
             final StatusBar bar = new StatusBar(task);
@@ -750,6 +2499,30 @@ class DefaultApplicationManager implements ApplicationManager {
         primaryStage.setY((primScreenBounds.getHeight() - primaryStage.getHeight()) / 2);
     }
 
+    /**
+     * Gives the version manager of the specified application. The version manager is resolved only once
+     * per classloader of application, until the application is destroyed.
+     * @param application the application for which we want the version manager.
+     * @return the version manager of the application, {@code null} if none could be found.
+     * @throws ApplicationException if an error occurs while looking for a version manager.
+     */
+    VersionManager<?> getVersionManager(final Manageable application) throws ApplicationException {
+        final ClassLoader classLoader = application.getClass().getClassLoader();
+        synchronized (this) {
+            if (versionManager != null && versionManagerClassLoader == classLoader) {
+                return versionManager;
+            }
+        }
+        final VersionManager<?> result = getVersionManager(application.getClass().getName(), classLoader);
+        if (result != null) {
+            synchronized (this) {
+                this.versionManager = result;
+                this.versionManagerClassLoader = classLoader;
+            }
+        }
+        return result;
+    }
+
     /**
      * Gives the version manager that could be found using the given class loader and that matches
      * with the specified full qualified name of the application.
@@ -761,6 +2534,7 @@ class DefaultApplicationManager implements ApplicationManager {
      */
     private VersionManager<?> getVersionManager(final String className, final ClassLoader classLoader)
         throws ApplicationException {
+        Class<?> applicationClass = null;
         final ServiceLoader<VersionManager> loader = ServiceLoader.load(VersionManager.class, classLoader);
         for (final VersionManager versionManager : loader) {
             if (LOG.isLoggable(Level.FINE)) {
@@ -771,7 +2545,21 @@ class DefaultApplicationManager implements ApplicationManager {
                 LOG.log(Level.FINE, String.format("The version manager '%s' has '%s' as generic super class",
                     versionManager.getClass().getName(), versionManager.getClass().getGenericSuperclass()));
             }
-            if (accept(className, classLoader, versionManager)) {
+            final Class<?> typeClass = getTargetType(versionManager);
+            if (typeClass == null) {
+                continue;
+            } else if (typeClass == Object.class) {
+                return versionManager;
+            }
+            if (applicationClass == null) {
+                // The class of the application is only loaded once and only if needed
+                try {
+                    applicationClass = Class.forName(className, false, classLoader);
+                } catch (ClassNotFoundException e) {
+                    throw new ApplicationException(String.format("Could not find the class '%s'", className), e);
+                }
+            }
+            if (typeClass.isAssignableFrom(applicationClass)) {
                 return versionManager;
             }
         }
@@ -779,16 +2567,13 @@ class DefaultApplicationManager implements ApplicationManager {
     }
 
     /**
-     * Indicates whether the given {@link VersionManager} matches with the specified criteria.
-     * @param className the full qualified name of the application for which we want a version manager.
-     * @param classLoader the classloader to use to check the version manager.
+     * Gives the type of application that the given {@link VersionManager} can manage.
      * @param versionManager the version manager to check.
-     * @return {@code true} if the version manager matches, {@code false} otherwise.
-     * @throws ApplicationException if the version manager could not be checked.
+     * @return the type of application that the version manager can manage, {@code Object.class} if it can
+     * manage any type of application or {@code null} if the type could not be determined.
      */
     @SuppressWarnings("PMD.AvoidLiteralsInIfCondition")
-    private boolean accept(final String className, final ClassLoader classLoader,
-                           final VersionManager versionManager) throws ApplicationException {
+    private Class<?> getTargetType(final VersionManager versionManager) {
 
         final Type[] types = getTypes(versionManager);
         if (types.length == 1) {
@@ -796,7 +2581,7 @@ class DefaultApplicationManager implements ApplicationManager {
             if (types[0] instanceof ParameterizedType) {
                 type = (ParameterizedType) types[0];
             } else {
-                return true;
+                return Object.class;
             }
             if (LOG.isLoggable(Level.FINE)) {
                 LOG.log(Level.FINE, String.format("The version manager '%s' has '%s' type arguments",
@@ -808,15 +2593,10 @@ class DefaultApplicationManager implements ApplicationManager {
                     LOG.log(Level.FINE, String.format("The version manager '%s' is for the type '%s'",
                         versionManager.getClass().getName(), typeClass));
                 }
-
-                try {
-                    return typeClass.isAssignableFrom(Class.forName(className, false, classLoader));
-                } catch (ClassNotFoundException e) {
-                    throw new ApplicationException(String.format("Could not find the class '%s'", className), e);
-                }
+                return typeClass;
             }
         }
-        return false;
+        return null;
     }
 
     /**
@@ -842,6 +2622,9 @@ class DefaultApplicationManager implements ApplicationManager {
      */
     private void exit() {
         executor.stop();
+        serverSockets.close();
+        memoryArenas.close();
+        executors.close();
         if (getStage() != null) {
             Platform.runLater(() -> {
                 getStage().close();
@@ -861,4 +2644,29 @@ class DefaultApplicationManager implements ApplicationManager {
         }
         exit();
     }
+
+    /**
+     * The actions allowing to roll forward at launch an upgrade that has been interrupted.
+     */
+    private final class RecoveryActions implements UpgradeRecovery.Actions {
+
+        @Override
+        public void verify(final File patchFolder) throws ApplicationException {
+            if (Boolean.getBoolean(DefaultApplicationManager.PARAM_VERIFY)) {
+                DefaultApplicationManager.this.verify(patchFolder);
+            }
+        }
+
+        @Override
+        public void activate(final File folder) throws ApplicationException {
+            DefaultApplicationManager.this.activate(folder);
+        }
+
+        @Override
+        public void patch(final String className, final File patchFolder, final String oldVersion)
+            throws ApplicationException, TaskInterruptedException {
+            reload(DefaultApplicationManager.this.patch(className, patchFolder, getInstallFolder(), oldVersion));
+            deleteClassList();
+        }
+    }
 }
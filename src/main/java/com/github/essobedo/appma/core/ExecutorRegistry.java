@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2016 essobedo.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.github.essobedo.appma.core;
+
+import com.github.essobedo.appma.exception.ApplicationException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Class allowing to keep the thread pools of the application alive across its versions. Each version of the
+ * application gets its own view of a pool, identified by the classloader of the version, whose tasks are
+ * cancelled when the version is destroyed while the threads are kept for the next version.
+ *
+ * @author Nicolas Filotto (nicolas.filotto@gmail.com)
+ * @version $Id$
+ * @since 1.1.3
+ */
+final class ExecutorRegistry {
+
+    /**
+     * The logger of the class.
+     */
+    private static final Logger LOG = Logger.getLogger(ExecutorRegistry.class.getName());
+
+    /**
+     * The thread pools that have been created so far by name.
+     */
+    private final Map<String, SharedExecutor> executors = new HashMap<>();
+
+    /**
+     * The views of the thread pools by name for each version of the application.
+     */
+    private final Map<ClassLoader, Map<String, GenerationExecutor>> generations = new HashMap<>();
+
+    /**
+     * Indicates whether the registry has been closed.
+     */
+    private boolean closed;
+
+    /**
+     * Registers the version of the application loaded by the specified classloader, so that the views of the
+     * thread pools can be requested for this version.
+     * @param classLoader the classloader of the version of the application.
+     */
+    public void open(final ClassLoader classLoader) {
+        synchronized (this) {
+            if (!closed) {
+                generations.computeIfAbsent(classLoader, key -> new HashMap<>());
+            }
+        }
+    }
+
+    /**
+     * Gives the view of the thread pool registered with the specified name for the version of the application
+     * that made the request. The version is the registered version whose classloader is the specified context
+     * classloader or one of its parents, the specified current version otherwise, so that a thread whose context
+     * classloader is unknown can never create a view that would outlive the version. The thread pool is created
+     * if needed, and its amount of threads is increased if it is lower than the requested amount.
+     * @param name the name of the thread pool.
+     * @param poolSize the amount of threads to keep in the pool.
+     * @param contextClassLoader the context classloader of the thread that made the request.
+     * @param current the classloader of the current version of the application, {@code null} if there is none.
+     * @return the view of the thread pool for the version of the application.
+     * @throws ApplicationException if the registry has been closed, if the amount of threads is not positive or
+     * if the version of the application could not be found.
+     */
+    public ScheduledExecutorService get(final String name, final int poolSize, final ClassLoader contextClassLoader,
+                                        final ClassLoader current) throws ApplicationException {
+        if (poolSize <= 0) {
+            throw new ApplicationException(String.format("The size of the thread pool '%s' must be positive: %d",
+                name, poolSize));
+        }
+        synchronized (this) {
+            if (closed) {
+                throw new ApplicationException("The application manager has been stopped");
+            }
+            final ClassLoader classLoader = getGeneration(contextClassLoader, current);
+            if (classLoader == null) {
+                throw new ApplicationException(String.format("The thread pool '%s' can only be requested by a"
+                    + " running version of the application", name));
+            }
+            SharedExecutor executor = executors.get(name);
+            if (executor == null) {
+                executor = new SharedExecutor(name, poolSize);
+                executors.put(name, executor);
+                if (LOG.isLoggable(Level.INFO)) {
+                    LOG.log(Level.INFO, String.format("The thread pool '%s' of %d thread(s) has been created", name,
+                        poolSize));
+                }
+            } else if (executor.getCorePoolSize() < poolSize) {
+                executor.setCorePoolSize(poolSize);
+            }
+            final Map<String, GenerationExecutor> views = generations.get(classLoader);
+            GenerationExecutor view = views.get(name);
+            if (view == null) {
+                view = new GenerationExecutor(executor, classLoader);
+                views.put(name, view);
+            }
+            return view;
+        }
+    }
+
+    /**
+     * Gives the classloader of the registered version of the application that made a request.
+     * @param contextClassLoader the context classloader of the thread that made the request.
+     * @param current the classloader of the current version of the application, {@code null} if there is none.
+     * @return the classloader of the registered version, {@code null} if none could be found.
+     */
+    private ClassLoader getGeneration(final ClassLoader contextClassLoader, final ClassLoader current) {
+        for (ClassLoader classLoader = contextClassLoader; classLoader != null;
+             classLoader = classLoader.getParent()) {
+            if (generations.containsKey(classLoader)) {
+                return classLoader;
+            }
+        }
+        return current != null && generations.containsKey(current) ? current : null;
+    }
+
+    /**
+     * Cancels all the tasks submitted by the version of the application loaded by the specified classloader.
+     * @param classLoader the classloader of the version of the application.
+     */
+    public void release(final ClassLoader classLoader) {
+        final Map<String, GenerationExecutor> views;
+        synchronized (this) {
+            views = generations.remove(classLoader);
+        }
+        if (views == null) {
+            return;
+        }
+        for (final Map.Entry<String, GenerationExecutor> entry : views.entrySet()) {
+            final int cancelled = entry.getValue().terminate();
+            if (cancelled > 0 && LOG.isLoggable(Level.INFO)) {
+                LOG.log(Level.INFO, String.format("%d task(s) of the thread pool '%s' have been cancelled", cancelled,
+                    entry.getKey()));
+            }
+        }
+    }
+
+    /**
+     * Cancels all the tasks and stops all the thread pools, no thread pool can be created anymore.
+     */
+    public void close() {
+        final Map<String, SharedExecutor> pools;
+        synchronized (this) {
+            this.closed = true;
+            for (final Map<String, GenerationExecutor> views : generations.values()) {
+                for (final GenerationExecutor view : views.values()) {
+                    view.terminate();
+                }
+            }
+            generations.clear();
+            pools = new HashMap<>(executors);
+            executors.clear();
+        }
+        for (final SharedExecutor executor : pools.values()) {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,233 @@
+/*
+ * Copyright (C) 2016 essobedo.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.github.essobedo.appma.core;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RunnableScheduledFuture;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * The view of a {@link SharedExecutor} given to a version of the application. The tasks are executed with
+ * the classloader of this version of the application as context classloader. Shutting down the view only
+ * affects the tasks submitted through it, the threads of the shared executor are kept for the next versions.
+ *
+ * @author Nicolas Filotto (nicolas.filotto@gmail.com)
+ * @version $Id$
+ * @since 1.1.3
+ */
+final class GenerationExecutor extends AbstractExecutorService implements ScheduledExecutorService {
+
+    /**
+     * The executor that actually executes the tasks.
+     */
+    private final SharedExecutor executor;
+
+    /**
+     * The classloader of the version of the application.
+     */
+    private final ClassLoader classLoader;
+
+    /**
+     * Indicates whether the view has been shut down.
+     */
+    private volatile boolean shutdown;
+
+    /**
+     * Constructs a {@code GenerationExecutor} with the specified shared executor and classloader.
+     * @param executor the executor that actually executes the tasks.
+     * @param classLoader the classloader of the version of the application.
+     */
+    GenerationExecutor(final SharedExecutor executor, final ClassLoader classLoader) {
+        this.executor = executor;
+        this.classLoader = classLoader;
+    }
+
+    /**
+     * Checks that new tasks can still be submitted.
+     */
+    private void checkOpen() {
+        if (shutdown) {
+            throw new RejectedExecutionException("The executor has been shut down");
+        }
+    }
+
+    /**
+     * Wraps the specified task in order to execute it with the classloader of the application as context
+     * classloader.
+     * @param command the task to wrap.
+     * @return the wrapped task.
+     */
+    private Runnable wrap(final Runnable command) {
+        return () -> {
+            final Thread thread = Thread.currentThread();
+            final ClassLoader contextCL = thread.getContextClassLoader();
+            try {
+                thread.setContextClassLoader(classLoader);
+                command.run();
+            } finally {
+                thread.setContextClassLoader(contextCL);
+            }
+        };
+    }
+
+    /**
+     * Wraps the specified task in order to execute it with the classloader of the application as context
+     * classloader.
+     * @param callable the task to wrap.
+     * @param <V> the type of the result of the task.
+     * @return the wrapped task.
+     */
+    private <V> Callable<V> wrap(final Callable<V> callable) {
+        return () -> {
+            final Thread thread = Thread.currentThread();
+            final ClassLoader contextCL = thread.getContextClassLoader();
+            try {
+                thread.setContextClassLoader(classLoader);
+                return callable.call();
+            } finally {
+                thread.setContextClassLoader(contextCL);
+            }
+        };
+    }
+
+    @Override
+    public void execute(final Runnable command) {
+        schedule(command, 0L, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public Future<?> submit(final Runnable task) {
+        return schedule(task, 0L, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public <T> Future<T> submit(final Runnable task, final T result) {
+        return schedule(Executors.callable(task, result), 0L, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public <T> Future<T> submit(final Callable<T> task) {
+        return schedule(task, 0L, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public ScheduledFuture<?> schedule(final Runnable command, final long delay, final TimeUnit unit) {
+        checkOpen();
+        return executor.track(executor.schedule(wrap(command), delay, unit), this);
+    }
+
+    @Override
+    public <V> ScheduledFuture<V> schedule(final Callable<V> callable, final long delay, final TimeUnit unit) {
+        checkOpen();
+        return executor.track(executor.schedule(wrap(callable), delay, unit), this);
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleAtFixedRate(final Runnable command, final long initialDelay, final long period,
+                                                  final TimeUnit unit) {
+        checkOpen();
+        return executor.track(executor.scheduleAtFixedRate(wrap(command), initialDelay, period, unit), this);
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleWithFixedDelay(final Runnable command, final long initialDelay,
+                                                     final long delay, final TimeUnit unit) {
+        checkOpen();
+        return executor.track(executor.scheduleWithFixedDelay(wrap(command), initialDelay, delay, unit), this);
+    }
+
+    /**
+     * Prevents new tasks from being submitted and cancels the periodic tasks, the other pending tasks are
+     * still executed.
+     */
+    @Override
+    public void shutdown() {
+        this.shutdown = true;
+        for (final Future<?> task : executor.getTasks(this)) {
+            if (task instanceof RunnableScheduledFuture && ((RunnableScheduledFuture<?>) task).isPeriodic()) {
+                task.cancel(false);
+                executor.untrack(task);
+            }
+        }
+    }
+
+    /**
+     * Prevents new tasks from being submitted and cancels all the pending tasks, interrupting the running ones.
+     * @return an empty list as the cancelled tasks cannot be executed anymore.
+     */
+    @Override
+    public List<Runnable> shutdownNow() {
+        terminate();
+        return Collections.emptyList();
+    }
+
+    /**
+     * Prevents new tasks from being submitted and cancels all the pending tasks, interrupting the running ones.
+     * @return the amount of tasks that have been cancelled.
+     */
+    int terminate() {
+        this.shutdown = true;
+        int cancelled = 0;
+        for (final Future<?> task : executor.getTasks(this)) {
+            if (task.cancel(true)) {
+                cancelled++;
+            }
+            executor.untrack(task);
+        }
+        return cancelled;
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return shutdown && executor.getTasks(this).isEmpty();
+    }
+
+    @Override
+    public boolean awaitTermination(final long timeout, final TimeUnit unit) throws InterruptedException {
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (final Future<?> task : executor.getTasks(this)) {
+            final long remaining = deadline - System.nanoTime();
+            if (remaining <= 0L) {
+                break;
+            }
+            try {
+                task.get(remaining, TimeUnit.NANOSECONDS);
+            } catch (ExecutionException | CancellationException | TimeoutException e) {
+                // Only the end of the task matters
+            }
+        }
+        return isTerminated();
+    }
+}
@@ -0,0 +1,531 @@
+/*
+ * Copyright (C) 2016 essobedo.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.github.essobedo.appma.core;
+
+import com.github.essobedo.appma.core.config.ConfigurationFactory;
+import com.github.essobedo.appma.core.io.Folder;
+import com.github.essobedo.appma.core.io.ParallelCopyTask;
+import com.github.essobedo.appma.core.io.ParallelDeleteTask;
+import com.github.essobedo.appma.core.io.Trash;
+import com.github.essobedo.appma.core.progress.LogProgress;
+import com.github.essobedo.appma.exception.ApplicationException;
+import com.github.essobedo.appma.exception.TaskInterruptedException;
+import com.github.essobedo.appma.task.Task;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Class managing the installations of the application located in a given root folder. It keeps track of the
+ * active installation, installs the new versions into their own folder, and keeps track of the staged version
+ * and of the previous installations retained in order to be able to roll back. All the locations are stored
+ * into the internal folder relative to the root folder.
+ *
+ * @author Nicolas Filotto (nicolas.filotto@gmail.com)
+ * @version $Id$
+ * @since 1.1.3
+ */
+final class Installer {
+
+    /**
+     * The logger of the class.
+     */
+    private static final Logger LOG = Logger.getLogger(Installer.class.getName());
+
+    /**
+     * The name of the sub folder of the internal folder containing the installations of the application
+     * created by the blue/green, staged and versioned upgrades.
+     */
+    private static final String INSTANCES_FOLDER = "instances";
+
+    /**
+     * The name of the file of the internal folder containing the path of the installation of the staged
+     * version of the application relative to the root folder.
+     */
+    private static final String STAGED_INSTANCE = "staged";
+
+    /**
+     * The name of the file of the internal folder containing the paths of the previous installations of the
+     * application relative to the root folder, from the most recent to the oldest.
+     */
+    private static final String PREVIOUS_INSTANCES = "previous";
+
+    /**
+     * The name of the system parameter allowing to define the amount of previous installations of the
+     * application to keep on disk in order to be able to roll back.
+     */
+    private static final String PARAM_RETAINED = "essobedo.appma.core.retained";
+
+    /**
+     * The name of the system parameter allowing to define the amount of threads to use to copy or delete
+     * a folder.
+     */
+    private static final String PARAM_IO_PARALLELISM = "essobedo.appma.core.io.parallelism";
+
+    /**
+     * The name of the sub folder of the internal folder into which the folders to delete are moved.
+     */
+    private static final String TRASH_FOLDER = "trash";
+
+    /**
+     * The name of the file of the internal folder containing the reason of the last automatic rollback.
+     */
+    private static final String ROLLBACK_REASON = "rollback";
+
+    /**
+     * The name of the system parameter allowing to make the installations durable by flushing the content of
+     * the patch and of the new version to the storage device before switching to it.
+     */
+    private static final String PARAM_DURABLE = "essobedo.appma.core.durable";
+
+    /**
+     * The margin in milliseconds subtracted from the start time of a modification, to cope with the coarse
+     * granularity of the last modification time of some file systems.
+     */
+    private static final long MODIFIED_TIME_MARGIN = 2000L;
+
+    /**
+     * The root directory of the application.
+     */
+    private final File root;
+
+    /**
+     * The patcher used to apply the patches to the new installations.
+     */
+    private final Patcher patcher;
+
+    /**
+     * The trash allowing to delete the folders in background.
+     */
+    private final Trash trash;
+
+    /**
+     * The folder in which the application is installed, this is the root folder unless the application has
+     * been upgraded into its own folder.
+     */
+    private File installFolder;
+
+    /**
+     * Constructs an {@code Installer} for the specified root folder. The folders left into the trash by
+     * the previous launch are deleted in background.
+     * @param root the root folder of the application.
+     * @param patcher the patcher to use to apply the patches to the new installations.
+     */
+    Installer(final File root, final Patcher patcher) {
+        this.root = root;
+        this.patcher = patcher;
+        this.trash = new Trash(new File(ConfigurationFactory.getInternalFolder(root), Installer.TRASH_FOLDER),
+            Installer.getParallelism());
+        trash.sweep();
+        this.installFolder = ConfigurationFactory.getActiveFolder(root);
+    }
+
+    /**
+     * Gives the amount of threads to use to copy or delete a folder.
+     * @return the amount of threads defined by the system parameter {@code essobedo.appma.core.io.parallelism},
+     * the amount of available processors by default.
+     */
+    static int getParallelism() {
+        return Math.max(1, Integer.getInteger(Installer.PARAM_IO_PARALLELISM,
+            Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+     * Indicates whether the installations must be durable.
+     * @return {@code true} if the system parameter {@code essobedo.appma.core.durable} has been set to
+     * {@code true}, {@code false} otherwise.
+     */
+    static boolean isDurable() {
+        return Boolean.getBoolean(Installer.PARAM_DURABLE);
+    }
+
+    /**
+     * Gives the time from which the modifications that are about to be made must be flushed.
+     * @return the current time minus a margin that covers the granularity of the last modification time.
+     */
+    static long modificationStart() {
+        return System.currentTimeMillis() - Installer.MODIFIED_TIME_MARGIN;
+    }
+
+    /**
+     * Gives the folder in which the application is installed.
+     * @return the folder in which the application is installed.
+     */
+    File getInstallFolder() {
+        synchronized (this) {
+            return installFolder;
+        }
+    }
+
+    /**
+     * Persists the location of the folder in which the application is installed. The location is first
+     * written into a temporary file which is then moved atomically if possible.
+     * @param folder the folder in which the application is installed.
+     * @throws IOException if the location could not be persisted.
+     */
+    void storeInstallFolder(final File folder) throws IOException {
+        writeInternalFile(ConfigurationFactory.getCurrentPointer(root), folder);
+        synchronized (this) {
+            this.installFolder = folder;
+        }
+    }
+
+    /**
+     * Writes the locations of the specified folders relative to the root folder into the specified file
+     * of the internal folder, one location per line. The locations are first written into a temporary file
+     * which is then moved atomically if possible. If the installations must be durable, the temporary file
+     * and the internal folder are flushed to the storage device.
+     * @param target the file of the internal folder.
+     * @param folders the folders whose location is written.
+     * @throws IOException if the locations could not be written.
+     */
+    private void writeInternalFile(final File target, final File... folders) throws IOException {
+        final File internal = target.getParentFile();
+        final File tmp = new File(internal, target.getName() + ".tmp");
+        final List<String> paths = new ArrayList<>(folders.length);
+        for (final File folder : folders) {
+            final String path = root.toPath().toAbsolutePath().relativize(folder.toPath().toAbsolutePath())
+                .toString();
+            paths.add(path.isEmpty() ? "." : path);
+        }
+        Files.createDirectories(internal.toPath());
+        Files.write(tmp.toPath(), paths, StandardCharsets.UTF_8);
+        if (Installer.isDurable()) {
+            Folder.force(tmp);
+        }
+        try {
+            Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        if (Installer.isDurable()) {
+            Folder.force(internal);
+        }
+    }
+
+    /**
+     * Gives the file of the internal folder with the specified name.
+     * @param name the name of the file of the internal folder.
+     * @return the file of the internal folder.
+     */
+    private File getInternalFile(final String name) {
+        return new File(ConfigurationFactory.getInternalFolder(root), name);
+    }
+
+    /**
+     * Reads the location of a folder relative to the root folder from the specified file of the internal
+     * folder.
+     * @param file the file of the internal folder.
+     * @return the folder whose location has been read, {@code null} if the file doesn't exist or could not
+     * be read.
+     */
+    private File readInternalFile(final File file) {
+        final List<File> folders = readInternalFiles(file);
+        return folders.isEmpty() ? null : folders.get(0);
+    }
+
+    /**
+     * Reads the locations of folders relative to the root folder from the specified file of the internal
+     * folder, one location per line.
+     * @param file the file of the internal folder.
+     * @return the folders whose location has been read, an empty list if the file doesn't exist or could not
+     * be read.
+     */
+    private List<File> readInternalFiles(final File file) {
+        if (!file.isFile()) {
+            return new ArrayList<>();
+        }
+        final List<File> folders = new ArrayList<>();
+        try {
+            for (final String line : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)) {
+                final String path = line.trim();
+                if (".".equals(path)) {
+                    folders.add(root);
+                } else if (!path.isEmpty()) {
+                    folders.add(new File(root, path));
+                }
+            }
+        } catch (IOException e) {
+            if (LOG.isLoggable(Level.WARNING)) {
+                LOG.log(Level.WARNING, String.format("Could not read the file '%s'", file.getAbsolutePath()), e);
+            }
+            return new ArrayList<>();
+        }
+        return folders;
+    }
+
+    /**
+     * Stores the specified list of previous installations, an error is only logged.
+     * @param previous the folders of the previous installations from the most recent to the oldest.
+     */
+    private void storePreviousFolders(final List<File> previous) {
+        try {
+            writeInternalFile(getInternalFile(Installer.PREVIOUS_INSTANCES), previous.toArray(new File[0]));
+        } catch (IOException e) {
+            if (LOG.isLoggable(Level.WARNING)) {
+                LOG.log(Level.WARNING, "Could not store the list of the previous installations", e);
+            }
+        }
+    }
+
+    /**
+     * Keeps the specified previous installation of the application on disk in order to be able to roll back
+     * to it, and deletes the oldest previous installations beyond the amount defined by the system parameter
+     * {@code essobedo.appma.core.retained}, none by default. The root folder is never deleted, an error is
+     * only logged.
+     * @param folder the folder of the installation that has just been replaced.
+     */
+    void retire(final File folder) {
+        if (folder.equals(getInstallFolder())) {
+            return;
+        }
+        final int retained = Math.max(0, Integer.getInteger(Installer.PARAM_RETAINED, 0));
+        final List<File> previous = readInternalFiles(getInternalFile(Installer.PREVIOUS_INSTANCES));
+        previous.remove(folder);
+        previous.remove(getInstallFolder());
+        previous.add(0, folder);
+        while (previous.size() > retained) {
+            final File oldest = previous.remove(previous.size() - 1);
+            if (!oldest.equals(root)) {
+                delete(oldest);
+            }
+        }
+        storePreviousFolders(previous);
+    }
+
+    /**
+     * Removes the specified folder from the previous installations as it has been restored by a rollback,
+     * an error is only logged.
+     * @param folder the folder of the installation that has been restored.
+     */
+    void restored(final File folder) {
+        final List<File> previous = readInternalFiles(getInternalFile(Installer.PREVIOUS_INSTANCES));
+        previous.remove(folder);
+        storePreviousFolders(previous);
+    }
+
+    /**
+     * Gives the previous installations of the application that have been retained, from the most recent to
+     * the oldest.
+     * @return the folders of the previous installations that still exist.
+     */
+    List<File> getPreviousFolders() {
+        final List<File> previous = readInternalFiles(getInternalFile(Installer.PREVIOUS_INSTANCES));
+        previous.removeIf(folder -> !folder.isDirectory());
+        return previous;
+    }
+
+    /**
+     * Gives the folder in which the staged version of the application has been installed.
+     * @return the folder of the staged version, {@code null} if no version has been staged.
+     */
+    File getStagedFolder() {
+        final File folder = readInternalFile(getInternalFile(Installer.STAGED_INSTANCE));
+        if (folder != null && folder.isDirectory()) {
+            return folder;
+        }
+        return null;
+    }
+
+    /**
+     * Persists the location of the folder in which the staged version of the application has been installed.
+     * @param folder the folder of the staged version.
+     * @throws IOException if the location could not be persisted.
+     */
+    void storeStagedFolder(final File folder) throws IOException {
+        writeInternalFile(getInternalFile(Installer.STAGED_INSTANCE), folder);
+    }
+
+    /**
+     * Forgets the staged version of the application without deleting its installation, an error is only
+     * logged.
+     */
+    void clearStagedFolder() {
+        final File staged = getInternalFile(Installer.STAGED_INSTANCE);
+        if (staged.exists() && !staged.delete() && LOG.isLoggable(Level.WARNING)) {
+            LOG.log(Level.WARNING, String.format("The file '%s' could not be deleted", staged.getAbsolutePath()));
+        }
+    }
+
+    /**
+     * Deletes the staged version of the application if any.
+     */
+    void discardStaged() {
+        final File folder = getStagedFolder();
+        clearStagedFolder();
+        if (folder != null && !folder.equals(getInstallFolder())) {
+            delete(folder);
+        }
+    }
+
+    /**
+     * Stores the reason of the automatic rollback into the internal folder, an error is only logged.
+     * @param reason the reason of the automatic rollback.
+     */
+    void recordRollbackReason(final String reason) {
+        final File file = getInternalFile(Installer.ROLLBACK_REASON);
+        try {
+            Files.write(file.toPath(), reason.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            if (LOG.isLoggable(Level.WARNING)) {
+                LOG.log(Level.WARNING, String.format("Could not write the file '%s'", file.getAbsolutePath()), e);
+            }
+        }
+    }
+
+    /**
+     * Gives the reason of the last automatic rollback.
+     * @return the reason of the last automatic rollback, {@code null} if there was none.
+     */
+    String getRollbackReason() {
+        final File file = getInternalFile(Installer.ROLLBACK_REASON);
+        if (!file.isFile()) {
+            return null;
+        }
+        try {
+            return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            if (LOG.isLoggable(Level.WARNING)) {
+                LOG.log(Level.WARNING, String.format("Could not read the file '%s'", file.getAbsolutePath()), e);
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Gives a new folder in which a new version of the application can be installed.
+     * @return the new installation folder which doesn't exist yet.
+     */
+    File newInstanceFolder() {
+        final File instances = getInternalFile(Installer.INSTANCES_FOLDER);
+        long id = System.currentTimeMillis();
+        File folder = new File(instances, Long.toString(id));
+        while (folder.exists()) {
+            folder = new File(instances, Long.toString(++id));
+        }
+        return folder;
+    }
+
+    /**
+     * Installs the new version of the application into the specified folder by copying the current
+     * installation folder and applying the patch to the copy.
+     * @param className the name of the class of the application to upgrade.
+     * @param oldVersion the previous version of the application.
+     * @param patchFolder the folder that contains the content of the patch.
+     * @param instanceFolder the folder in which the new version is installed.
+     * @return the configuration of the new version.
+     * @throws ApplicationException if the new version could not be installed.
+     * @throws IOException if the installation folder could not be copied.
+     * @throws TaskInterruptedException if the task has been interrupted.
+     */
+    Configuration install(final String className, final String oldVersion, final File patchFolder,
+                          final File instanceFolder)
+        throws ApplicationException, IOException, TaskInterruptedException {
+        final long since = Installer.modificationStart();
+        Files.createDirectories(instanceFolder.getParentFile().toPath());
+        if (LOG.isLoggable(Level.INFO)) {
+            LOG.log(Level.INFO, "Copying the installation folder");
+        }
+        final Task<Void> copy = new ParallelCopyTask(getInstallFolder(), instanceFolder, Installer.getParallelism(),
+            ConfigurationFactory.getInternalFolder(root));
+        new LogProgress(copy);
+        copy.execute();
+        if (!instanceFolder.isDirectory()) {
+            throw new ApplicationException(String.format("The installation folder could not be copied into '%s'",
+                instanceFolder.getAbsolutePath()));
+        }
+        final Configuration config = patcher.patch(className, patchFolder, instanceFolder, oldVersion);
+        force(instanceFolder, since);
+        if (config == null) {
+            return new ConfigurationFactory(instanceFolder).create();
+        }
+        return config;
+    }
+
+    /**
+     * Flushes to the storage device in one single pass the files and directories of the specified folder that
+     * have been modified since the specified time, if the installations must be durable. The internal folder
+     * is skipped.
+     * @param folder the folder to flush.
+     * @param since the time in milliseconds since the epoch from which the modifications must be flushed.
+     * @throws ApplicationException if the content of the folder could not be flushed.
+     */
+    void force(final File folder, final long since) throws ApplicationException {
+        if (!Installer.isDurable()) {
+            return;
+        }
+        final long start = System.currentTimeMillis();
+        try {
+            new Folder(folder).force(since, ConfigurationFactory.getInternalFolder(root));
+        } catch (IOException e) {
+            throw new ApplicationException(String.format("Could not flush the content of the folder '%s'",
+                folder.getAbsolutePath()), e);
+        }
+        if (LOG.isLoggable(Level.FINE)) {
+            LOG.log(Level.FINE, String.format("The content of the folder '%s' has been flushed in %d ms",
+                folder.getAbsolutePath(), System.currentTimeMillis() - start));
+        }
+    }
+
+    /**
+     * Deletes the specified folder and its content in background if it can be moved into the trash folder,
+     * directly using several threads otherwise, an error is only logged.
+     * @param folder the folder to delete.
+     */
+    void delete(final File folder) {
+        if (trash.discard(folder)) {
+            return;
+        }
+        try {
+            new ParallelDeleteTask(folder, Installer.getParallelism()).execute();
+        } catch (ApplicationException | TaskInterruptedException e) {
+            if (LOG.isLoggable(Level.WARNING)) {
+                LOG.log(Level.WARNING, String.format("Could not delete the folder '%s'", folder.getAbsolutePath()), e);
+            }
+        }
+    }
+
+    /**
+     * Applies the patches to the installations of the application.
+     */
+    interface Patcher {
+
+        /**
+         * Applies the patch to the specified installation folder using the version manager of the new version.
+         * @param className The name of the application to upgrade.
+         * @param patchFolder the folder containing the content of the patch.
+         * @param appRoot the folder in which the application is installed.
+         * @param oldVersion the previous version of the application.
+         * @return the new configuration of the application, {@code null} if the default configuration must be
+         * used.
+         * @throws ApplicationException in case the patch could not be applied.
+         * @throws TaskInterruptedException if the task has been interrupted.
+         */
+        Configuration patch(String className, File patchFolder, File appRoot, String oldVersion)
+            throws ApplicationException, TaskInterruptedException;
+    }
+}
@@ -24,6 +24,7 @@ import com.github.essobedo.appma.spi.Manageable;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.LogManager;
@@ -72,33 +73,40 @@ public final class Launcher extends Application {
         setUpLogger();
 
         DefaultApplicationManager applicationManager = null;
-        Manageable application = null;
         try {
             final RootFolder root = new RootFolder(Launcher.class);
             applicationManager = new DefaultApplicationManager(root.getLocation(), args);
-            application = applicationManager.create();
-            if (application.isJavaFX()) {
+            final Future<Manageable> creation = applicationManager.asyncCreate();
+            if (applicationManager.isJavaFXExpected()) {
+                // Start the Java FX toolkit while the application is being created
                 Launcher.applicationManager = applicationManager;
                 launch(args);
-            } else {
-                applicationManager.init();
+                if (creation.get().isJavaFX()) {
+                    return;
+                }
+            } else if (creation.get().isJavaFX()) {
+                Launcher.applicationManager = applicationManager;
+                launch(args);
+                return;
             }
+            applicationManager.init();
+        } catch (ExecutionException e) {
+            // The error has already been logged by the application manager
+            System.exit(1);
         } catch (Exception e) {
             if (LOG.isLoggable(Level.SEVERE)) {
                 LOG.log(Level.SEVERE, e.getMessage(), e);
             }
             System.exit(1);
         }
-        if (!application.isJavaFX()) {
-            try {
-                applicationManager.destroy();
-            } catch (Exception e) {
-                if (LOG.isLoggable(Level.SEVERE)) {
-                    LOG.log(Level.SEVERE, e.getMessage(), e);
-                }
+        try {
+            applicationManager.destroy();
+        } catch (Exception e) {
+            if (LOG.isLoggable(Level.SEVERE)) {
+                LOG.log(Level.SEVERE, e.getMessage(), e);
             }
-            System.exit(0);
         }
+        System.exit(0);
     }
 
     /**
@@ -148,17 +156,10 @@ public final class Launcher extends Application {
         button.setDisable(true);
         vBox.getChildren().addAll(label, bar, button);
         primaryStage.setScene(new Scene(vBox, 300.0d, 150.0d));
-        final Manageable application = applicationManager.getApplication();
         primaryStage.setResizable(false);
         primaryStage.setOnCloseRequest(Event::consume);
-        if (application.title() == null) {
-            primaryStage.setTitle(Localization.getMessage("title.window"));
-        } else {
-            primaryStage.setTitle(application.title());
-        }
-        if (application.icon() != null) {
-            primaryStage.getIcons().add(application.icon());
-        }
+        // The title and the icon of the application are set once it has been created
+        primaryStage.setTitle(Localization.getMessage("title.window"));
         primaryStage.show();
 
         return applicationManager.asyncInitNShow(primaryStage,
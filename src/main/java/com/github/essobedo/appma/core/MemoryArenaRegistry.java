@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2016 essobedo.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.github.essobedo.appma.core;
+
+import com.github.essobedo.appma.core.io.MemoryArena;
+import com.github.essobedo.appma.exception.ApplicationException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+/**
+ * Class allowing to keep the off-heap memory arenas of the application mapped across its versions. Each arena
+ * is mapped to a file of a dedicated folder, so that its content also survives the restarts of the application.
+ *
+ * @author Nicolas Filotto (nicolas.filotto@gmail.com)
+ * @version $Id$
+ * @since 1.1.3
+ */
+final class MemoryArenaRegistry {
+
+    /**
+     * The logger of the class.
+     */
+    private static final Logger LOG = Logger.getLogger(MemoryArenaRegistry.class.getName());
+
+    /**
+     * The pattern that the names of the arenas must match as they are used as file names.
+     */
+    private static final Pattern NAME_PATTERN = Pattern.compile("[A-Za-z0-9][A-Za-z0-9._-]*");
+
+    /**
+     * The extension of the files to which the arenas are mapped.
+     */
+    private static final String EXTENSION = ".arena";
+
+    /**
+     * The folder containing the files to which the arenas are mapped.
+     */
+    private final File folder;
+
+    /**
+     * The arenas that have been mapped so far by name.
+     */
+    private final Map<String, MemoryArena> arenas = new HashMap<>();
+
+    /**
+     * Indicates whether the registry has been closed.
+     */
+    private boolean closed;
+
+    /**
+     * Constructs a {@code MemoryArenaRegistry} with the specified folder.
+     * @param folder the folder containing the files to which the arenas are mapped.
+     */
+    MemoryArenaRegistry(final File folder) {
+        this.folder = folder;
+    }
+
+    /**
+     * Gives the arena registered with the specified name, if it has not been mapped yet, it is mapped to
+     * its file which is created or resized if needed.
+     * @param name the name of the arena.
+     * @param size the size in bytes of the arena.
+     * @return the arena registered with the specified name.
+     * @throws ApplicationException if the registry has been closed, if the name is invalid, if the arena
+     * could not be mapped or if the arena has already been mapped with another size.
+     */
+    public MemoryArena get(final String name, final long size) throws ApplicationException {
+        if (name == null || !NAME_PATTERN.matcher(name).matches()) {
+            throw new ApplicationException(String.format("Invalid name of memory arena: '%s'", name));
+        }
+        synchronized (this) {
+            if (closed) {
+                throw new ApplicationException("The application manager has been stopped");
+            }
+            MemoryArena arena = arenas.get(name);
+            if (arena != null) {
+                if (arena.size() != size) {
+                    throw new ApplicationException(String.format(
+                        "The memory arena '%s' has already been mapped with a size of %d bytes", name, arena.size()));
+                }
+                return arena;
+            }
+            final long start = System.currentTimeMillis();
+            final File file = new File(folder, name + MemoryArenaRegistry.EXTENSION);
+            try {
+                Files.createDirectories(folder.toPath());
+                arena = new MemoryArena(file, size);
+            } catch (IOException | IllegalArgumentException e) {
+                throw new ApplicationException(String.format("Could not map the memory arena '%s' to '%s'", name,
+                    file.getAbsolutePath()), e);
+            }
+            arenas.put(name, arena);
+            if (LOG.isLoggable(Level.INFO)) {
+                LOG.log(Level.INFO, String.format("The memory arena '%s' of %d bytes has been mapped in %d ms", name,
+                    size, System.currentTimeMillis() - start));
+            }
+            return arena;
+        }
+    }
+
+    /**
+     * Writes the content of all the arenas into their files, no arena can be mapped anymore.
+     */
+    public void close() {
+        synchronized (this) {
+            this.closed = true;
+            for (final Map.Entry<String, MemoryArena> entry : arenas.entrySet()) {
+                try {
+                    entry.getValue().close();
+                } catch (RuntimeException e) {
+                    if (LOG.isLoggable(Level.WARNING)) {
+                        LOG.log(Level.WARNING, String.format("Could not write the content of the memory arena '%s'",
+                            entry.getKey()), e);
+                    }
+                }
+            }
+            arenas.clear();
+        }
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2016 essobedo.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.github.essobedo.appma.core;
+
+import com.github.essobedo.appma.exception.ApplicationException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Class allowing to keep the listening sockets of the application open across its versions. The sockets
+ * are bound by the application manager and are only closed when the application manager stops, so that
+ * the connections received while the application is being upgraded are queued instead of being refused.
+ *
+ * @author Nicolas Filotto (nicolas.filotto@gmail.com)
+ * @version $Id$
+ * @since 1.1.3
+ */
+final class ServerSocketRegistry {
+
+    /**
+     * The logger of the class.
+     */
+    private static final Logger LOG = Logger.getLogger(ServerSocketRegistry.class.getName());
+
+    /**
+     * The channels that have been opened so far by name.
+     */
+    private final Map<String, ServerSocketChannel> channels = new HashMap<>();
+
+    /**
+     * Indicates whether the registry has been closed.
+     */
+    private boolean closed;
+
+    /**
+     * Gives the channel registered with the specified name, if there is no open channel with this name,
+     * a new channel is opened and bound to the specified address.
+     * @param name the name of the channel.
+     * @param address the address to which the channel is bound if it has to be opened.
+     * @return the channel registered with the specified name.
+     * @throws ApplicationException if the registry has been closed, if the channel could not be opened or if
+     * the existing channel is bound to another address.
+     */
+    public ServerSocketChannel get(final String name, final SocketAddress address) throws ApplicationException {
+        synchronized (this) {
+            if (closed) {
+                throw new ApplicationException("The application manager has been stopped");
+            }
+            ServerSocketChannel channel = channels.get(name);
+            if (channel != null && channel.isOpen()) {
+                checkAddress(name, channel, address);
+                return channel;
+            }
+            try {
+                channel = ServerSocketChannel.open();
+                channel.bind(address);
+            } catch (IOException e) {
+                close(name, channel);
+                throw new ApplicationException(String.format("Could not bind the channel '%s' to '%s'", name,
+                    address), e);
+            }
+            channels.put(name, channel);
+            if (LOG.isLoggable(Level.INFO)) {
+                LOG.log(Level.INFO, String.format("The channel '%s' has been bound to '%s'", name, address));
+            }
+            return channel;
+        }
+    }
+
+    /**
+     * Checks that the specified channel matches with the expected address.
+     * @param name the name of the channel.
+     * @param channel the channel to check.
+     * @param address the expected address.
+     * @throws ApplicationException if the channel is bound to another address.
+     */
+    private static void checkAddress(final String name, final ServerSocketChannel channel,
+                                     final SocketAddress address) throws ApplicationException {
+        if (!(address instanceof InetSocketAddress) || ((InetSocketAddress) address).getPort() == 0) {
+            // Any port is accepted
+            return;
+        }
+        try {
+            final SocketAddress local = channel.getLocalAddress();
+            if (local instanceof InetSocketAddress
+                && ((InetSocketAddress) local).getPort() != ((InetSocketAddress) address).getPort()) {
+                throw new ApplicationException(String.format("The channel '%s' is already bound to '%s'", name,
+                    local));
+            }
+        } catch (IOException e) {
+            throw new ApplicationException(String.format("Could not get the address of the channel '%s'", name), e);
+        }
+    }
+
+    /**
+     * Closes all the channels, no channel can be opened anymore.
+     */
+    public void close() {
+        synchronized (this) {
+            this.closed = true;
+            for (final Map.Entry<String, ServerSocketChannel> entry : channels.entrySet()) {
+                close(entry.getKey(), entry.getValue());
+            }
+            channels.clear();
+        }
+    }
+
+    /**
+     * Closes the specified channel, an error is only logged.
+     * @param name the name of the channel.
+     * @param channel the channel to close.
+     */
+    private static void close(final String name, final ServerSocketChannel channel) {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            if (LOG.isLoggable(Level.WARNING)) {
+                LOG.log(Level.WARNING, String.format("Could not close the channel '%s'", name), e);
+            }
+        }
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2016 essobedo.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.github.essobedo.appma.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.RunnableScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The thread pool owned by the application manager that is shared by the successive versions of the
+ * application. It keeps track of the version of the application that submitted each pending task, so that
+ * the tasks of a version can be cancelled without stopping the threads.
+ *
+ * @author Nicolas Filotto (nicolas.filotto@gmail.com)
+ * @version $Id$
+ * @since 1.1.3
+ */
+final class SharedExecutor extends ScheduledThreadPoolExecutor {
+
+    /**
+     * The version of the application that submitted each pending task.
+     */
+    private final ConcurrentMap<Future<?>, GenerationExecutor> owners = new ConcurrentHashMap<>();
+
+    /**
+     * Constructs a {@code SharedExecutor} with the specified name and amount of threads.
+     * @param name the name of the executor used to name its threads.
+     * @param poolSize the amount of threads to keep in the pool.
+     */
+    SharedExecutor(final String name, final int poolSize) {
+        super(poolSize, new DaemonThreadFactory(name));
+        setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * Keeps track of the specified task.
+     * @param future the future representing the task.
+     * @param owner the version of the application that submitted the task.
+     * @param <F> the type of the future.
+     * @return the future representing the task.
+     */
+    <F extends Future<?>> F track(final F future, final GenerationExecutor owner) {
+        owners.put(future, owner);
+        if (future.isDone()) {
+            // The task has already been executed
+            owners.remove(future);
+        }
+        return future;
+    }
+
+    /**
+     * Gives the pending tasks submitted by the specified version of the application.
+     * @param owner the version of the application that submitted the tasks.
+     * @return the futures representing the pending tasks.
+     */
+    List<Future<?>> getTasks(final GenerationExecutor owner) {
+        final List<Future<?>> tasks = new ArrayList<>();
+        for (final Map.Entry<Future<?>, GenerationExecutor> entry : owners.entrySet()) {
+            if (entry.getValue() == owner) {
+                if (entry.getKey().isDone()) {
+                    owners.remove(entry.getKey());
+                } else {
+                    tasks.add(entry.getKey());
+                }
+            }
+        }
+        return tasks;
+    }
+
+    /**
+     * Stops tracking the specified task.
+     * @param future the future representing the task.
+     */
+    void untrack(final Future<?> future) {
+        owners.remove(future);
+    }
+
+    @Override
+    protected void afterExecute(final Runnable runnable, final Throwable throwable) {
+        super.afterExecute(runnable, throwable);
+        if (runnable instanceof RunnableScheduledFuture && ((Future<?>) runnable).isDone()) {
+            owners.remove(runnable);
+        }
+    }
+
+    /**
+     * The factory of daemon threads whose context classloader is the classloader of the application manager.
+     */
+    private static final class DaemonThreadFactory implements ThreadFactory {
+
+        /**
+         * The name of the executor.
+         */
+        private final String name;
+
+        /**
+         * The counter of threads used to name the threads.
+         */
+        private final AtomicInteger counter = new AtomicInteger();
+
+        /**
+         * Constructs a {@code DaemonThreadFactory} with the specified executor name.
+         * @param name the name of the executor.
+         */
+        DaemonThreadFactory(final String name) {
+            this.name = name;
+        }
+
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            final Thread thread = new Thread(runnable, String.format("appma-%s-%d", name, counter.incrementAndGet()));
+            thread.setDaemon(true);
+            thread.setContextClassLoader(SharedExecutor.class.getClassLoader());
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2016 essobedo.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.github.essobedo.appma.core;
+
+import com.github.essobedo.appma.spi.StateWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Class allowing to keep in memory the snapshots of the state of an application that is being upgraded until
+ * the next version is initialized. Only the content of the snapshots is kept, so that the store never refers
+ * to the classes of the previous version.
+ *
+ * @author Nicolas Filotto (nicolas.filotto@gmail.com)
+ * @version $Id$
+ * @since 1.1.3
+ */
+final class StateStore implements StateWriter {
+
+    /**
+     * The content of the snapshots by name.
+     */
+    private final Map<String, byte[]> snapshots = new HashMap<>();
+
+    @Override
+    public OutputStream open(final String name) {
+        return new ByteArrayOutputStream() {
+            /**
+             * Indicates whether the stream has already been closed.
+             */
+            private boolean closed;
+
+            @Override
+            public void close() {
+                if (closed) {
+                    return;
+                }
+                this.closed = true;
+                put(name, toByteArray());
+            }
+        };
+    }
+
+    /**
+     * Stores the content of the specified snapshot.
+     * @param name the name of the snapshot.
+     * @param content the content of the snapshot.
+     */
+    private void put(final String name, final byte[] content) {
+        synchronized (this) {
+            snapshots.put(name, content);
+        }
+    }
+
+    /**
+     * Gives the content of the snapshot with the specified name.
+     * @param name the name of the snapshot.
+     * @return a stream allowing to read the content of the snapshot, {@code null} if there is no
+     * snapshot with this name.
+     */
+    public InputStream get(final String name) {
+        synchronized (this) {
+            final byte[] content = snapshots.get(name);
+            if (content == null) {
+                return null;
+            }
+            return new ByteArrayInputStream(content);
+        }
+    }
+
+    /**
+     * Gives the total amount of snapshots.
+     * @return the total amount of snapshots.
+     */
+    public int size() {
+        synchronized (this) {
+            return snapshots.size();
+        }
+    }
+
+    /**
+     * Gives the total size in bytes of the snapshots.
+     * @return the total size of the snapshots.
+     */
+    public long length() {
+        synchronized (this) {
+            long length = 0L;
+            for (final byte[] content : snapshots.values()) {
+                length += content.length;
+            }
+            return length;
+        }
+    }
+}
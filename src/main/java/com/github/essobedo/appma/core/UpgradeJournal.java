@@ -0,0 +1,276 @@
+/*
+ * Copyright (C) 2016 essobedo.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.github.essobedo.appma.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Class allowing to record the phases of an upgrade in a write-ahead journal, so that an upgrade interrupted
+ * by the end of the process can be rolled forward or rolled back at the next launch. Each entry is written
+ * on its own line, its fields being separated by tabulations, and is forced to the storage device before
+ * the next phase starts. A last entry that has not been completely written is ignored.
+ *
+ * <p>The first entry is {@link #PHASE_BEGIN} followed by the name of the class of the application, its version
+ * and the mode of the upgrade, the next entries are the phases reached by the upgrade.
+ *
+ * @author Nicolas Filotto (nicolas.filotto@gmail.com)
+ * @version $Id$
+ * @since 1.1.3
+ */
+final class UpgradeJournal {
+
+    /**
+     * The logger of the class.
+     */
+    private static final Logger LOG = Logger.getLogger(UpgradeJournal.class.getName());
+
+    /**
+     * The entry of the journal indicating that an upgrade has started, followed by the name of the class of
+     * the application, its version and the mode of the upgrade.
+     */
+    static final String PHASE_BEGIN = "BEGIN";
+
+    /**
+     * The entry of the journal indicating that the content of the patch has been extracted, followed by the
+     * location of the folder containing the content of the patch.
+     */
+    static final String PHASE_EXTRACTED = "EXTRACTED";
+
+    /**
+     * The entry of the journal indicating that the patch is being applied to the installation folder in place.
+     */
+    static final String PHASE_PATCHING = "PATCHING";
+
+    /**
+     * The entry of the journal indicating that the new version is being installed into its own folder,
+     * followed by the location of this folder.
+     */
+    static final String PHASE_INSTALLING = "INSTALLING";
+
+    /**
+     * The entry of the journal indicating that the new version has been installed into its own folder, followed
+     * by the location of this folder and the location of the previous installation folder.
+     */
+    static final String PHASE_INSTALLED = "INSTALLED";
+
+    /**
+     * The mode of an upgrade that patches the installation folder in place.
+     */
+    static final String MODE_IN_PLACE = "in-place";
+
+    /**
+     * The mode of an upgrade that installs the new version into its own folder.
+     */
+    static final String MODE_VERSIONED = "versioned";
+
+    /**
+     * The separator of the fields of an entry.
+     */
+    private static final char SEPARATOR = '\t';
+
+    /**
+     * The separator of the entries.
+     */
+    private static final char END_OF_ENTRY = '\n';
+
+    /**
+     * The file of the journal.
+     */
+    private final File file;
+
+    /**
+     * Constructs a {@code UpgradeJournal} with the specified file.
+     * @param file the file of the journal.
+     */
+    UpgradeJournal(final File file) {
+        this.file = file;
+    }
+
+    /**
+     * Starts a new journal for the upgrade of the specified version of the application, an error is only
+     * logged.
+     * @param className the name of the class of the application.
+     * @param version the version of the application to upgrade.
+     * @param versioned {@code true} if the new version is installed into its own folder, {@code false} if the
+     * installation folder is patched in place.
+     */
+    void startUpgrade(final String className, final String version, final boolean versioned) {
+        try {
+            begin(UpgradeJournal.PHASE_BEGIN, className, version,
+                versioned ? UpgradeJournal.MODE_VERSIONED : UpgradeJournal.MODE_IN_PLACE);
+        } catch (IOException e) {
+            if (LOG.isLoggable(Level.WARNING)) {
+                LOG.log(Level.WARNING, "Could not start the journal of the upgrade", e);
+            }
+        }
+    }
+
+    /**
+     * Records that the content of the patch has been extracted into the specified folder, an error is only
+     * logged.
+     * @param patchFolder the folder that contains the content of the patch.
+     */
+    void recordExtracted(final File patchFolder) {
+        record(UpgradeJournal.PHASE_EXTRACTED, patchFolder.getAbsolutePath());
+    }
+
+    /**
+     * Records that the patch is being applied to the installation folder in place, an error is only logged.
+     */
+    void recordPatching() {
+        record(UpgradeJournal.PHASE_PATCHING);
+    }
+
+    /**
+     * Records that the new version is being installed into the specified folder, an error is only logged.
+     * @param instanceFolder the folder in which the new version is installed.
+     */
+    void recordInstalling(final File instanceFolder) {
+        record(UpgradeJournal.PHASE_INSTALLING, instanceFolder.getAbsolutePath());
+    }
+
+    /**
+     * Records that the new version has been installed into the specified folder, an error is only logged.
+     * @param instanceFolder the folder in which the new version has been installed.
+     * @param previousFolder the installation folder of the previous version.
+     */
+    void recordInstalled(final File instanceFolder, final File previousFolder) {
+        record(UpgradeJournal.PHASE_INSTALLED, instanceFolder.getAbsolutePath(), previousFolder.getAbsolutePath());
+    }
+
+    /**
+     * Deletes the journal as the upgrade is over, an error is only logged.
+     */
+    void endUpgrade() {
+        try {
+            clear();
+        } catch (IOException e) {
+            if (LOG.isLoggable(Level.WARNING)) {
+                LOG.log(Level.WARNING, "Could not delete the journal of the upgrade", e);
+            }
+        }
+    }
+
+    /**
+     * Records the specified phase of the upgrade in progress, an error is only logged.
+     * @param fields the fields of the entry.
+     */
+    private void record(final String... fields) {
+        try {
+            append(fields);
+        } catch (IOException e) {
+            if (LOG.isLoggable(Level.WARNING)) {
+                LOG.log(Level.WARNING, String.format("Could not record the phase '%s' of the upgrade", fields[0]), e);
+            }
+        }
+    }
+
+    /**
+     * Starts a new journal whose first entry is composed of the specified fields, the previous content
+     * is discarded.
+     * @param fields the fields of the first entry.
+     * @throws IOException if the entry could not be written.
+     */
+    void begin(final String... fields) throws IOException {
+        write(fields, StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    /**
+     * Appends a new entry composed of the specified fields to the journal.
+     * @param fields the fields of the entry.
+     * @throws IOException if the entry could not be written.
+     */
+    void append(final String... fields) throws IOException {
+        write(fields, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Writes an entry composed of the specified fields and forces it to the storage device.
+     * @param fields the fields of the entry.
+     * @param option the option indicating how the file must be opened.
+     * @throws IOException if the entry could not be written.
+     */
+    private void write(final String[] fields, final StandardOpenOption option) throws IOException {
+        final StringBuilder entry = new StringBuilder();
+        for (final String field : fields) {
+            if (entry.length() > 0) {
+                entry.append(UpgradeJournal.SEPARATOR);
+            }
+            entry.append(field);
+        }
+        entry.append(UpgradeJournal.END_OF_ENTRY);
+        Files.createDirectories(file.getParentFile().toPath());
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE, option)) {
+            final ByteBuffer buffer = ByteBuffer.wrap(entry.toString().getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+    }
+
+    /**
+     * Reads all the entries that have been completely written.
+     * @return the fields of each entry in the order in which they have been written, an empty list if
+     * there is no journal.
+     * @throws IOException if the journal could not be read.
+     */
+    List<String[]> read() throws IOException {
+        if (!file.isFile()) {
+            return Collections.emptyList();
+        }
+        final String content = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+        final List<String[]> entries = new ArrayList<>();
+        int start = 0;
+        for (int end = content.indexOf(UpgradeJournal.END_OF_ENTRY); end >= 0;
+             end = content.indexOf(UpgradeJournal.END_OF_ENTRY, start)) {
+            entries.add(content.substring(start, end).split(String.valueOf(UpgradeJournal.SEPARATOR), -1));
+            start = end + 1;
+        }
+        return entries;
+    }
+
+    /**
+     * Indicates whether there is a journal.
+     * @return {@code true} if the file of the journal exists, {@code false} otherwise.
+     */
+    boolean exists() {
+        return file.exists();
+    }
+
+    /**
+     * Deletes the journal which means that there is no upgrade in progress anymore.
+     * @throws IOException if the journal could not be deleted.
+     */
+    void clear() throws IOException {
+        Files.deleteIfExists(file.toPath());
+    }
+}
@@ -0,0 +1,254 @@
+/*
+ * Copyright (C) 2016 essobedo.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.github.essobedo.appma.core;
+
+import com.github.essobedo.appma.core.config.ConfigFromProperties;
+import com.github.essobedo.appma.core.config.ConfigurationFactory;
+import com.github.essobedo.appma.exception.ApplicationException;
+import com.github.essobedo.appma.exception.TaskInterruptedException;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Class allowing to complete at launch an upgrade that has been interrupted by the end of the process
+ * according to the last phase recorded into its {@link UpgradeJournal}. An upgrade interrupted before the
+ * content of the patch could be extracted is rolled back, otherwise it is rolled forward from the extracted
+ * content if it is still available, or from the new installation folder if it has been fully installed.
+ *
+ * @author Nicolas Filotto (nicolas.filotto@gmail.com)
+ * @version $Id$
+ * @since 1.1.3
+ */
+final class UpgradeRecovery {
+
+    /**
+     * The logger of the class.
+     */
+    private static final Logger LOG = Logger.getLogger(UpgradeRecovery.class.getName());
+
+    /**
+     * The journal of the interrupted upgrade.
+     */
+    private final UpgradeJournal journal;
+
+    /**
+     * The installer managing the installations of the application.
+     */
+    private final Installer installer;
+
+    /**
+     * The actions of the application manager needed to roll forward.
+     */
+    private final Actions actions;
+
+    /**
+     * Constructs an {@code UpgradeRecovery} with the specified journal, installer and actions.
+     * @param journal the journal of the interrupted upgrade.
+     * @param installer the installer managing the installations of the application.
+     * @param actions the actions of the application manager needed to roll forward.
+     */
+    UpgradeRecovery(final UpgradeJournal journal, final Installer installer, final Actions actions) {
+        this.journal = journal;
+        this.installer = installer;
+        this.actions = actions;
+    }
+
+    /**
+     * Completes the upgrade that has been interrupted if any, an error is only logged.
+     */
+    void recover() {
+        final List<String[]> entries;
+        try {
+            entries = journal.read();
+        } catch (IOException e) {
+            if (LOG.isLoggable(Level.WARNING)) {
+                LOG.log(Level.WARNING, "Could not read the journal of the upgrade", e);
+            }
+            journal.endUpgrade();
+            return;
+        }
+        if (entries.isEmpty()) {
+            if (journal.exists()) {
+                journal.endUpgrade();
+            }
+            return;
+        }
+        final String[] begin = entries.get(0);
+        if (!UpgradeJournal.PHASE_BEGIN.equals(begin[0]) || begin.length < 4) {
+            if (LOG.isLoggable(Level.WARNING)) {
+                LOG.log(Level.WARNING, "The journal of the upgrade is invalid and is ignored");
+            }
+            journal.endUpgrade();
+            return;
+        }
+        if (LOG.isLoggable(Level.INFO)) {
+            LOG.log(Level.INFO, String.format("The upgrade of the application version '%s' has been interrupted,"
+                + " it is recovered", begin[2]));
+        }
+        File patchFolder = null;
+        File instanceFolder = null;
+        String[] installed = null;
+        boolean patching = false;
+        for (final String[] entry : entries) {
+            if (UpgradeJournal.PHASE_EXTRACTED.equals(entry[0]) && entry.length > 1) {
+                patchFolder = new File(entry[1]);
+            } else if (UpgradeJournal.PHASE_INSTALLING.equals(entry[0]) && entry.length > 1) {
+                instanceFolder = new File(entry[1]);
+            } else if (UpgradeJournal.PHASE_INSTALLED.equals(entry[0]) && entry.length > 2) {
+                installed = entry;
+            } else if (UpgradeJournal.PHASE_PATCHING.equals(entry[0])) {
+                patching = true;
+            }
+        }
+        try {
+            if (installed != null) {
+                recoverInstalled(new File(installed[1]), new File(installed[2]));
+            } else {
+                if (instanceFolder != null && instanceFolder.exists()) {
+                    // The installation is incomplete
+                    installer.delete(instanceFolder);
+                }
+                recoverExtracted(begin[1], begin[2], UpgradeJournal.MODE_VERSIONED.equals(begin[3]), patchFolder,
+                    patching);
+            }
+        } finally {
+            if (patchFolder != null && patchFolder.exists()) {
+                installer.delete(patchFolder);
+            }
+            journal.endUpgrade();
+        }
+    }
+
+    /**
+     * Rolls forward an interrupted upgrade whose new version has been fully installed into its own folder by
+     * making this folder the current installation, if it has not been done yet.
+     * @param instanceFolder the folder in which the new version has been installed.
+     * @param previousFolder the installation folder of the previous version.
+     */
+    private void recoverInstalled(final File instanceFolder, final File previousFolder) {
+        if (!instanceFolder.equals(installer.getInstallFolder())) {
+            try {
+                actions.activate(instanceFolder);
+            } catch (ApplicationException e) {
+                if (LOG.isLoggable(Level.SEVERE)) {
+                    LOG.log(Level.SEVERE, "Could not switch to the new installation, the upgrade is rolled back", e);
+                }
+                installer.delete(instanceFolder);
+                return;
+            }
+        }
+        installer.retire(previousFolder);
+        if (LOG.isLoggable(Level.INFO)) {
+            LOG.log(Level.INFO, String.format("The upgrade has been rolled forward to the installation '%s'",
+                instanceFolder.getAbsolutePath()));
+        }
+    }
+
+    /**
+     * Rolls forward an interrupted upgrade by applying again the extracted content of the patch if it is still
+     * available and can be verified, rolls it back otherwise.
+     * @param className the name of the class of the application to upgrade.
+     * @param oldVersion the previous version of the application.
+     * @param versioned {@code true} if the new version must be installed into its own folder, {@code false} if
+     * the installation folder must be patched in place.
+     * @param patchFolder the folder that contains the extracted content of the patch, {@code null} if the content
+     * of the patch has not been extracted.
+     * @param patching {@code true} if the installation folder was being patched in place, {@code false} otherwise.
+     */
+    private void recoverExtracted(final String className, final String oldVersion, final boolean versioned,
+                                  final File patchFolder, final boolean patching) {
+        if (patchFolder == null || !patchFolder.isDirectory()) {
+            if (patching && LOG.isLoggable(Level.SEVERE)) {
+                LOG.log(Level.SEVERE, String.format("The content of the patch is not available anymore, the"
+                    + " installation folder '%s' may be inconsistent", installer.getInstallFolder().getAbsolutePath()));
+            } else if (LOG.isLoggable(Level.INFO)) {
+                LOG.log(Level.INFO, "The upgrade has been rolled back");
+            }
+            return;
+        }
+        final long start = System.currentTimeMillis();
+        try {
+            actions.verify(patchFolder);
+            if (versioned) {
+                final File instanceFolder = installer.newInstanceFolder();
+                final File previousFolder = installer.getInstallFolder();
+                try {
+                    final Configuration config = installer.install(className, oldVersion, patchFolder,
+                        instanceFolder);
+                    ConfigFromProperties.store(config,
+                        new File(instanceFolder, ConfigurationFactory.getConfigurationName()), Installer.isDurable());
+                    actions.activate(instanceFolder);
+                } catch (ApplicationException | RuntimeException | IOException | TaskInterruptedException e) {
+                    installer.delete(instanceFolder);
+                    throw e;
+                }
+                installer.retire(previousFolder);
+            } else {
+                actions.patch(className, patchFolder, oldVersion);
+            }
+        } catch (ApplicationException | RuntimeException | IOException | TaskInterruptedException e) {
+            if (patching && LOG.isLoggable(Level.SEVERE)) {
+                LOG.log(Level.SEVERE, String.format("The upgrade could not be rolled forward, the installation"
+                    + " folder '%s' may be inconsistent", installer.getInstallFolder().getAbsolutePath()), e);
+            } else if (LOG.isLoggable(Level.WARNING)) {
+                LOG.log(Level.WARNING, "The upgrade could not be rolled forward, it is rolled back", e);
+            }
+            return;
+        }
+        if (LOG.isLoggable(Level.INFO)) {
+            LOG.log(Level.INFO, String.format("The upgrade has been rolled forward from the content of the patch"
+                + " in %d ms", System.currentTimeMillis() - start));
+        }
+    }
+
+    /**
+     * The actions of the application manager needed to roll forward an interrupted upgrade.
+     */
+    interface Actions {
+
+        /**
+         * Verifies the classes of the new version if it has been enabled.
+         * @param patchFolder the folder that contains the content of the patch.
+         * @throws ApplicationException if the classes could not be verified.
+         */
+        void verify(File patchFolder) throws ApplicationException;
+
+        /**
+         * Makes the specified folder the current installation of the application and reloads the configuration
+         * from this folder.
+         * @param folder the folder in which the version to activate has been installed.
+         * @throws ApplicationException if the specified folder could not be made the current installation.
+         */
+        void activate(File folder) throws ApplicationException;
+
+        /**
+         * Applies the patch to the current installation folder in place and reloads the configuration.
+         * @param className the name of the class of the application to upgrade.
+         * @param patchFolder the folder that contains the content of the patch.
+         * @param oldVersion the previous version of the application.
+         * @throws ApplicationException if the patch could not be applied.
+         * @throws TaskInterruptedException if the task has been interrupted.
+         */
+        void patch(String className, File patchFolder, String oldVersion)
+            throws ApplicationException, TaskInterruptedException;
+    }
+}
@@ -19,12 +19,15 @@
 package com.github.essobedo.appma.core.config;
 
 import com.github.essobedo.appma.core.Configuration;
+import com.github.essobedo.appma.core.io.Folder;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -92,6 +95,26 @@ public class ConfigFromProperties extends Configuration {
      * @throws IOException if the configuration could not be stored
      */
     public static void store(final Configuration config, final File target) throws IOException {
+        store(config, target, false);
+    }
+
+    /**
+     * Saves the content of the specified {@code Configuration} into the specified
+     * target {@code File}. The content is first written into a temporary file which then
+     * replaces the target file atomically if possible, so that the target file is never
+     * partially written. In durable mode, the temporary file is forced to the storage device
+     * before replacing the target file and the parent folder is forced afterwards.
+     *
+     * @param config the configuration to save into the disc.
+     * @param target the target file in which the content of the {@code Configuration}
+     * will be stored.
+     * @param durable {@code true} to force the configuration to the storage device, {@code false}
+     * otherwise.
+     * @throws IOException if the configuration could not be stored
+     * @since 1.1.3
+     */
+    public static void store(final Configuration config, final File target, final boolean durable)
+        throws IOException {
         if (config.getClasspath().isEmpty()) {
             return;
         }
@@ -109,8 +132,21 @@ public class ConfigFromProperties extends Configuration {
         }
         final Properties properties = new Properties();
         properties.put(ConfigFromProperties.CLASSPATH, result.toString());
-        try (final OutputStream outputStream = new FileOutputStream(target)) {
+        final File tmp = new File(target.getParentFile(), target.getName() + ".tmp");
+        try (final FileOutputStream outputStream = new FileOutputStream(tmp)) {
             properties.store(outputStream, null);
+            if (durable) {
+                outputStream.getChannel().force(true);
+            }
+        }
+        try {
+            Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        if (durable) {
+            Folder.force(target.getParentFile());
         }
     }
 }
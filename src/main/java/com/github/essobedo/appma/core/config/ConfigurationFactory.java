@@ -24,6 +24,8 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.Collections;
 import java.util.Properties;
 import java.util.logging.Level;
@@ -49,6 +51,17 @@ public final class ConfigurationFactory {
      */
     private static final String DEFAULT_CONFIG = "appma.properties";
 
+    /**
+     * The name of the folder of the root folder in which the application manager stores its internal data.
+     */
+    private static final String INTERNAL_FOLDER = ".appma";
+
+    /**
+     * The name of the file of the internal folder containing the path of the active installation of the
+     * application relative to the root folder.
+     */
+    private static final String CURRENT_POINTER = "current";
+
     /**
      * The logger of the class.
      */
@@ -122,4 +135,60 @@ public final class ConfigurationFactory {
         return System.getProperty(ConfigurationFactory.PARAM_CONFIG,
             ConfigurationFactory.DEFAULT_CONFIG);
     }
+
+    /**
+     * Gives the folder in which the application manager stores its internal data.
+     * @param root the root folder of the application.
+     * @return the internal folder of the specified root folder.
+     */
+    public static File getInternalFolder(final File root) {
+        return new File(root, ConfigurationFactory.INTERNAL_FOLDER);
+    }
+
+    /**
+     * Gives the pointer file containing the path of the active installation of the application relative to
+     * the root folder.
+     * @param root the root folder of the application.
+     * @return the pointer file of the specified root folder.
+     */
+    public static File getCurrentPointer(final File root) {
+        return new File(ConfigurationFactory.getInternalFolder(root), ConfigurationFactory.CURRENT_POINTER);
+    }
+
+    /**
+     * Gives the active installation of the application located in the specified root folder. The
+     * installation folder is resolved through the pointer file {@link #getCurrentPointer(File)}
+     * which contains the path of the installation folder relative to the root folder, such that switching
+     * to another installation only requires to replace atomically the pointer file.
+     * @param root the root folder of the application.
+     * @return the folder referred by the pointer file, the root folder itself if there is no pointer file
+     * or if the folder it refers to doesn't exist.
+     */
+    public static File getActiveFolder(final File root) {
+        final File pointer = ConfigurationFactory.getCurrentPointer(root);
+        if (!pointer.isFile()) {
+            return root;
+        }
+        final String path;
+        try {
+            path = new String(Files.readAllBytes(pointer.toPath()), StandardCharsets.UTF_8).trim();
+        } catch (IOException e) {
+            if (LOG.isLoggable(Level.WARNING)) {
+                LOG.log(Level.WARNING, String.format("Could not read the file '%s'", pointer.getAbsolutePath()), e);
+            }
+            return root;
+        }
+        if (path.isEmpty() || ".".equals(path)) {
+            return root;
+        }
+        final File folder = new File(root, path);
+        if (!folder.isDirectory()) {
+            if (LOG.isLoggable(Level.WARNING)) {
+                LOG.log(Level.WARNING, String.format("The installation folder '%s' doesn't exist",
+                    folder.getAbsolutePath()));
+            }
+            return root;
+        }
+        return folder;
+    }
 }
@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2016 essobedo.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.github.essobedo.appma.core.config;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Class allowing to persist between two launches what has been learnt about the guest application
+ * while it was started, in order to be able to anticipate the next start.
+ *
+ * <p>The record is stored as a properties file, it is only a hint that can be deleted at any time.
+ *
+ * @author Nicolas Filotto (nicolas.filotto@gmail.com)
+ * @version $Id$
+ * @since 1.1.3
+ */
+public final class StartupRecord {
+
+    /**
+     * The logger of the class.
+     */
+    private static final Logger LOG = Logger.getLogger(StartupRecord.class.getName());
+
+    /**
+     * The file in which the record is stored.
+     */
+    private final File file;
+
+    /**
+     * The content of the record.
+     */
+    private final Properties properties = new Properties();
+
+    /**
+     * Indicates whether the record has been modified since it has been loaded or stored.
+     */
+    private boolean modified;
+
+    /**
+     * Constructs a {@code StartupRecord} and loads its content from the specified file if it exists.
+     * @param file the file in which the record is stored.
+     */
+    public StartupRecord(final File file) {
+        this.file = file;
+        if (file.isFile()) {
+            try (InputStream input = new FileInputStream(file)) {
+                properties.load(input);
+            } catch (IOException | IllegalArgumentException e) {
+                if (LOG.isLoggable(Level.WARNING)) {
+                    LOG.log(Level.WARNING, String.format("Could not load the startup record '%s'",
+                        file.getAbsolutePath()), e);
+                }
+                properties.clear();
+            }
+        }
+    }
+
+    /**
+     * Gives the value of the specified key.
+     * @param key the key for which we want the value.
+     * @return the value of the key, {@code null} if the key is unknown.
+     */
+    public String get(final String key) {
+        synchronized (this) {
+            return properties.getProperty(key);
+        }
+    }
+
+    /**
+     * Sets the value of the specified key, the change is only persisted once {@link #store()} is called.
+     * @param key the key to set.
+     * @param value the new value of the key, {@code null} to remove the key.
+     */
+    public void set(final String key, final String value) {
+        synchronized (this) {
+            if (Objects.equals(value, properties.getProperty(key))) {
+                return;
+            }
+            if (value == null) {
+                properties.remove(key);
+            } else {
+                properties.setProperty(key, value);
+            }
+            this.modified = true;
+        }
+    }
+
+    /**
+     * Stores the content of the record into its file if it has been modified.
+     */
+    public void store() {
+        synchronized (this) {
+            if (!modified) {
+                return;
+            }
+            try (OutputStream output = new FileOutputStream(file)) {
+                properties.store(output, null);
+                this.modified = false;
+            } catch (IOException e) {
+                if (LOG.isLoggable(Level.WARNING)) {
+                    LOG.log(Level.WARNING, String.format("Could not store the startup record '%s'",
+                        file.getAbsolutePath()), e);
+                }
+            }
+        }
+    }
+}
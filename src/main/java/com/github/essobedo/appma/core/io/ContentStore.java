@@ -0,0 +1,319 @@
+/*
+ * Copyright (C) 2016 essobedo.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.github.essobedo.appma.core.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * <p>Class allowing to share the artifacts that are identical between several installations by storing them once
+ * into a content-addressable store.
+ *
+ * <p>Each artifact is stored as a blob whose name is the SHA-256 hash of its content, and the installations get
+ * hard links to the blobs instead of their own copies, so that the identical artifacts use the disk and the page
+ * cache only once. A blob is always a private copy of the artifact, which is made read-only before being published,
+ * so that the hard links to it cannot be modified in place, they must be replaced. Only the jar files are stored as
+ * they are usually replaced rather than modified. The amount of hard links of a blob is its reference counter, a blob whose only link is the one of the store is not used anymore
+ * and can be deleted by {@link #collectGarbage()}. Whenever a hard link cannot be created, typically because the
+ * store is not on the same file store as the target, the artifact is simply copied.
+ *
+ * @author Nicolas Filotto (nicolas.filotto@gmail.com)
+ * @version $Id$
+ * @since 1.1.3
+ */
+public final class ContentStore {
+
+    /**
+     * The logger of the class.
+     */
+    private static final Logger LOG = Logger.getLogger(ContentStore.class.getName());
+
+    /**
+     * The name of the system parameter allowing to define the folder of the store shared by all the installations
+     * of the machine.
+     */
+    private static final String PARAM_STORE = "essobedo.appma.core.store";
+
+    /**
+     * The algorithm used to compute the key of the blobs.
+     */
+    private static final String ALGORITHM = "SHA-256";
+
+    /**
+     * The name of the attribute giving the amount of hard links of a file.
+     */
+    private static final String NLINK = "unix:nlink";
+
+    /**
+     * The suffix of the files that are stored.
+     */
+    private static final String JAR_SUFFIX = ".jar";
+
+    /**
+     * The suffix of the temporary files of the store.
+     */
+    private static final String TMP_SUFFIX = ".tmp";
+
+    /**
+     * The hexadecimal digits.
+     */
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    /**
+     * The folder of the store.
+     */
+    private final Path folder;
+
+    /**
+     * Constructs a {@code ContentStore} using the specified folder.
+     * @param folder the folder of the store, created if it doesn't exist yet.
+     */
+    public ContentStore(final File folder) {
+        this.folder = Paths.get(folder.getAbsolutePath());
+    }
+
+    /**
+     * Gives the store shared by all the installations of the machine.
+     * @return the store whose folder is defined by the system parameter {@code essobedo.appma.core.store},
+     * {@code null} if it has not been defined.
+     */
+    public static ContentStore getShared() {
+        final String location = System.getProperty(ContentStore.PARAM_STORE);
+        if (location == null || location.isEmpty()) {
+            return null;
+        }
+        return new ContentStore(new File(location));
+    }
+
+    /**
+     * Gives the folder of the store.
+     * @return the folder of the store.
+     */
+    public File getFolder() {
+        return folder.toFile();
+    }
+
+    /**
+     * Indicates whether the specified file can be stored.
+     * @param file the file to check.
+     * @return {@code true} if the file is a jar file, {@code false} otherwise.
+     */
+    public boolean accept(final Path file) {
+        return file.getFileName().toString().endsWith(ContentStore.JAR_SUFFIX);
+    }
+
+    /**
+     * Copies the specified file to the specified location as a hard link to the blob corresponding to its content,
+     * the blob is added to the store if needed. The target is deleted first so that a hard link to another blob
+     * is never modified. The file is simply copied if it cannot be stored or linked.
+     * @param source the file to copy.
+     * @param target the location of the copy, replaced if it exists.
+     * @return {@code true} if the copy is a hard link to a blob, {@code false} if the file has been copied.
+     * @throws IOException if the file could not be copied.
+     */
+    public boolean copy(final Path source, final Path target) throws IOException {
+        if (accept(source)) {
+            try {
+                final Path blob = store(source);
+                Files.deleteIfExists(target);
+                Files.createLink(target, blob);
+                return true;
+            } catch (IOException | UnsupportedOperationException e) {
+                if (LOG.isLoggable(Level.FINE)) {
+                    LOG.log(Level.FINE, String.format("The file '%s' could not be linked, it is copied", target), e);
+                }
+            }
+        }
+        Files.copy(source, target, StandardCopyOption.REPLACE_EXISTING);
+        return false;
+    }
+
+    /**
+     * Adds the specified file to the store, then replaces it atomically with a hard link to the blob corresponding
+     * to its content. Nothing is done if the file cannot be stored or linked.
+     * @param file the file to add.
+     * @return {@code true} if the file is a hard link to a blob, {@code false} otherwise.
+     */
+    public boolean add(final Path file) {
+        if (!accept(file)) {
+            return false;
+        }
+        try {
+            final Path blob = store(file);
+            if (!Files.isSameFile(blob, file)) {
+                // The file is replaced atomically so that it never disappears
+                final Path tmp = Files.createTempFile(file.getParent(), null, ContentStore.TMP_SUFFIX);
+                try {
+                    Files.delete(tmp);
+                    Files.createLink(tmp, blob);
+                    ContentStore.move(tmp, file);
+                } finally {
+                    Files.deleteIfExists(tmp);
+                }
+            }
+            return true;
+        } catch (IOException | UnsupportedOperationException e) {
+            if (LOG.isLoggable(Level.FINE)) {
+                LOG.log(Level.FINE, String.format("The file '%s' could not be added to the store", file), e);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Deletes the blobs that are not used anymore, which are the blobs whose only hard link is the one of the
+     * store. Nothing is done if the amount of hard links of a file is not supported.
+     * @return the amount of blobs that have been deleted.
+     * @throws IOException if the content of the store could not be listed.
+     */
+    public int collectGarbage() throws IOException {
+        if (!Files.isDirectory(folder)) {
+            return 0;
+        }
+        final GarbageFileVisitor visitor = new GarbageFileVisitor();
+        try {
+            Files.walkFileTree(folder, visitor);
+        } catch (UnsupportedOperationException | IllegalArgumentException e) {
+            if (LOG.isLoggable(Level.WARNING)) {
+                LOG.log(Level.WARNING, "The amount of hard links of a file is not supported, the unused blobs"
+                    + " cannot be collected", e);
+            }
+        }
+        if (LOG.isLoggable(Level.FINE)) {
+            LOG.log(Level.FINE, String.format("%d unused blobs have been deleted from the store '%s'",
+                visitor.deleted, folder));
+        }
+        return visitor.deleted;
+    }
+
+    /**
+     * Gives the blob corresponding to the content of the specified file. If the blob doesn't exist yet or if its
+     * content doesn't match its hash anymore, a private copy of the file is made read-only then published as the
+     * blob.
+     * @param file the file whose blob is expected.
+     * @return the blob corresponding to the content of the file.
+     * @throws IOException if the blob could not be added.
+     */
+    private Path store(final Path file) throws IOException {
+        final String hash = ContentStore.hash(file);
+        final Path blob = folder.resolve(hash.substring(0, 2)).resolve(hash);
+        if (Files.exists(blob)) {
+            if (hash.equals(ContentStore.hash(blob))) {
+                return blob;
+            }
+            if (LOG.isLoggable(Level.WARNING)) {
+                LOG.log(Level.WARNING, String.format("The content of the blob '%s' has been modified, it is replaced",
+                    blob));
+            }
+        }
+        Files.createDirectories(blob.getParent());
+        final Path tmp = Files.createTempFile(blob.getParent(), hash, ContentStore.TMP_SUFFIX);
+        try {
+            Files.copy(file, tmp, StandardCopyOption.REPLACE_EXISTING);
+            if (!hash.equals(ContentStore.hash(tmp))) {
+                throw new IOException(String.format("The file '%s' has been modified while being stored", file));
+            }
+            if (!tmp.toFile().setWritable(false, false)) {
+                throw new IOException(String.format("The blob '%s' could not be made read-only", blob));
+            }
+            // The blob is published atomically so that it is never partially written
+            ContentStore.move(tmp, blob);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+        return blob;
+    }
+
+    /**
+     * Moves the specified file to the specified location atomically if possible.
+     * @param source the file to move.
+     * @param target the location to move the file to, replaced if it exists.
+     * @throws IOException if the file could not be moved.
+     */
+    private static void move(final Path source, final Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Computes the hash of the content of the specified file.
+     * @param file the file whose content is hashed.
+     * @return the hexadecimal representation of the hash of the content.
+     * @throws IOException if the content of the file could not be read.
+     */
+    static String hash(final Path file) throws IOException {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance(ContentStore.ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(String.format("The algorithm '%s' is not supported", ContentStore.ALGORITHM), e);
+        }
+        final byte[] buffer = new byte[8192];
+        try (InputStream in = Files.newInputStream(file)) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        final byte[] bytes = digest.digest();
+        final char[] result = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            result[i * 2] = ContentStore.HEX[(bytes[i] >> 4) & 0xF];
+            result[i * 2 + 1] = ContentStore.HEX[bytes[i] & 0xF];
+        }
+        return new String(result);
+    }
+
+    /**
+     * Class allowing to delete the blobs that are not used anymore.
+     */
+    private static class GarbageFileVisitor extends SimpleFileVisitor<Path> {
+        /**
+         * The amount of blobs that have been deleted.
+         */
+        private int deleted;
+
+        @Override
+        public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) throws IOException {
+            // The temporary files are the blobs being added
+            if (attrs.isRegularFile() && !file.getFileName().toString().endsWith(ContentStore.TMP_SUFFIX)
+                && ((Number) Files.getAttribute(file, ContentStore.NLINK)).intValue() == 1) {
+                Files.delete(file);
+                deleted++;
+            }
+            return FileVisitResult.CONTINUE;
+        }
+    }
+}
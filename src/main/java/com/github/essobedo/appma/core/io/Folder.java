@@ -20,13 +20,19 @@ package com.github.essobedo.appma.core.io;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
+import java.nio.file.LinkOption;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashSet;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -73,15 +79,43 @@ public final class Folder {
         }
     }
 
+    /**
+     * Deletes the folder and its content in background if it can be moved into the specified trash,
+     * directly otherwise.
+     * @param trash the trash into which the folder is moved.
+     * @since 1.1.3
+     */
+    public void delete(final Trash trash) {
+        if (!trash.discard(folderAsFile)) {
+            delete();
+        }
+    }
+
     /**
      * Copies the folder and its content to the specified location.
      * @param destination the folder in which the content of the folder will be copied
      */
     public void copy(final File destination) {
+        copy(destination, new File[0]);
+    }
+
+    /**
+     * Copies the folder and its content to the specified location except the specified sub folders. If the
+     * store shared by all the installations has been defined, the jar files are copied as hard links to
+     * the blobs of the store.
+     * @param destination the folder in which the content of the folder will be copied
+     * @param excluded the sub folders that must not be copied.
+     */
+    public void copy(final File destination, final File... excluded) {
         try {
             final Path directory = Paths.get(folderAsFile.getAbsolutePath());
             final Path target = Paths.get(destination.getAbsolutePath());
-            Files.walkFileTree(directory, new CopyFileVisitor(directory, target));
+            final Set<Path> excludedPaths = new HashSet<>();
+            for (final File file : excluded) {
+                excludedPaths.add(Paths.get(file.getAbsolutePath()));
+            }
+            Files.walkFileTree(directory, new CopyFileVisitor(directory, target, excludedPaths,
+                ContentStore.getShared()));
         } catch (IOException e) {
             if (LOG.isLoggable(Level.WARNING)) {
                 LOG.log(Level.WARNING, String.format("Could not copy the content of the folder '%s'",
@@ -90,6 +124,160 @@ public final class Folder {
         }
     }
 
+    /**
+     * Synchronizes the specified folder with the folder, only the files that are new, whose size differs or
+     * that have been modified after their copy are copied and the files and folders that don't exist in the folder
+     * are removed.
+     * @param destination the folder to synchronize with the folder.
+     * @param excluded the sub folders of the destination folder that must be left untouched.
+     * @return the summary of the synchronization.
+     * @throws IOException if the folders could not be synchronized.
+     * @since 1.1.3
+     */
+    public SyncSummary syncTo(final File destination, final File... excluded) throws IOException {
+        return syncTo(destination, false, excluded);
+    }
+
+    /**
+     * Synchronizes the specified folder with the folder, only the files that are new, whose size differs or
+     * whose content differs are copied and the files and folders that don't exist in the folder are removed.
+     * The content of the files of the same size is compared if requested, whatever their last modification time,
+     * which allows to synchronize with a freshly extracted patch whose files are all more recent than their
+     * copies. Otherwise a copy is up to date if it is not older than the file.
+     * @param destination the folder to synchronize with the folder.
+     * @param compareContent {@code true} to compare the content of the files of the same size, {@code false} to
+     * compare their last modification time.
+     * @param excluded the sub folders of the destination folder that must be left untouched.
+     * @return the summary of the synchronization.
+     * @throws IOException if the folders could not be synchronized.
+     * @since 1.1.3
+     */
+    public SyncSummary syncTo(final File destination, final boolean compareContent, final File... excluded)
+        throws IOException {
+        final Path directory = Paths.get(folderAsFile.getAbsolutePath());
+        final Path target = Paths.get(destination.getAbsolutePath());
+        final Set<Path> excludedPaths = new HashSet<>();
+        for (final File file : excluded) {
+            excludedPaths.add(Paths.get(file.getAbsolutePath()));
+        }
+        final SyncFileVisitor visitor = new SyncFileVisitor(directory, target, excludedPaths, compareContent);
+        Files.walkFileTree(directory, visitor);
+        Files.walkFileTree(target, visitor.new CleanFileVisitor());
+        return visitor.getSummary();
+    }
+
+    /**
+     * Forces the content of the folder to the storage device, so that it survives a power loss. The files are
+     * written without being synchronized individually, then this single pass forces the content of all the files
+     * of each directory before forcing the directory itself, which gives the storage device the opportunity to
+     * write them back in batch.
+     * @throws IOException if the content of the folder could not be forced.
+     * @since 1.1.3
+     */
+    public void force() throws IOException {
+        force(Long.MIN_VALUE);
+    }
+
+    /**
+     * Forces to the storage device the files and directories of the folder that have been modified since the
+     * specified time, in one single pass like {@link #force()}. The files that have not been written since then,
+     * like the hard links to existing files, are skipped, and so are the directories whose entries have not
+     * changed.
+     * @param since the time in milliseconds since the epoch from which the modifications must be forced.
+     * @param excluded the sub folders that must be skipped.
+     * @throws IOException if the content of the folder could not be forced.
+     * @since 1.1.3
+     */
+    public void force(final long since, final File... excluded) throws IOException {
+        final Set<Path> excludedPaths = new HashSet<>();
+        for (final File file : excluded) {
+            excludedPaths.add(Paths.get(file.getAbsolutePath()));
+        }
+        Files.walkFileTree(Paths.get(folderAsFile.getAbsolutePath()), new ForceFileVisitor(since, excludedPaths));
+    }
+
+    /**
+     * Forces the content of the specified file, or the entries of the specified directory, to the storage
+     * device. Directories cannot be forced on some platforms, in which case nothing is done.
+     * @param file the file or directory to force.
+     * @throws IOException if the content of the file could not be forced.
+     * @since 1.1.3
+     */
+    public static void force(final File file) throws IOException {
+        Folder.force(file.toPath(), file.isDirectory());
+    }
+
+    /**
+     * Forces the content of the specified file or directory to the storage device.
+     * @param path the file or directory to force.
+     * @param directory {@code true} if the path is a directory, {@code false} otherwise.
+     * @throws IOException if the content of the file could not be forced.
+     */
+    private static void force(final Path path, final boolean directory) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            if (!directory) {
+                throw e;
+            }
+            if (LOG.isLoggable(Level.FINE)) {
+                LOG.log(Level.FINE, String.format("The directory '%s' could not be forced", path), e);
+            }
+        }
+    }
+
+    /**
+     * Class allowing to force the content of the folder to the storage device.
+     */
+    private static class ForceFileVisitor extends SimpleFileVisitor<Path> {
+        /**
+         * The time in milliseconds since the epoch from which the modifications must be forced.
+         */
+        private final long since;
+        /**
+         * The sub directories that must be skipped.
+         */
+        private final Set<Path> excluded;
+
+        /**
+         * Constructs a {@code ForceFileVisitor} using the specified time and excluded directories.
+         * @param since the time in milliseconds since the epoch from which the modifications must be forced.
+         * @param excluded the sub directories that must be skipped.
+         */
+        ForceFileVisitor(final long since, final Set<Path> excluded) {
+            this.since = since;
+            this.excluded = excluded;
+        }
+
+        @Override
+        public FileVisitResult preVisitDirectory(final Path dir, final BasicFileAttributes attrs) {
+            if (excluded.contains(dir)) {
+                return FileVisitResult.SKIP_SUBTREE;
+            }
+            return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) throws IOException {
+            if (attrs.isRegularFile() && attrs.lastModifiedTime().toMillis() >= since) {
+                Folder.force(file, false);
+            }
+            return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult postVisitDirectory(final Path dir, final IOException exc) throws IOException {
+            if (exc != null) {
+                throw exc;
+            }
+            // The directory is forced once all its files have been forced
+            if (Files.getLastModifiedTime(dir).toMillis() >= since) {
+                Folder.force(dir, true);
+            }
+            return FileVisitResult.CONTINUE;
+        }
+    }
+
     /**
      * Class allowing to delete the content of the folder.
      */
@@ -119,28 +307,250 @@ public final class Folder {
          * The target directory.
          */
         private final Path target;
+        /**
+         * The sub directories that must not be copied.
+         */
+        private final Set<Path> excluded;
+        /**
+         * The store into which the jar files are shared, {@code null} if they must be copied.
+         */
+        private final ContentStore store;
 
         /**
          * Constructs a {@code CopyFileVisitor} using the specified source and target directories.
          * @param directory the source directory.
          * @param target the target directory.
+         * @param excluded the sub directories that must not be copied.
+         * @param store the store into which the jar files are shared, {@code null} if they must be copied.
          */
-        CopyFileVisitor(final Path directory, final Path target) {
+        CopyFileVisitor(final Path directory, final Path target, final Set<Path> excluded,
+                        final ContentStore store) {
             this.directory = directory;
             this.target = target;
+            this.excluded = excluded;
+            this.store = store;
         }
 
         @Override
         public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) throws IOException {
-            Files.copy(file, target.resolve(directory.relativize(file)), StandardCopyOption.REPLACE_EXISTING);
+            final Path copy = target.resolve(directory.relativize(file));
+            if (store == null) {
+                Files.copy(file, copy, StandardCopyOption.REPLACE_EXISTING);
+            } else {
+                store.copy(file, copy);
+            }
             return FileVisitResult.CONTINUE;
         }
 
         @Override
         public FileVisitResult preVisitDirectory(final Path dir, final BasicFileAttributes attrs)
             throws IOException {
+            if (excluded.contains(dir)) {
+                return FileVisitResult.SKIP_SUBTREE;
+            }
             Files.copy(dir, target.resolve(directory.relativize(dir)), StandardCopyOption.REPLACE_EXISTING);
             return FileVisitResult.CONTINUE;
         }
     }
+
+    /**
+     * Class allowing to synchronize a target folder with the content of the folder.
+     */
+    private static class SyncFileVisitor extends SimpleFileVisitor<Path> {
+        /**
+         * The size of the buffers used to compare the content of the files.
+         */
+        private static final int BUFFER_SIZE = 8192;
+        /**
+         * The source directory.
+         */
+        private final Path directory;
+        /**
+         * The target directory.
+         */
+        private final Path target;
+        /**
+         * The sub directories of the target directory that must be left untouched.
+         */
+        private final Set<Path> excluded;
+        /**
+         * Indicates whether the content of the files must be compared.
+         */
+        private final boolean compareContent;
+        /**
+         * The amount of files that have been added.
+         */
+        private int added;
+        /**
+         * The amount of files that have been replaced.
+         */
+        private int updated;
+        /**
+         * The amount of files and folders that have been removed.
+         */
+        private int deleted;
+        /**
+         * The amount of files that were already up to date.
+         */
+        private int unchanged;
+        /**
+         * The amount of bytes that have been copied.
+         */
+        private long bytesCopied;
+
+        /**
+         * Constructs a {@code SyncFileVisitor} using the specified source and target directories.
+         * @param directory the source directory.
+         * @param target the target directory.
+         * @param excluded the sub directories of the target directory that must be left untouched.
+         * @param compareContent indicates whether the content of the files must be compared.
+         */
+        SyncFileVisitor(final Path directory, final Path target, final Set<Path> excluded,
+                        final boolean compareContent) {
+            this.directory = directory;
+            this.target = target;
+            this.excluded = excluded;
+            this.compareContent = compareContent;
+        }
+
+        @Override
+        public FileVisitResult preVisitDirectory(final Path dir, final BasicFileAttributes attrs)
+            throws IOException {
+            final Path copy = target.resolve(directory.relativize(dir));
+            if (excluded.contains(copy)) {
+                return FileVisitResult.SKIP_SUBTREE;
+            }
+            if (Files.exists(copy, LinkOption.NOFOLLOW_LINKS) && !Files.isDirectory(copy, LinkOption.NOFOLLOW_LINKS)) {
+                Files.delete(copy);
+                deleted++;
+            }
+            if (!Files.exists(copy, LinkOption.NOFOLLOW_LINKS)) {
+                Files.createDirectories(copy);
+            }
+            return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) throws IOException {
+            final Path copy = target.resolve(directory.relativize(file));
+            if (Files.isDirectory(copy, LinkOption.NOFOLLOW_LINKS)) {
+                new Folder(copy.toFile()).delete();
+                deleted++;
+            }
+            if (!Files.exists(copy, LinkOption.NOFOLLOW_LINKS)) {
+                added++;
+            } else if (isUpToDate(file, attrs, copy)) {
+                unchanged++;
+                return FileVisitResult.CONTINUE;
+            } else {
+                updated++;
+            }
+            Files.copy(file, copy, StandardCopyOption.REPLACE_EXISTING);
+            bytesCopied += attrs.size();
+            return FileVisitResult.CONTINUE;
+        }
+
+        /**
+         * Indicates whether the specified copy of the specified file is up to date.
+         * @param file the source file.
+         * @param attrs the attributes of the source file.
+         * @param copy the copy of the file to check.
+         * @return {@code true} if the copy is up to date, {@code false} otherwise.
+         * @throws IOException if the copy could not be checked.
+         */
+        private boolean isUpToDate(final Path file, final BasicFileAttributes attrs, final Path copy)
+            throws IOException {
+            final BasicFileAttributes copyAttrs = Files.readAttributes(copy, BasicFileAttributes.class,
+                LinkOption.NOFOLLOW_LINKS);
+            if (copyAttrs.size() != attrs.size()) {
+                return false;
+            } else if (compareContent) {
+                return hasSameContent(file, copy);
+            }
+            // The copy is more recent than the file unless the file has been modified since then
+            return copyAttrs.lastModifiedTime().toMillis() >= attrs.lastModifiedTime().toMillis();
+        }
+
+        /**
+         * Indicates whether the specified files have the same content.
+         * @param file1 the first file to compare.
+         * @param file2 the second file to compare.
+         * @return {@code true} if the files have the same content, {@code false} otherwise.
+         * @throws IOException if the files could not be read.
+         */
+        private static boolean hasSameContent(final Path file1, final Path file2) throws IOException {
+            final byte[] buffer1 = new byte[BUFFER_SIZE];
+            final byte[] buffer2 = new byte[BUFFER_SIZE];
+            try (InputStream input1 = Files.newInputStream(file1);
+                 InputStream input2 = Files.newInputStream(file2)) {
+                int length;
+                do {
+                    length = read(input1, buffer1);
+                    if (length != read(input2, buffer2)) {
+                        return false;
+                    }
+                    for (int i = 0; i < length; i++) {
+                        if (buffer1[i] != buffer2[i]) {
+                            return false;
+                        }
+                    }
+                } while (length == BUFFER_SIZE);
+                return true;
+            }
+        }
+
+        /**
+         * Reads from the specified stream as many bytes as possible into the specified buffer.
+         * @param input the stream to read.
+         * @param buffer the buffer to fill.
+         * @return the amount of bytes read, less than the size of the buffer only if the end of the stream
+         * has been reached.
+         * @throws IOException if the stream could not be read.
+         */
+        private static int read(final InputStream input, final byte[] buffer) throws IOException {
+            int length = 0;
+            int read;
+            while (length < buffer.length && (read = input.read(buffer, length, buffer.length - length)) != -1) {
+                length += read;
+            }
+            return length;
+        }
+
+        /**
+         * Gives the summary of the synchronization.
+         * @return the summary of the synchronization.
+         */
+        SyncSummary getSummary() {
+            return new SyncSummary(added, updated, deleted, unchanged, bytesCopied);
+        }
+
+        /**
+         * Class allowing to remove from the target folder the files and folders that don't exist in the source
+         * folder.
+         */
+        private class CleanFileVisitor extends SimpleFileVisitor<Path> {
+
+            @Override
+            public FileVisitResult preVisitDirectory(final Path dir, final BasicFileAttributes attrs) {
+                if (excluded.contains(dir)) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                if (!Files.isDirectory(directory.resolve(target.relativize(dir)), LinkOption.NOFOLLOW_LINKS)) {
+                    new Folder(dir.toFile()).delete();
+                    deleted++;
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) throws IOException {
+                if (!Files.exists(directory.resolve(target.relativize(file)), LinkOption.NOFOLLOW_LINKS)) {
+                    Files.delete(file);
+                    deleted++;
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        }
+    }
 }
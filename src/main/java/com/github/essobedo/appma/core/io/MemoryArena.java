@@ -0,0 +1,282 @@
+/*
+ * Copyright (C) 2016 essobedo.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.github.essobedo.appma.core.io;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * <p>Class allowing to access to an off-heap memory region that is mapped to a file, so that its content
+ * outlives the application that fills it.
+ *
+ * <p>As a mapping cannot exceed 2 GB, the region is mapped in segments of 1 GB, each segment overlapping the
+ * next one by 8 bytes so that a primitive value can always be read from or written into a single segment. The
+ * positions are absolute positions in the region, the arena doesn't maintain any position or limit.
+ *
+ * @author Nicolas Filotto (nicolas.filotto@gmail.com)
+ * @version $Id$
+ * @since 1.1.3
+ */
+public final class MemoryArena implements Closeable {
+
+    /**
+     * The default amount of bits of the size of a segment.
+     */
+    private static final int DEFAULT_SEGMENT_SHIFT = 30;
+
+    /**
+     * The amount of bytes by which a segment overlaps the next one.
+     */
+    private static final int OVERLAP = Long.BYTES;
+
+    /**
+     * The file to which the region is mapped.
+     */
+    private final File file;
+
+    /**
+     * The size in bytes of the region.
+     */
+    private final long size;
+
+    /**
+     * The amount of bits of the size of a segment.
+     */
+    private final int segmentShift;
+
+    /**
+     * The mask allowing to get the position of a byte in its segment.
+     */
+    private final long segmentMask;
+
+    /**
+     * The mapped segments of the region.
+     */
+    private final MappedByteBuffer[] segments;
+
+    /**
+     * Constructs a {@code MemoryArena} that maps the specified file. The file is created if it doesn't exist
+     * and is resized if its size is not the expected one, its content is otherwise preserved.
+     * @param file the file to map.
+     * @param size the size in bytes of the region.
+     * @throws IOException if the file could not be mapped.
+     */
+    public MemoryArena(final File file, final long size) throws IOException {
+        this(file, size, DEFAULT_SEGMENT_SHIFT);
+    }
+
+    /**
+     * Constructs a {@code MemoryArena} that maps the specified file with segments of the specified size.
+     * @param file the file to map.
+     * @param size the size in bytes of the region.
+     * @param segmentShift the amount of bits of the size of a segment.
+     * @throws IOException if the file could not be mapped.
+     */
+    MemoryArena(final File file, final long size, final int segmentShift) throws IOException {
+        if (size <= 0L) {
+            throw new IllegalArgumentException(String.format("The size of the region must be positive: %d", size));
+        }
+        this.file = file;
+        this.size = size;
+        this.segmentShift = segmentShift;
+        this.segmentMask = (1L << segmentShift) - 1L;
+        final int count = (int) ((size - 1L) >>> segmentShift) + 1;
+        this.segments = new MappedByteBuffer[count];
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            if (raf.length() != size) {
+                raf.setLength(size);
+            }
+            final FileChannel channel = raf.getChannel();
+            for (int i = 0; i < count; i++) {
+                final long offset = (long) i << segmentShift;
+                final long length = Math.min(size - offset, (1L << segmentShift) + OVERLAP);
+                segments[i] = channel.map(FileChannel.MapMode.READ_WRITE, offset, length);
+            }
+        }
+    }
+
+    /**
+     * Gives the file to which the region is mapped.
+     * @return the file to which the region is mapped.
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Gives the size in bytes of the region.
+     * @return the size of the region.
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Gives the segment containing the specified position.
+     * @param position the absolute position in the region.
+     * @return the segment containing the position.
+     */
+    private ByteBuffer segment(final long position) {
+        if (position < 0L || position >= size) {
+            throw new IndexOutOfBoundsException(String.format("The position %d is out of the region of %d bytes",
+                position, size));
+        }
+        return segments[(int) (position >>> segmentShift)];
+    }
+
+    /**
+     * Gives the position in its segment of the specified position.
+     * @param position the absolute position in the region.
+     * @return the position in its segment.
+     */
+    private int offset(final long position) {
+        return (int) (position & segmentMask);
+    }
+
+    /**
+     * Reads the byte at the specified position.
+     * @param position the absolute position in the region.
+     * @return the byte at the specified position.
+     */
+    public byte getByte(final long position) {
+        return segment(position).get(offset(position));
+    }
+
+    /**
+     * Writes the specified byte at the specified position.
+     * @param position the absolute position in the region.
+     * @param value the byte to write.
+     */
+    public void putByte(final long position, final byte value) {
+        segment(position).put(offset(position), value);
+    }
+
+    /**
+     * Reads the int at the specified position.
+     * @param position the absolute position in the region.
+     * @return the int at the specified position.
+     */
+    public int getInt(final long position) {
+        return segment(position).getInt(offset(position));
+    }
+
+    /**
+     * Writes the specified int at the specified position.
+     * @param position the absolute position in the region.
+     * @param value the int to write.
+     */
+    public void putInt(final long position, final int value) {
+        segment(position).putInt(offset(position), value);
+    }
+
+    /**
+     * Reads the long at the specified position.
+     * @param position the absolute position in the region.
+     * @return the long at the specified position.
+     */
+    public long getLong(final long position) {
+        return segment(position).getLong(offset(position));
+    }
+
+    /**
+     * Writes the specified long at the specified position.
+     * @param position the absolute position in the region.
+     * @param value the long to write.
+     */
+    public void putLong(final long position, final long value) {
+        segment(position).putLong(offset(position), value);
+    }
+
+    /**
+     * Reads bytes from the specified position into the specified array.
+     * @param position the absolute position in the region of the first byte to read.
+     * @param destination the array into which the bytes are written.
+     * @param offset the offset in the array of the first byte to write.
+     * @param length the amount of bytes to read.
+     */
+    public void get(final long position, final byte[] destination, final int offset, final int length) {
+        checkRange(position, length);
+        long current = position;
+        int done = 0;
+        while (done < length) {
+            final ByteBuffer buffer = segment(current).duplicate();
+            buffer.position(offset(current));
+            final int chunk = (int) Math.min(length - done, (1L << segmentShift) - offset(current));
+            buffer.get(destination, offset + done, chunk);
+            done += chunk;
+            current += chunk;
+        }
+    }
+
+    /**
+     * Writes bytes from the specified array at the specified position.
+     * @param position the absolute position in the region of the first byte to write.
+     * @param source the array from which the bytes are read.
+     * @param offset the offset in the array of the first byte to read.
+     * @param length the amount of bytes to write.
+     */
+    public void put(final long position, final byte[] source, final int offset, final int length) {
+        checkRange(position, length);
+        long current = position;
+        int done = 0;
+        while (done < length) {
+            final ByteBuffer buffer = segment(current).duplicate();
+            buffer.position(offset(current));
+            final int chunk = (int) Math.min(length - done, (1L << segmentShift) - offset(current));
+            buffer.put(source, offset + done, chunk);
+            done += chunk;
+            current += chunk;
+        }
+    }
+
+    /**
+     * Checks that the specified range is part of the region.
+     * @param position the absolute position of the first byte of the range.
+     * @param length the length of the range.
+     */
+    private void checkRange(final long position, final int length) {
+        if (position < 0L || length < 0 || position + length > size) {
+            throw new IndexOutOfBoundsException(String.format("The range [%d, %d[ is out of the region of %d bytes",
+                position, position + length, size));
+        }
+    }
+
+    /**
+     * Writes the modified content of the region into the file.
+     */
+    public void force() {
+        for (final MappedByteBuffer segment : segments) {
+            segment.force();
+        }
+    }
+
+    /**
+     * Writes the modified content of the region into the file. The mapping itself is released by the
+     * garbage collector once the arena is not referenced anymore.
+     */
+    @Override
+    public void close() {
+        force();
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2016 essobedo.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.github.essobedo.appma.core.io;
+
+import com.github.essobedo.appma.i18n.Localization;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * {@link com.github.essobedo.appma.task.Task} allowing to copy the content of a folder to a given location
+ * using several threads. If the store shared by all the installations has been defined, the jar files are copied
+ * as hard links to the blobs of the store.
+ *
+ * @author Nicolas Filotto (nicolas.filotto@gmail.com)
+ * @version $Id$
+ * @since 1.1.3
+ */
+public final class ParallelCopyTask extends ParallelFolderTask {
+
+    /**
+     * The target folder.
+     */
+    private final Path target;
+
+    /**
+     * The sub folders that must not be copied.
+     */
+    private final Set<Path> excluded = new HashSet<>();
+
+    /**
+     * The store into which the jar files are shared, {@code null} if they must be copied.
+     */
+    private final ContentStore store = ContentStore.getShared();
+
+    /**
+     * Constructs a {@code ParallelCopyTask} with the specified source and destination folders.
+     * @param source the folder to copy.
+     * @param destination the folder in which the content of the folder will be copied.
+     * @param parallelism the amount of threads to use.
+     * @param excluded the sub folders that must not be copied.
+     */
+    public ParallelCopyTask(final File source, final File destination, final int parallelism,
+                            final File... excluded) {
+        super(Localization.getMessage("folder.copy"), Paths.get(source.getAbsolutePath()), parallelism);
+        this.target = Paths.get(destination.getAbsolutePath());
+        for (final File file : excluded) {
+            this.excluded.add(Paths.get(file.getAbsolutePath()));
+        }
+    }
+
+    @Override
+    protected boolean skip(final Path directory) {
+        return excluded.contains(directory);
+    }
+
+    @Override
+    protected void preVisitDirectory(final Path directory) throws IOException {
+        final Path copy = target.resolve(getFolder().relativize(directory));
+        if (!Files.isDirectory(copy, LinkOption.NOFOLLOW_LINKS)) {
+            Files.copy(directory, copy, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    @Override
+    protected void visitFile(final Path file) throws IOException {
+        final Path copy = target.resolve(getFolder().relativize(file));
+        if (store == null) {
+            Files.copy(file, copy, StandardCopyOption.REPLACE_EXISTING);
+        } else {
+            store.copy(file, copy);
+        }
+    }
+
+    @Override
+    protected void postVisitDirectory(final Path directory) {
+        // Nothing to do once the content has been copied
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2016 essobedo.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.github.essobedo.appma.core.io;
+
+import com.github.essobedo.appma.i18n.Localization;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * {@link com.github.essobedo.appma.task.Task} allowing to delete a folder and its content using several threads.
+ *
+ * @author Nicolas Filotto (nicolas.filotto@gmail.com)
+ * @version $Id$
+ * @since 1.1.3
+ */
+public final class ParallelDeleteTask extends ParallelFolderTask {
+
+    /**
+     * Constructs a {@code ParallelDeleteTask} with the specified folder.
+     * @param folder the folder to delete.
+     * @param parallelism the amount of threads to use.
+     */
+    public ParallelDeleteTask(final File folder, final int parallelism) {
+        super(Localization.getMessage("folder.delete"), Paths.get(folder.getAbsolutePath()), parallelism);
+    }
+
+    @Override
+    protected void preVisitDirectory(final Path directory) {
+        // Nothing to do before deleting the content
+    }
+
+    @Override
+    protected void visitFile(final Path file) throws IOException {
+        Files.delete(file);
+    }
+
+    @Override
+    protected void postVisitDirectory(final Path directory) throws IOException {
+        Files.delete(directory);
+    }
+}
@@ -0,0 +1,246 @@
+/*
+ * Copyright (C) 2016 essobedo.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.github.essobedo.appma.core.io;
+
+import com.github.essobedo.appma.exception.ApplicationException;
+import com.github.essobedo.appma.exception.TaskInterruptedException;
+import com.github.essobedo.appma.task.Task;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>{@link Task} allowing to process the content of a folder with a {@link ForkJoinPool}, each sub folder
+ * being processed by its own sub task so that the sub trees are walked and processed concurrently.
+ *
+ * <p>The processing doesn't stop at the first failure, all the failures are collected and reported at the end
+ * of the task as the suppressed exceptions of the thrown {@link ApplicationException}.
+ *
+ * @author Nicolas Filotto (nicolas.filotto@gmail.com)
+ * @version $Id$
+ * @since 1.1.3
+ */
+abstract class ParallelFolderTask extends Task<Void> {
+
+    /**
+     * The amount of processed entries after which the progress is updated.
+     */
+    private static final int PROGRESS_STEP = 1000;
+
+    /**
+     * The folder to process.
+     */
+    private final Path folder;
+
+    /**
+     * The amount of threads to use.
+     */
+    private final int parallelism;
+
+    /**
+     * The amount of entries that have been found so far.
+     */
+    private final AtomicInteger found = new AtomicInteger();
+
+    /**
+     * The amount of entries that have been processed so far.
+     */
+    private final AtomicInteger processed = new AtomicInteger();
+
+    /**
+     * The failures that occurred so far.
+     */
+    private final Queue<IOException> failures = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Constructs a {@code ParallelFolderTask} with the specified name, folder and parallelism.
+     * @param name the name of the task.
+     * @param folder the folder to process.
+     * @param parallelism the amount of threads to use.
+     */
+    ParallelFolderTask(final String name, final Path folder, final int parallelism) {
+        super(name);
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException(String.format("The parallelism must be positive: %d", parallelism));
+        }
+        this.folder = folder;
+        this.parallelism = parallelism;
+    }
+
+    @Override
+    public boolean cancelable() {
+        return true;
+    }
+
+    @Override
+    public Void execute() throws ApplicationException, TaskInterruptedException {
+        if (!Files.isDirectory(folder, LinkOption.NOFOLLOW_LINKS)) {
+            return null;
+        }
+        final ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            found.incrementAndGet();
+            pool.invoke(new FolderAction(folder));
+        } finally {
+            pool.shutdown();
+        }
+        updateProgress(processed.get(), found.get());
+        if (isCanceled()) {
+            throw new TaskInterruptedException();
+        }
+        if (!failures.isEmpty()) {
+            final ApplicationException exception = new ApplicationException(String.format(
+                "%d entries of the folder '%s' could not be processed", failures.size(), folder), failures.peek());
+            for (final IOException failure : failures) {
+                exception.addSuppressed(failure);
+            }
+            throw exception;
+        }
+        return null;
+    }
+
+    /**
+     * Gives the folder to process.
+     * @return the folder to process.
+     */
+    protected final Path getFolder() {
+        return folder;
+    }
+
+    /**
+     * Indicates whether the specified sub folder must be skipped.
+     * @param directory the sub folder to check.
+     * @return {@code true} if the sub folder and its content must be skipped, {@code false} otherwise.
+     */
+    protected boolean skip(final Path directory) {
+        return false;
+    }
+
+    /**
+     * Processes the specified folder before its content.
+     * @param directory the folder to process.
+     * @throws IOException if the folder could not be processed.
+     */
+    protected abstract void preVisitDirectory(Path directory) throws IOException;
+
+    /**
+     * Processes the specified file.
+     * @param file the file to process.
+     * @throws IOException if the file could not be processed.
+     */
+    protected abstract void visitFile(Path file) throws IOException;
+
+    /**
+     * Processes the specified folder after its content.
+     * @param directory the folder to process.
+     * @throws IOException if the folder could not be processed.
+     */
+    protected abstract void postVisitDirectory(Path directory) throws IOException;
+
+    /**
+     * Marks the specified entry as processed and updates the progress if needed.
+     */
+    private void processed() {
+        final int count = processed.incrementAndGet();
+        if (count % ParallelFolderTask.PROGRESS_STEP == 0) {
+            updateProgress(count, found.get());
+        }
+    }
+
+    /**
+     * The sub task processing a folder.
+     */
+    private final class FolderAction extends RecursiveAction {
+
+        /**
+         * The serial version UID.
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * The folder to process.
+         */
+        private final transient Path directory;
+
+        /**
+         * Constructs a {@code FolderAction} with the specified folder.
+         * @param directory the folder to process.
+         */
+        FolderAction(final Path directory) {
+            this.directory = directory;
+        }
+
+        @Override
+        protected void compute() {
+            if (isCanceled()) {
+                return;
+            }
+            try {
+                preVisitDirectory(directory);
+            } catch (IOException e) {
+                // The content cannot be processed
+                failures.add(e);
+                return;
+            }
+            final List<FolderAction> actions = new ArrayList<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+                for (final Path entry : stream) {
+                    if (isCanceled()) {
+                        break;
+                    }
+                    if (Files.isDirectory(entry, LinkOption.NOFOLLOW_LINKS)) {
+                        if (!skip(entry)) {
+                            found.incrementAndGet();
+                            actions.add(new FolderAction(entry));
+                        }
+                        continue;
+                    }
+                    found.incrementAndGet();
+                    try {
+                        visitFile(entry);
+                    } catch (IOException e) {
+                        failures.add(e);
+                    }
+                    processed();
+                }
+            } catch (IOException e) {
+                failures.add(e);
+            }
+            invokeAll(actions);
+            if (isCanceled()) {
+                return;
+            }
+            try {
+                postVisitDirectory(directory);
+            } catch (IOException e) {
+                failures.add(e);
+            }
+            processed();
+        }
+    }
+}
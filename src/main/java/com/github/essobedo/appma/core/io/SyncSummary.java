@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2016 essobedo.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.github.essobedo.appma.core.io;
+
+/**
+ * The summary of a synchronization of a folder with another folder.
+ *
+ * @author Nicolas Filotto (nicolas.filotto@gmail.com)
+ * @version $Id$
+ * @since 1.1.3
+ */
+public final class SyncSummary {
+
+    /**
+     * The amount of files that have been added to the target folder.
+     */
+    private final int added;
+
+    /**
+     * The amount of files of the target folder that have been replaced.
+     */
+    private final int updated;
+
+    /**
+     * The amount of files and folders that have been removed from the target folder.
+     */
+    private final int deleted;
+
+    /**
+     * The amount of files of the target folder that were already up to date.
+     */
+    private final int unchanged;
+
+    /**
+     * The amount of bytes that have been copied.
+     */
+    private final long bytesCopied;
+
+    /**
+     * Constructs a {@code SyncSummary} with the specified amounts.
+     * @param added the amount of files that have been added to the target folder.
+     * @param updated the amount of files of the target folder that have been replaced.
+     * @param deleted the amount of files and folders that have been removed from the target folder.
+     * @param unchanged the amount of files of the target folder that were already up to date.
+     * @param bytesCopied the amount of bytes that have been copied.
+     */
+    public SyncSummary(final int added, final int updated, final int deleted, final int unchanged,
+                       final long bytesCopied) {
+        this.added = added;
+        this.updated = updated;
+        this.deleted = deleted;
+        this.unchanged = unchanged;
+        this.bytesCopied = bytesCopied;
+    }
+
+    /**
+     * Gives the amount of files that have been added to the target folder.
+     * @return the amount of files that have been added.
+     */
+    public int getAdded() {
+        return added;
+    }
+
+    /**
+     * Gives the amount of files of the target folder that have been replaced.
+     * @return the amount of files that have been replaced.
+     */
+    public int getUpdated() {
+        return updated;
+    }
+
+    /**
+     * Gives the amount of files and folders that have been removed from the target folder.
+     * @return the amount of files and folders that have been removed.
+     */
+    public int getDeleted() {
+        return deleted;
+    }
+
+    /**
+     * Gives the amount of files of the target folder that were already up to date.
+     * @return the amount of files that were already up to date.
+     */
+    public int getUnchanged() {
+        return unchanged;
+    }
+
+    /**
+     * Gives the amount of bytes that have been copied.
+     * @return the amount of bytes that have been copied.
+     */
+    public long getBytesCopied() {
+        return bytesCopied;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("added: %d, updated: %d, deleted: %d, unchanged: %d, bytes copied: %d", added, updated,
+            deleted, unchanged, bytesCopied);
+    }
+}
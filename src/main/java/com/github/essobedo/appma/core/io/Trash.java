@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2016 essobedo.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.github.essobedo.appma.core.io;
+
+import com.github.essobedo.appma.exception.ApplicationException;
+import com.github.essobedo.appma.exception.TaskInterruptedException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * <p>Class allowing to delete folders without waiting for the deletion of their content. A folder is first
+ * moved atomically into the trash folder, which is a simple rename when both are on the same file system, then
+ * its content is deleted in background by a {@link ParallelDeleteTask} launched from a low priority thread.
+ *
+ * <p>As the background thread doesn't prevent the JVM from exiting, the content of the trash folder that could
+ * not be deleted is expected to be deleted later with {@link #sweep()}.
+ *
+ * @author Nicolas Filotto (nicolas.filotto@gmail.com)
+ * @version $Id$
+ * @since 1.1.3
+ */
+public final class Trash {
+
+    /**
+     * The logger of the class.
+     */
+    private static final Logger LOG = Logger.getLogger(Trash.class.getName());
+
+    /**
+     * The counter used to get unique names in the trash folder.
+     */
+    private static final AtomicLong COUNTER = new AtomicLong();
+
+    /**
+     * The time in seconds after which the idle background thread is stopped.
+     */
+    private static final long KEEP_ALIVE = 10L;
+
+    /**
+     * The folder into which the folders to delete are moved.
+     */
+    private final File trashFolder;
+
+    /**
+     * The amount of threads to use to delete a folder.
+     */
+    private final int parallelism;
+
+    /**
+     * The executor deleting the content of the trash folder.
+     */
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * Constructs a {@code Trash} with the specified trash folder, whose content is deleted using as many threads
+     * as available processors.
+     * @param trashFolder the folder into which the folders to delete are moved.
+     */
+    public Trash(final File trashFolder) {
+        this(trashFolder, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructs a {@code Trash} with the specified trash folder and amount of threads.
+     * @param trashFolder the folder into which the folders to delete are moved.
+     * @param parallelism the amount of threads to use to delete a folder.
+     */
+    public Trash(final File trashFolder, final int parallelism) {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException(String.format("The parallelism must be positive: %d", parallelism));
+        }
+        this.trashFolder = trashFolder;
+        this.parallelism = parallelism;
+        this.executor = new ThreadPoolExecutor(1, 1, Trash.KEEP_ALIVE, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+            runnable -> {
+                final Thread thread = new Thread(runnable, "appma-trash");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            });
+        // The thread is only needed while there is something to delete
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Moves atomically the specified folder into the trash folder and deletes it in background.
+     * @param folder the folder to delete.
+     * @return {@code true} if the folder has been moved into the trash folder or doesn't exist, {@code false}
+     * if it could not be moved, for example because the trash folder is on another file system, in which case
+     * it must be deleted directly.
+     */
+    public boolean discard(final File folder) {
+        if (!folder.exists()) {
+            return true;
+        }
+        final File target = new File(trashFolder, String.format("%s-%d-%d", folder.getName(),
+            System.currentTimeMillis(), COUNTER.incrementAndGet()));
+        try {
+            Files.createDirectories(trashFolder.toPath());
+            Files.move(folder.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            if (LOG.isLoggable(Level.FINE)) {
+                LOG.log(Level.FINE, String.format("The folder '%s' could not be moved into the trash",
+                    folder.getAbsolutePath()), e);
+            }
+            return false;
+        }
+        deleteInBackground(target);
+        return true;
+    }
+
+    /**
+     * Deletes in background the content of the trash folder, that could not be deleted previously.
+     */
+    public void sweep() {
+        final File[] files = trashFolder.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (final File file : files) {
+            deleteInBackground(file);
+        }
+    }
+
+    /**
+     * Deletes the specified content of the trash folder in background.
+     * @param file the file or folder to delete.
+     */
+    private void deleteInBackground(final File file) {
+        executor.execute(() -> {
+            if (file.isDirectory()) {
+                try {
+                    new ParallelDeleteTask(file, parallelism).execute();
+                } catch (ApplicationException | TaskInterruptedException e) {
+                    if (LOG.isLoggable(Level.WARNING)) {
+                        LOG.log(Level.WARNING, String.format("The folder '%s' could not be deleted",
+                            file.getAbsolutePath()), e);
+                    }
+                }
+            } else if (!file.delete() && LOG.isLoggable(Level.WARNING)) {
+                LOG.log(Level.WARNING, String.format("The file '%s' could not be deleted", file.getAbsolutePath()));
+            }
+        });
+    }
+}
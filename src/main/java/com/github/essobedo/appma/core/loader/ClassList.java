@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2016 essobedo.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.github.essobedo.appma.core.loader;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * <p>The ordered list of classes loaded by a given version of the guest application while it was started.
+ *
+ * <p>The list is stored into a text file whose two first lines are the version of the application and
+ * the fingerprint of its classpath, followed by the full qualified name of each class, one per line.
+ *
+ * @author Nicolas Filotto (nicolas.filotto@gmail.com)
+ * @version $Id$
+ * @since 1.1.3
+ */
+public final class ClassList {
+
+    /**
+     * The prefix of the line containing the version of the application.
+     */
+    private static final String VERSION_PREFIX = "#version=";
+
+    /**
+     * The prefix of the line containing the fingerprint of the classpath.
+     */
+    private static final String FINGERPRINT_PREFIX = "#fingerprint=";
+
+    /**
+     * The version of the application.
+     */
+    private final String version;
+
+    /**
+     * The fingerprint of the classpath of the application.
+     */
+    private final String fingerprint;
+
+    /**
+     * The full qualified names of the classes in loading order.
+     */
+    private final List<String> classNames;
+
+    /**
+     * Constructs a {@code ClassList} with the specified version, fingerprint and class names.
+     * @param version the version of the application.
+     * @param fingerprint the fingerprint of the classpath of the application.
+     * @param classNames the full qualified names of the classes in loading order.
+     */
+    public ClassList(final String version, final String fingerprint, final List<String> classNames) {
+        this.version = version;
+        this.fingerprint = fingerprint;
+        this.classNames = Collections.unmodifiableList(new ArrayList<>(classNames));
+    }
+
+    /**
+     * Gives the version of the application.
+     * @return the version of the application.
+     */
+    public String getVersion() {
+        return version;
+    }
+
+    /**
+     * Gives the fingerprint of the classpath of the application.
+     * @return the fingerprint of the classpath of the application.
+     */
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * Gives the full qualified names of the classes in loading order.
+     * @return the full qualified names of the classes.
+     */
+    public List<String> getClassNames() {
+        return classNames;
+    }
+
+    /**
+     * Stores the list into the specified file.
+     * @param target the file in which the list is stored.
+     * @throws IOException if the list could not be stored.
+     */
+    public void store(final File target) throws IOException {
+        try (BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(target),
+            StandardCharsets.UTF_8))) {
+            writer.write(ClassList.VERSION_PREFIX);
+            writer.write(version);
+            writer.newLine();
+            writer.write(ClassList.FINGERPRINT_PREFIX);
+            writer.write(fingerprint);
+            writer.newLine();
+            for (final String className : classNames) {
+                writer.write(className);
+                writer.newLine();
+            }
+        }
+    }
+
+    /**
+     * Loads the list from the specified file.
+     * @param source the file from which the list is loaded.
+     * @return the list that could be loaded, {@code null} if the file doesn't exist or is invalid.
+     * @throws IOException if the file could not be read.
+     */
+    public static ClassList load(final File source) throws IOException {
+        if (!source.isFile()) {
+            return null;
+        }
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(source),
+            StandardCharsets.UTF_8))) {
+            final String version = reader.readLine();
+            final String fingerprint = reader.readLine();
+            if (version == null || !version.startsWith(ClassList.VERSION_PREFIX)
+                || fingerprint == null || !fingerprint.startsWith(ClassList.FINGERPRINT_PREFIX)) {
+                return null;
+            }
+            final List<String> classNames = new ArrayList<>();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isEmpty()) {
+                    classNames.add(line);
+                }
+            }
+            return new ClassList(version.substring(ClassList.VERSION_PREFIX.length()),
+                fingerprint.substring(ClassList.FINGERPRINT_PREFIX.length()), classNames);
+        }
+    }
+
+    /**
+     * Computes the fingerprint of the specified classpath from the path, the size and the last modification
+     * date of each of its entries.
+     * @param classpath the classpath for which we want the fingerprint.
+     * @return the fingerprint of the classpath.
+     */
+    public static String fingerprint(final List<File> classpath) {
+        final CRC32 crc = new CRC32();
+        for (final File file : classpath) {
+            final String entry = String.format("%s;%d;%d%n", file.getAbsolutePath(), file.length(),
+                file.lastModified());
+            crc.update(entry.getBytes(StandardCharsets.UTF_8));
+        }
+        return Long.toHexString(crc.getValue());
+    }
+}
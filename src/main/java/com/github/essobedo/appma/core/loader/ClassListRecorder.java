@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2016 essobedo.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.github.essobedo.appma.core.loader;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link ClassLoadingListener} recording the ordered list of classes defined by a {@link GuestClassLoader}
+ * until it is stopped.
+ *
+ * @author Nicolas Filotto (nicolas.filotto@gmail.com)
+ * @version $Id$
+ * @since 1.1.3
+ */
+public final class ClassListRecorder implements ClassLoadingListener {
+
+    /**
+     * The full qualified names of the classes defined so far.
+     */
+    private final List<String> classNames = new ArrayList<>();
+
+    /**
+     * Indicates whether the recorder has been stopped.
+     */
+    private boolean stopped;
+
+    @Override
+    public void classDefined(final String className, final URL source, final int size, final long readTime,
+                             final long defineTime) {
+        synchronized (this) {
+            if (!stopped) {
+                classNames.add(className);
+            }
+        }
+    }
+
+    @Override
+    public void classLoaded(final String className, final long loadTime) {
+        // Only the order of definition is recorded
+    }
+
+    /**
+     * Stops the recording.
+     * @return the full qualified names of the classes that have been defined in the order of definition.
+     */
+    public List<String> stop() {
+        synchronized (this) {
+            this.stopped = true;
+            return new ArrayList<>(classNames);
+        }
+    }
+}
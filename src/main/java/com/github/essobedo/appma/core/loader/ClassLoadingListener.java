@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2016 essobedo.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.github.essobedo.appma.core.loader;
+
+import java.net.URL;
+
+/**
+ * Listener notified each time a class is loaded by a {@link GuestClassLoader}.
+ *
+ * @author Nicolas Filotto (nicolas.filotto@gmail.com)
+ * @version $Id$
+ * @since 1.1.3
+ */
+public interface ClassLoadingListener {
+
+    /**
+     * Called once a class has been defined by the classloader.
+     * @param className the full qualified name of the class.
+     * @param source the url of the classpath entry from which the class has been read.
+     * @param size the size in bytes of the class file.
+     * @param readTime the time in nanoseconds spent to read the class file.
+     * @param defineTime the time in nanoseconds spent to define the class.
+     */
+    void classDefined(String className, URL source, int size, long readTime, long defineTime);
+
+    /**
+     * Called once a class defined by the classloader has been loaded.
+     * @param className the full qualified name of the class.
+     * @param loadTime the time in nanoseconds spent to load the class including the time spent to
+     * load its super types.
+     */
+    void classLoaded(String className, long loadTime);
+
+    /**
+     * Called once a class defined by the classloader has been initialized right after being loaded. The
+     * default implementation does nothing.
+     * @param className the full qualified name of the class.
+     * @param initTime the time in nanoseconds spent in the static initializer of the class including the
+     * time spent to initialize its super classes and the classes that it uses.
+     */
+    default void classInitialized(final String className, final long initTime) {
+        // Nothing to do by default
+    }
+}
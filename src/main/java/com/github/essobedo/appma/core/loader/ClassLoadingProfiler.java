@@ -0,0 +1,236 @@
+/*
+ * Copyright (C) 2016 essobedo.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.github.essobedo.appma.core.loader;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>{@link ClassLoadingListener} collecting, for each class, the time spent to read, define, load and
+ * initialize it and, for each entry of the classpath, the amount of classes and bytes that have been read
+ * from it.
+ *
+ * <p>The time spent in the static initializer is only known for the classes initialized by the classloader
+ * right after being loaded, see {@link GuestClassLoader}, it includes the time spent to initialize the
+ * classes that it triggers.
+ *
+ * @author Nicolas Filotto (nicolas.filotto@gmail.com)
+ * @version $Id$
+ * @since 1.1.3
+ */
+public final class ClassLoadingProfiler implements ClassLoadingListener {
+
+    /**
+     * The amount of nanoseconds in a millisecond.
+     */
+    private static final double NANOS_PER_MILLI = 1_000_000.0d;
+
+    /**
+     * The data collected for each class.
+     */
+    private final ConcurrentMap<String, ClassData> classes = new ConcurrentHashMap<>();
+
+    /**
+     * The data collected for each entry of the classpath.
+     */
+    private final ConcurrentMap<String, SourceData> sources = new ConcurrentHashMap<>();
+
+    @Override
+    public void classDefined(final String className, final URL source, final int size, final long readTime,
+                             final long defineTime) {
+        final String sourceName = source.toString();
+        final ClassData data = classes.computeIfAbsent(className, ClassData::new);
+        data.source = sourceName;
+        data.size = size;
+        data.readTime = readTime;
+        data.defineTime = defineTime;
+        final SourceData sourceData = sources.computeIfAbsent(sourceName, SourceData::new);
+        sourceData.hits.incrementAndGet();
+        sourceData.bytes.addAndGet(size);
+    }
+
+    @Override
+    public void classLoaded(final String className, final long loadTime) {
+        classes.computeIfAbsent(className, ClassData::new).loadTime = loadTime;
+    }
+
+    @Override
+    public void classInitialized(final String className, final long initTime) {
+        classes.computeIfAbsent(className, ClassData::new).initTime = initTime;
+    }
+
+    /**
+     * Gives a human readable report of the slowest classes to load and of the entries of the classpath
+     * from which the most bytes have been read.
+     * @param limit the maximum amount of classes and entries to include into the report.
+     * @return the human readable report.
+     */
+    public String getReport(final int limit) {
+        final List<ClassData> sortedClasses = new ArrayList<>(classes.values());
+        sortedClasses.sort(Comparator.comparingLong((ClassData data) -> data.loadTime + data.initTime).reversed());
+        final List<SourceData> sortedSources = new ArrayList<>(sources.values());
+        sortedSources.sort(Comparator.comparingLong((SourceData data) -> data.bytes.get()).reversed());
+        final StringBuilder report = new StringBuilder(1024);
+        report.append(String.format(Locale.ROOT, "%d classes loaded from %d classpath entries%n", classes.size(),
+            sources.size()));
+        report.append(String.format(Locale.ROOT, "Slowest classes (load / read / define / init in ms):%n"));
+        for (final ClassData data : sortedClasses.subList(0, Math.min(limit, sortedClasses.size()))) {
+            report.append(String.format(Locale.ROOT, "  %10.3f %10.3f %10.3f %10.3f  %s%n", toMillis(data.loadTime),
+                toMillis(data.readTime), toMillis(data.defineTime), toMillis(data.initTime), data.name));
+        }
+        report.append(String.format(Locale.ROOT, "Classpath entries (classes / bytes):%n"));
+        for (final SourceData data : sortedSources.subList(0, Math.min(limit, sortedSources.size()))) {
+            report.append(String.format(Locale.ROOT, "  %10d %12d  %s%n", data.hits.get(), data.bytes.get(),
+                data.name));
+        }
+        return report.toString();
+    }
+
+    /**
+     * Writes all the collected data into the specified file using the CSV format. The file contains one line
+     * per class of type {@code class} and one line per entry of the classpath of type {@code source}, the
+     * times are expressed in nanoseconds. The names and the sources are quoted if needed.
+     * @param target the file in which the collected data is written.
+     * @throws IOException if the file could not be written.
+     */
+    public void writeReport(final File target) throws IOException {
+        try (PrintWriter writer = new PrintWriter(new OutputStreamWriter(new FileOutputStream(target),
+            StandardCharsets.UTF_8))) {
+            writer.println("type,name,source,size,read,define,load,init,hits");
+            for (final ClassData data : classes.values()) {
+                writer.printf(Locale.ROOT, "class,%s,%s,%d,%d,%d,%d,%d,1%n", escape(data.name), escape(data.source),
+                    data.size, data.readTime, data.defineTime, data.loadTime, data.initTime);
+            }
+            for (final SourceData data : sources.values()) {
+                writer.printf(Locale.ROOT, "source,%s,%s,%d,,,,,%d%n", escape(data.name), escape(data.name),
+                    data.bytes.get(), data.hits.get());
+            }
+        }
+    }
+
+    /**
+     * Escapes the specified value to write it as a CSV field, it is enclosed in double quotes if it contains
+     * a comma, a double quote or a line break, in which case each double quote is doubled.
+     * @param value the value to escape.
+     * @return the escaped value, an empty string if the value is {@code null}.
+     */
+    static String escape(final String value) {
+        if (value == null) {
+            return "";
+        }
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            if (c == ',' || c == '"' || c == '\n' || c == '\r') {
+                return String.format("\"%s\"", value.replace("\"", "\"\""));
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Converts the specified time from nanoseconds to milliseconds.
+     * @param nanos the time in nanoseconds.
+     * @return the time in milliseconds.
+     */
+    private static double toMillis(final long nanos) {
+        return nanos / NANOS_PER_MILLI;
+    }
+
+    /**
+     * The data collected for a given class.
+     */
+    private static final class ClassData {
+        /**
+         * The full qualified name of the class.
+         */
+        private final String name;
+        /**
+         * The classpath entry from which the class has been read.
+         */
+        private volatile String source;
+        /**
+         * The size in bytes of the class file.
+         */
+        private volatile int size;
+        /**
+         * The time in nanoseconds spent to read the class file.
+         */
+        private volatile long readTime;
+        /**
+         * The time in nanoseconds spent to define the class.
+         */
+        private volatile long defineTime;
+        /**
+         * The time in nanoseconds spent to load the class.
+         */
+        private volatile long loadTime;
+        /**
+         * The time in nanoseconds spent to initialize the class, {@code 0} if it has not been initialized
+         * right after being loaded.
+         */
+        private volatile long initTime;
+
+        /**
+         * Constructs a {@code ClassData} for the specified class.
+         * @param name the full qualified name of the class.
+         */
+        ClassData(final String name) {
+            this.name = name;
+        }
+    }
+
+    /**
+     * The data collected for a given entry of the classpath.
+     */
+    private static final class SourceData {
+        /**
+         * The url of the classpath entry.
+         */
+        private final String name;
+        /**
+         * The amount of classes read from the classpath entry.
+         */
+        private final AtomicInteger hits = new AtomicInteger();
+        /**
+         * The amount of bytes read from the classpath entry.
+         */
+        private final AtomicLong bytes = new AtomicLong();
+
+        /**
+         * Constructs a {@code SourceData} for the specified classpath entry.
+         * @param name the url of the classpath entry.
+         */
+        SourceData(final String name) {
+            this.name = name;
+        }
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2016 essobedo.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.github.essobedo.appma.core.loader;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * <p>Class allowing to load in parallel a list of classes in background.
+ *
+ * <p>The classes are only loaded, they are not initialized in order to keep the initialization order
+ * of the application unchanged. The classes that cannot be loaded are simply ignored.
+ *
+ * @author Nicolas Filotto (nicolas.filotto@gmail.com)
+ * @version $Id$
+ * @since 1.1.3
+ */
+public final class ClassPreloader {
+
+    /**
+     * The logger of the class.
+     */
+    private static final Logger LOG = Logger.getLogger(ClassPreloader.class.getName());
+
+    /**
+     * The classloader to use to load the classes.
+     */
+    private final ClassLoader classLoader;
+
+    /**
+     * The full qualified names of the classes to load.
+     */
+    private final List<String> classNames;
+
+    /**
+     * The amount of classes that have been loaded.
+     */
+    private final AtomicInteger loaded = new AtomicInteger();
+
+    /**
+     * The executor used to load the classes.
+     */
+    private ExecutorService executor;
+
+    /**
+     * Constructs a {@code ClassPreloader} with the specified classloader and classes to load.
+     * @param classLoader the classloader to use to load the classes.
+     * @param classNames the full qualified names of the classes to load.
+     */
+    public ClassPreloader(final ClassLoader classLoader, final List<String> classNames) {
+        this.classLoader = classLoader;
+        this.classNames = classNames;
+    }
+
+    /**
+     * Starts loading the classes using all the available processors but one. The classes are
+     * split into as many slices as threads, each slice being loaded in order.
+     */
+    public void start() {
+        final int threads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+        final AtomicInteger counter = new AtomicInteger();
+        final ExecutorService executor = Executors.newFixedThreadPool(threads, runnable -> {
+            final Thread thread = new Thread(runnable,
+                String.format("appma-preloader-%d", counter.incrementAndGet()));
+            thread.setDaemon(true);
+            return thread;
+        });
+        synchronized (this) {
+            this.executor = executor;
+        }
+        final long start = System.currentTimeMillis();
+        final AtomicInteger remaining = new AtomicInteger(threads);
+        for (int i = 0; i < threads; i++) {
+            final int slice = i;
+            executor.execute(() -> {
+                for (int j = slice; j < classNames.size() && !Thread.currentThread().isInterrupted(); j += threads) {
+                    load(classNames.get(j));
+                }
+                if (remaining.decrementAndGet() == 0 && LOG.isLoggable(Level.INFO)) {
+                    LOG.log(Level.INFO, String.format("%d/%d classes have been preloaded in %d ms", loaded.get(),
+                        classNames.size(), System.currentTimeMillis() - start));
+                }
+            });
+        }
+        executor.shutdown();
+    }
+
+    /**
+     * Loads the specified class.
+     * @param className the full qualified name of the class to load.
+     */
+    private void load(final String className) {
+        try {
+            if (classLoader instanceof GuestClassLoader) {
+                ((GuestClassLoader) classLoader).loadUninitialized(className);
+            } else {
+                Class.forName(className, false, classLoader);
+            }
+            loaded.incrementAndGet();
+        } catch (ClassNotFoundException | LinkageError e) {
+            if (LOG.isLoggable(Level.FINE)) {
+                LOG.log(Level.FINE, String.format("The class '%s' could not be preloaded", className), e);
+            }
+        }
+    }
+
+    /**
+     * Stops loading the classes.
+     */
+    public void stop() {
+        final ExecutorService executor;
+        synchronized (this) {
+            executor = this.executor;
+        }
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Waits until all the classes have been loaded or the timeout elapses.
+     * @param timeout the maximum time to wait.
+     * @param unit the unit of the timeout.
+     * @return {@code true} if all the classes have been loaded, {@code false} otherwise.
+     * @throws InterruptedException if the current thread has been interrupted while waiting.
+     */
+    public boolean await(final long timeout, final TimeUnit unit) throws InterruptedException {
+        final ExecutorService executor;
+        synchronized (this) {
+            executor = this.executor;
+        }
+        return executor == null || executor.awaitTermination(timeout, unit);
+    }
+}
@@ -0,0 +1,254 @@
+/*
+ * Copyright (C) 2016 essobedo.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.github.essobedo.appma.core.loader;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.JarURLConnection;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.net.URLConnection;
+import java.security.CodeSigner;
+import java.security.CodeSource;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.jar.Manifest;
+
+/**
+ * <p>The {@link ClassLoader} used to load the classes of the guest application.
+ *
+ * <p>If no {@link ClassLoadingListener} has been provided, it behaves exactly like an {@link URLClassLoader}
+ * otherwise it reads and defines the classes by itself in order to be able to notify the listeners about
+ * the time spent to load each class.
+ *
+ * <p>As the JVM initializes a class on first use without involving the classloader, the classes that are
+ * directly loaded are also initialized right after being loaded when listeners have been provided, in order
+ * to notify them about the time spent in the static initializers. The classes loaded while defining another
+ * class or while being preloaded are left uninitialized.
+ *
+ * @author Nicolas Filotto (nicolas.filotto@gmail.com)
+ * @version $Id$
+ * @since 1.1.3
+ */
+public class GuestClassLoader extends URLClassLoader {
+
+    static {
+        ClassLoader.registerAsParallelCapable();
+    }
+
+    /**
+     * The suffix of the class files.
+     */
+    private static final String CLASS_SUFFIX = ".class";
+
+    /**
+     * The listeners to notify.
+     */
+    private final ClassLoadingListener[] listeners;
+
+    /**
+     * The names of the packages that have been defined by this classloader.
+     */
+    private final Set<String> packages = ConcurrentHashMap.newKeySet();
+
+    /**
+     * The amount of nested calls that must not initialize the loaded classes for the current thread.
+     */
+    private final ThreadLocal<int[]> depth = ThreadLocal.withInitial(() -> new int[1]);
+
+    /**
+     * Constructs a {@code GuestClassLoader} with the specified urls, parent classloader and listeners.
+     * @param urls the urls from which the classes and resources are loaded.
+     * @param parent the parent classloader.
+     * @param listeners the listeners to notify each time a class is loaded.
+     */
+    public GuestClassLoader(final URL[] urls, final ClassLoader parent, final ClassLoadingListener... listeners) {
+        super(urls, parent);
+        this.listeners = listeners.clone();
+    }
+
+    @Override
+    protected Class<?> loadClass(final String name, final boolean resolve) throws ClassNotFoundException {
+        if (listeners.length == 0 || findLoadedClass(name) != null) {
+            return super.loadClass(name, resolve);
+        }
+        final int[] calls = depth.get();
+        final long start = System.nanoTime();
+        final Class<?> clazz;
+        calls[0]++;
+        try {
+            clazz = super.loadClass(name, resolve);
+        } finally {
+            calls[0]--;
+        }
+        if (clazz.getClassLoader() == this) {
+            final long loadTime = System.nanoTime() - start;
+            for (final ClassLoadingListener listener : listeners) {
+                listener.classLoaded(name, loadTime);
+            }
+            if (calls[0] == 0) {
+                initialize(clazz);
+            }
+        }
+        return clazz;
+    }
+
+    /**
+     * Loads the specified class without initializing it even if listeners have been provided.
+     * @param name the full qualified name of the class to load.
+     * @return the loaded class.
+     * @throws ClassNotFoundException if the class could not be found.
+     */
+    Class<?> loadUninitialized(final String name) throws ClassNotFoundException {
+        final int[] calls = depth.get();
+        calls[0]++;
+        try {
+            return Class.forName(name, false, this);
+        } finally {
+            calls[0]--;
+        }
+    }
+
+    /**
+     * Initializes the specified class and notifies the listeners about the time spent in its static
+     * initializer including the time spent to initialize its super classes and the classes that it uses.
+     * @param clazz the class to initialize.
+     * @throws ClassNotFoundException if the class could not be initialized.
+     */
+    private void initialize(final Class<?> clazz) throws ClassNotFoundException {
+        final long start = System.nanoTime();
+        Class.forName(clazz.getName(), true, this);
+        final long initTime = System.nanoTime() - start;
+        for (final ClassLoadingListener listener : listeners) {
+            listener.classInitialized(clazz.getName(), initTime);
+        }
+    }
+
+    @Override
+    protected Class<?> findClass(final String name) throws ClassNotFoundException {
+        if (listeners.length == 0) {
+            return super.findClass(name);
+        }
+        final long start = System.nanoTime();
+        final URL url = findResource(name.replace('.', '/').concat(CLASS_SUFFIX));
+        if (url == null) {
+            throw new ClassNotFoundException(name);
+        }
+        final byte[] content;
+        final CodeSigner[] signers;
+        try {
+            final URLConnection connection = url.openConnection();
+            try (InputStream input = connection.getInputStream()) {
+                content = GuestClassLoader.read(input);
+            }
+            // The signers of an entry are only known once it has been fully read
+            signers = connection instanceof JarURLConnection
+                ? ((JarURLConnection) connection).getJarEntry().getCodeSigners() : null;
+        } catch (IOException e) {
+            throw new ClassNotFoundException(name, e);
+        }
+        final long read = System.nanoTime();
+        final URL source = getSource(url);
+        definePackage(name, source);
+        final Class<?> clazz = defineClass(name, content, 0, content.length, new CodeSource(source, signers));
+        final long defineTime = System.nanoTime() - read;
+        for (final ClassLoadingListener listener : listeners) {
+            listener.classDefined(name, source, content.length, read - start, defineTime);
+        }
+        return clazz;
+    }
+
+    /**
+     * Defines the package of the specified class if it has not been defined yet using the manifest
+     * of the classpath entry if any.
+     * @param className the full qualified name of the class.
+     * @param source the url of the classpath entry from which the class has been read.
+     */
+    private void definePackage(final String className, final URL source) {
+        final int index = className.lastIndexOf('.');
+        if (index > 0) {
+            final String packageName = className.substring(0, index);
+            if (packages.add(packageName)) {
+                final Manifest manifest = GuestClassLoader.getManifest(source);
+                try {
+                    if (manifest == null) {
+                        definePackage(packageName, null, null, null, null, null, null, null);
+                    } else {
+                        definePackage(packageName, manifest, source);
+                    }
+                } catch (IllegalArgumentException e) {
+                    // The package has been defined concurrently
+                }
+            }
+        }
+    }
+
+    /**
+     * Gives the manifest of the specified classpath entry.
+     * @param source the url of the classpath entry.
+     * @return the manifest of the classpath entry, {@code null} if it is a folder or if it has no manifest.
+     */
+    private static Manifest getManifest(final URL source) {
+        if (source.getPath().endsWith("/")) {
+            return null;
+        }
+        try {
+            final URLConnection connection = new URL(String.format("jar:%s!/", source)).openConnection();
+            if (connection instanceof JarURLConnection) {
+                return ((JarURLConnection) connection).getManifest();
+            }
+        } catch (IOException e) {
+            // Ignore me as the package will be defined without the manifest
+        }
+        return null;
+    }
+
+    /**
+     * Gives the url of the classpath entry that contains the specified resource.
+     * @param resource the url of the resource.
+     * @return the url of the classpath entry that contains the resource.
+     */
+    private URL getSource(final URL resource) {
+        final String value = resource.toString();
+        for (final URL url : getURLs()) {
+            final String entry = url.toString();
+            if (value.startsWith(entry) || value.startsWith(String.format("jar:%s!/", entry))) {
+                return url;
+            }
+        }
+        return resource;
+    }
+
+    /**
+     * Reads the whole content of the specified stream.
+     * @param input the stream to read.
+     * @return the content of the stream.
+     * @throws IOException if the stream could not be read.
+     */
+    private static byte[] read(final InputStream input) throws IOException {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream(4096);
+        final byte[] buffer = new byte[4096];
+        int read;
+        while ((read = input.read(buffer)) != -1) {
+            output.write(buffer, 0, read);
+        }
+        return output.toByteArray();
+    }
+}
@@ -0,0 +1,294 @@
+/*
+ * Copyright (C) 2016 essobedo.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.github.essobedo.appma.core.util;
+
+import com.github.essobedo.appma.exception.ApplicationException;
+import com.github.essobedo.appma.exception.InvalidPatchException;
+import com.github.essobedo.appma.exception.UpgradeAbortedException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.net.URLConnection;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * <p>Class allowing to check that all the classes of a given classpath can be loaded and linked
+ * without having to initialize them.
+ *
+ * <p>The classes are loaded in parallel by an isolated {@link URLClassLoader} that is closed once
+ * the verification is over. Each class is linked by accessing to its declared members, which triggers
+ * the bytecode verification and resolves the types used in its signatures, so that a missing
+ * dependency or an invalid class is detected without executing any static initializer.
+ *
+ * <p>The isolated classloader never uses the shared cache of jar files, so that the jar files of the
+ * running version of the application, used to resolve the dependencies, are left untouched.
+ *
+ * @author Nicolas Filotto (nicolas.filotto@gmail.com)
+ * @version $Id$
+ * @since 1.1.3
+ */
+public final class ClassVerifier {
+
+    /**
+     * The logger of the class.
+     */
+    private static final Logger LOG = Logger.getLogger(ClassVerifier.class.getName());
+
+    /**
+     * The suffix of the class files.
+     */
+    private static final String CLASS_SUFFIX = ".class";
+
+    /**
+     * The parent classloader of the isolated classloader.
+     */
+    private final ClassLoader parent;
+
+    /**
+     * The urls of the resources whose classes must be verified.
+     */
+    private final URL[] urls;
+
+    /**
+     * The urls of the resources that can only be used to resolve the dependencies.
+     */
+    private final URL[] dependencies;
+
+    /**
+     * Constructs a {@code ClassVerifier} with the specified parent classloader and urls.
+     * @param parent the parent classloader of the isolated classloader.
+     * @param urls the urls of the resources whose classes must be verified.
+     * @param dependencies the urls of the resources that can be used to resolve the dependencies of the
+     * classes to verify but whose classes don't need to be verified.
+     */
+    public ClassVerifier(final ClassLoader parent, final URL[] urls, final URL... dependencies) {
+        this.parent = parent;
+        this.urls = urls.clone();
+        this.dependencies = dependencies.clone();
+    }
+
+    /**
+     * Loads and links all the classes that could be found in the resources to verify using as many threads
+     * as available processors.
+     * @return the description of all the errors that occurred, an empty list if all the classes could be
+     * linked successfully.
+     * @throws InvalidPatchException if the classes to verify could not be listed.
+     * @throws UpgradeAbortedException if the verification could not be completed or has been interrupted.
+     */
+    public List<String> verify() throws ApplicationException {
+        final List<String> classNames = getClassNames();
+        if (LOG.isLoggable(Level.INFO)) {
+            LOG.log(Level.INFO, String.format("Verifying %d classes", classNames.size()));
+        }
+        final URL[] allUrls = Stream.concat(Stream.of(urls), Stream.of(dependencies)).toArray(URL[]::new);
+        final Queue<String> errors = new ConcurrentLinkedQueue<>();
+        final ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        try (URLClassLoader classLoader = new IsolatedClassLoader(allUrls, parent)) {
+            final List<Callable<Void>> tasks = new ArrayList<>(classNames.size());
+            for (final String className : classNames) {
+                tasks.add(() -> {
+                    link(className, classLoader, errors);
+                    return null;
+                });
+            }
+            for (final Future<Void> future : executor.invokeAll(tasks)) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new UpgradeAbortedException("The verification of the classes has been interrupted", e);
+        } catch (ExecutionException | IOException e) {
+            throw new UpgradeAbortedException("Could not verify the classes", e);
+        } finally {
+            executor.shutdownNow();
+        }
+        if (!errors.isEmpty() && LOG.isLoggable(Level.SEVERE)) {
+            for (final String error : errors) {
+                LOG.log(Level.SEVERE, error);
+            }
+        }
+        return Collections.unmodifiableList(new ArrayList<>(errors));
+    }
+
+    /**
+     * Loads and links the specified class.
+     * @param className the full qualified name of the class to link.
+     * @param classLoader the classloader to use to load the class.
+     * @param errors the queue in which the description of the error is added if the class could not
+     * be linked.
+     */
+    private static void link(final String className, final ClassLoader classLoader, final Queue<String> errors) {
+        try {
+            final Class<?> clazz = Class.forName(className, false, classLoader);
+            clazz.getDeclaredFields();
+            clazz.getDeclaredMethods();
+            clazz.getDeclaredConstructors();
+        } catch (ClassNotFoundException | LinkageError | TypeNotPresentException e) {
+            errors.add(String.format("The class '%s' could not be linked: %s", className, e));
+        }
+    }
+
+    /**
+     * Gives the full qualified names of all the classes that could be found in the resources to verify.
+     * @return the names of all the classes to verify.
+     * @throws InvalidPatchException if the content of a resource could not be listed.
+     */
+    private List<String> getClassNames() throws InvalidPatchException {
+        final List<String> classNames = new ArrayList<>();
+        for (final URL url : urls) {
+            final File file;
+            try {
+                file = new File(url.toURI());
+            } catch (URISyntaxException | IllegalArgumentException e) {
+                throw new InvalidPatchException(String.format("Could not manage the url '%s'", url), e);
+            }
+            try {
+                classNames.addAll(getClassNames(file));
+            } catch (IOException e) {
+                throw new InvalidPatchException(String.format("Could not list the classes of '%s'",
+                    file.getAbsolutePath()), e);
+            }
+        }
+        return classNames;
+    }
+
+    /**
+     * Gives the full qualified names of all the classes that could be found in the specified classpath entry.
+     * @param file the folder or the jar file to scan.
+     * @return the names of all the classes that could be found.
+     * @throws IOException if the content of the classpath entry could not be listed.
+     */
+    static List<String> getClassNames(final File file) throws IOException {
+        if (file.isDirectory()) {
+            return getClassNamesFromFolder(file.toPath());
+        }
+        return getClassNamesFromJar(file);
+    }
+
+    /**
+     * Gives the full qualified names of all the classes that could be found in the specified folder.
+     * @param folder the folder from which the packages start.
+     * @return the names of all the classes that could be found.
+     * @throws IOException if the content of the folder could not be listed.
+     */
+    private static List<String> getClassNamesFromFolder(final Path folder) throws IOException {
+        try (Stream<Path> paths = Files.walk(folder)) {
+            return paths.filter(path -> Files.isRegularFile(path))
+                .map(path -> folder.relativize(path).toString().replace(File.separatorChar, '/'))
+                .filter(ClassVerifier::isClass)
+                .map(ClassVerifier::toClassName)
+                .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Gives the full qualified names of all the classes that could be found in the specified jar file.
+     * @param file the jar file.
+     * @return the names of all the classes that could be found.
+     * @throws IOException if the content of the jar file could not be listed.
+     */
+    private static List<String> getClassNamesFromJar(final File file) throws IOException {
+        final List<String> classNames = new ArrayList<>();
+        try (JarFile jarFile = new JarFile(file)) {
+            final Enumeration<JarEntry> entries = jarFile.entries();
+            while (entries.hasMoreElements()) {
+                final JarEntry entry = entries.nextElement();
+                if (!entry.isDirectory() && isClass(entry.getName())) {
+                    classNames.add(toClassName(entry.getName()));
+                }
+            }
+        }
+        return classNames;
+    }
+
+    /**
+     * Indicates whether the specified resource is a class that can be verified.
+     * @param resource the name of the resource to check.
+     * @return {@code true} if the resource is a class file, {@code false} otherwise.
+     */
+    private static boolean isClass(final String resource) {
+        return resource.endsWith(CLASS_SUFFIX) && !resource.startsWith("META-INF/")
+            && !resource.endsWith("module-info.class") && !resource.endsWith("package-info.class");
+    }
+
+    /**
+     * Converts the name of a class file into a full qualified name of class.
+     * @param resource the name of the class file to convert.
+     * @return the corresponding full qualified name of class.
+     */
+    private static String toClassName(final String resource) {
+        return resource.substring(0, resource.length() - CLASS_SUFFIX.length()).replace('/', '.');
+    }
+
+    /**
+     * The isolated classloader used to verify the classes, which reads its resources without using the
+     * shared cache of jar files.
+     */
+    private static final class IsolatedClassLoader extends URLClassLoader {
+
+        static {
+            ClassLoader.registerAsParallelCapable();
+        }
+
+        /**
+         * Constructs an {@code IsolatedClassLoader} with the specified urls and parent classloader.
+         * @param urls the urls from which the classes and resources are loaded.
+         * @param parent the parent classloader.
+         */
+        IsolatedClassLoader(final URL[] urls, final ClassLoader parent) {
+            super(urls, parent);
+        }
+
+        @Override
+        public InputStream getResourceAsStream(final String name) {
+            final URL url = getResource(name);
+            if (url == null) {
+                return null;
+            }
+            try {
+                final URLConnection connection = url.openConnection();
+                connection.setUseCaches(false);
+                return connection.getInputStream();
+            } catch (IOException e) {
+                return null;
+            }
+        }
+    }
+}
@@ -0,0 +1,299 @@
+/*
+ * Copyright (C) 2016 essobedo.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.github.essobedo.appma.core.util;
+
+import com.github.essobedo.appma.exception.ApplicationException;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+/**
+ * <p>Class allowing to generate in background an application class data sharing archive (AppCDS) of a
+ * given classpath and to know whether it is up to date.
+ *
+ * <p>The archive is generated by a separate JVM launched with {@code -Xshare:dump} from the default class
+ * list of the JDK and all the classes of the classpath. A stamp file is written next to the archive once it
+ * has been successfully generated in order to be able to detect when it needs to be generated again.
+ *
+ * <p>A JVM can only use an archive if it has been launched with the option
+ * {@code -XX:SharedArchiveFile=<path of the archive>} and with a classpath starting with the classpath
+ * of the archive. Only the classes loaded by the system classloader can be shared, the classes loaded
+ * by a custom classloader are not part of the archive.
+ *
+ * @author Nicolas Filotto (nicolas.filotto@gmail.com)
+ * @version $Id$
+ * @since 1.1.3
+ */
+public final class SharedArchive {
+
+    /**
+     * The logger of the class.
+     */
+    private static final Logger LOG = Logger.getLogger(SharedArchive.class.getName());
+
+    /**
+     * The name of the JVM option allowing to define the archive to use.
+     */
+    private static final String OPTION_ARCHIVE = "-XX:SharedArchiveFile=";
+
+    /**
+     * The first version of Java in which the application class data sharing is available in OpenJDK.
+     */
+    private static final int MIN_JAVA_VERSION = 10;
+
+    /**
+     * The archive to generate.
+     */
+    private final File archive;
+
+    /**
+     * The file containing the stamp of the archive.
+     */
+    private final File stampFile;
+
+    /**
+     * Constructs a {@code SharedArchive} with the specified archive file.
+     * @param archive the archive file.
+     */
+    public SharedArchive(final File archive) {
+        this.archive = archive;
+        this.stampFile = new File(archive.getPath() + ".stamp");
+    }
+
+    /**
+     * Gives the archive file.
+     * @return the archive file.
+     */
+    public File getArchive() {
+        return archive;
+    }
+
+    /**
+     * Indicates whether the archive exists and has been generated with the specified stamp.
+     * @param stamp the expected stamp of the archive.
+     * @return {@code true} if the archive is up to date, {@code false} otherwise.
+     */
+    public boolean isUpToDate(final String stamp) {
+        if (!archive.isFile() || !stampFile.isFile()) {
+            return false;
+        }
+        try {
+            return stamp.equals(new String(Files.readAllBytes(stampFile.toPath()), StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            if (LOG.isLoggable(Level.FINE)) {
+                LOG.log(Level.FINE, String.format("Could not read the file '%s'", stampFile.getAbsolutePath()), e);
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Indicates whether the current JVM has been launched with the archive.
+     * @return {@code true} if the archive is used by the current JVM, {@code false} otherwise.
+     */
+    public boolean isInUse() {
+        for (final String argument : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+            if (argument.startsWith(SharedArchive.OPTION_ARCHIVE)
+                && new File(argument.substring(SharedArchive.OPTION_ARCHIVE.length())).getAbsoluteFile()
+                .equals(archive.getAbsoluteFile())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Indicates whether the current JVM is able to generate an archive.
+     * @return {@code true} if an archive can be generated, {@code false} otherwise.
+     */
+    public static boolean isSupported() {
+        return getJavaVersion() >= SharedArchive.MIN_JAVA_VERSION;
+    }
+
+    /**
+     * Gives the major version of the current JVM.
+     * @return the major version of the current JVM.
+     */
+    private static int getJavaVersion() {
+        final String version = System.getProperty("java.specification.version");
+        if (version.startsWith("1.")) {
+            return Integer.parseInt(version.substring(2));
+        }
+        return Integer.parseInt(version);
+    }
+
+    /**
+     * Launches the generation of the archive of the specified classpath in background. The archive is
+     * generated into a temporary file that replaces the archive only once the generation succeeded. An
+     * error that occurs during the generation is logged and thrown by the {@link Future} object.
+     * @param classpath the classpath of the archive, all the entries must be jar files.
+     * @param stamp the stamp of the archive to generate.
+     * @return the {@link Future} object allowing to know whether the archive could be generated.
+     * @throws ApplicationException if the generation could not be launched.
+     */
+    public Future<Boolean> generate(final List<File> classpath, final String stamp) throws ApplicationException {
+        if (!isSupported()) {
+            throw new ApplicationException(String.format(
+                "The application class data sharing is not supported by the Java version %s",
+                System.getProperty("java.specification.version")));
+        }
+        for (final File file : classpath) {
+            if (!file.isFile()) {
+                throw new ApplicationException(String.format(
+                    "The classpath of an archive can only contain jar files but '%s' is not a file",
+                    file.getAbsolutePath()));
+            }
+        }
+        final File classList = new File(archive.getPath() + ".classlist");
+        try {
+            Files.write(classList.toPath(), getClassList(classpath), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new ApplicationException(String.format("Could not write the class list '%s'",
+                classList.getAbsolutePath()), e);
+        }
+        final FutureTask<Boolean> task = new FutureTask<Boolean>(() -> dump(classpath, classList, stamp)) {
+            @Override
+            protected void done() {
+                try {
+                    get();
+                } catch (ExecutionException e) {
+                    if (LOG.isLoggable(Level.WARNING)) {
+                        LOG.log(Level.WARNING, String.format("The archive '%s' could not be generated",
+                            archive.getAbsolutePath()), e.getCause());
+                    }
+                } catch (InterruptedException | CancellationException e) {
+                    // The generation has not been completed
+                }
+            }
+        };
+        final Thread thread = new Thread(task, "appma-cds");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+        return task;
+    }
+
+    /**
+     * Gives the list of classes to archive which is composed of the default class list of the JDK if any
+     * and of all the classes of the specified classpath.
+     * @param classpath the classpath of the archive.
+     * @return the names of the classes to archive in the internal form.
+     * @throws IOException if the classes could not be listed.
+     */
+    private static List<String> getClassList(final List<File> classpath) throws IOException {
+        final List<String> classNames = new ArrayList<>();
+        final File defaultClassList = new File(new File(System.getProperty("java.home"), "lib"), "classlist");
+        if (defaultClassList.isFile()) {
+            classNames.addAll(Files.readAllLines(defaultClassList.toPath(), StandardCharsets.UTF_8));
+        }
+        for (final File file : classpath) {
+            classNames.addAll(ClassVerifier.getClassNames(file).stream()
+                .map(name -> name.replace('.', '/'))
+                .collect(Collectors.toList()));
+        }
+        return classNames;
+    }
+
+    /**
+     * Generates the archive and waits until the generation is over.
+     * @param classpath the classpath of the archive.
+     * @param classList the file containing the list of classes to archive.
+     * @param stamp the stamp of the archive to generate.
+     * @return {@code true} if the archive could be generated, {@code false} otherwise.
+     * @throws ApplicationException if the archive could not be generated.
+     * @throws InterruptedException if the current thread has been interrupted while waiting.
+     */
+    private boolean dump(final List<File> classpath, final File classList, final String stamp)
+        throws ApplicationException, InterruptedException {
+        final File tmpArchive = new File(archive.getPath() + ".tmp");
+        final List<String> command = new ArrayList<>();
+        command.add(new File(new File(System.getProperty("java.home"), "bin"), "java").getAbsolutePath());
+        command.add("-Xshare:dump");
+        if (getJavaVersion() == SharedArchive.MIN_JAVA_VERSION) {
+            command.add("-XX:+UseAppCDS");
+        }
+        command.add("-XX:SharedClassListFile=" + classList.getAbsolutePath());
+        command.add(SharedArchive.OPTION_ARCHIVE + tmpArchive.getAbsolutePath());
+        command.add("-cp");
+        command.add(classpath.stream().map(File::getAbsolutePath).collect(Collectors.joining(File.pathSeparator)));
+        if (LOG.isLoggable(Level.INFO)) {
+            LOG.log(Level.INFO, String.format("Generating the archive '%s'", archive.getAbsolutePath()));
+        }
+        final long start = System.currentTimeMillis();
+        try {
+            final Process process = new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .redirectOutput(new File(archive.getPath() + ".log"))
+                .start();
+            final int exitValue = process.waitFor();
+            if (exitValue != 0 || !tmpArchive.isFile()) {
+                if (LOG.isLoggable(Level.WARNING)) {
+                    LOG.log(Level.WARNING, String.format("The archive '%s' could not be generated (exit value %d)",
+                        archive.getAbsolutePath(), exitValue));
+                }
+                Files.deleteIfExists(tmpArchive.toPath());
+                return false;
+            }
+            Files.deleteIfExists(stampFile.toPath());
+            move(tmpArchive, archive);
+            Files.write(stampFile.toPath(), stamp.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new ApplicationException(String.format("Could not generate the archive '%s'",
+                archive.getAbsolutePath()), e);
+        } finally {
+            if (!classList.delete() && LOG.isLoggable(Level.WARNING)) {
+                LOG.log(Level.WARNING, String.format("The file '%s' could not be deleted",
+                    classList.getAbsolutePath()));
+            }
+        }
+        if (LOG.isLoggable(Level.INFO)) {
+            LOG.log(Level.INFO, String.format("The archive '%s' has been generated in %d ms",
+                archive.getAbsolutePath(), System.currentTimeMillis() - start));
+        }
+        return true;
+    }
+
+    /**
+     * Moves atomically if possible the source file to the target file.
+     * @param source the file to move.
+     * @param target the file to replace.
+     * @throws IOException if the file could not be moved.
+     */
+    private static void move(final File source, final File target) throws IOException {
+        try {
+            Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
@@ -41,6 +41,10 @@ public final class UnzipTask extends Task<Void> {
      * The destination folder.
      */
     private final File destFolder;
+    /**
+     * Indicates whether the extracted content must be forced to the storage device.
+     */
+    private final boolean durable;
 
     /**
      * Constructs a {@code UnzipTask} with the specified zip file and destination folder.
@@ -48,9 +52,21 @@ public final class UnzipTask extends Task<Void> {
      * @param destFolder the destination folder.
      */
     public UnzipTask(final File zipFile, final File destFolder) {
+        this(zipFile, destFolder, false);
+    }
+
+    /**
+     * Constructs a {@code UnzipTask} with the specified zip file and destination folder.
+     * @param zipFile the zip file to unzip.
+     * @param destFolder the destination folder.
+     * @param durable {@code true} to force the extracted content to the storage device, {@code false} otherwise.
+     * @since 1.1.3
+     */
+    public UnzipTask(final File zipFile, final File destFolder, final boolean durable) {
         super(Localization.getMessage("patch.unzip"));
         this.zipFile = zipFile;
         this.destFolder = destFolder;
+        this.durable = durable;
     }
 
     @Override
@@ -63,7 +79,7 @@ public final class UnzipTask extends Task<Void> {
         try {
             updateMessage(Localization.getMessage("patch.unzipping"));
             final ZipFile file = new ZipFile(zipFile);
-            file.unzip(destFolder);
+            file.unzip(destFolder, durable);
         } catch (IOException e) {
             throw new ApplicationException("Could not unzip the patch", e);
         }
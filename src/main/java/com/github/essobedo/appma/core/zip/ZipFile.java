@@ -18,11 +18,14 @@
  */
 package com.github.essobedo.appma.core.zip;
 
+import com.github.essobedo.appma.core.io.ContentStore;
+import com.github.essobedo.appma.core.io.Folder;
 import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 
@@ -55,10 +58,25 @@ public final class ZipFile {
      * @throws IOException In case the file could not be unzipped.
      */
     public void unzip(final File destDir) throws IOException {
+        unzip(destDir, false);
+    }
+
+    /**
+     * Extracts the content of the zip file into the specified folder. The folder will be
+     * created automatically if it does not exist. In durable mode, none of the files is synchronized while
+     * being extracted, the whole content is then forced to the storage device in one pass once extracted. If the store shared by all the installations has
+     * been defined, the extracted jar files are added to the store.
+     * @param destDir the destination folder.
+     * @param durable {@code true} to force the extracted content to the storage device, {@code false} otherwise.
+     * @throws IOException In case the file could not be unzipped.
+     * @since 1.1.3
+     */
+    public void unzip(final File destDir, final boolean durable) throws IOException {
         if (!destDir.exists() && !destDir.mkdir()) {
             throw new IOException(String.format("Could not create the destination directory '%s'",
                 destDir.getAbsolutePath()));
         }
+        final ContentStore store = ContentStore.getShared();
         try (final ZipInputStream zipIn = new ZipInputStream(new FileInputStream(this.file))) {
             ZipEntry entry = zipIn.getNextEntry();
             // iterates over entries in the zip file
@@ -74,10 +92,17 @@ public final class ZipFile {
                     // if the entry is a file, extracts it
                     ZipFile.extractFile(zipIn, file);
                 }
+                if (store != null && !entry.isDirectory()) {
+                    // if the content is already stored, the extracted file is replaced with a link to it
+                    store.add(file.toPath());
+                }
                 zipIn.closeEntry();
                 entry = zipIn.getNextEntry();
             }
         }
+        if (durable) {
+            new Folder(destDir).force();
+        }
     }
 
     /**
@@ -87,6 +112,8 @@ public final class ZipFile {
      * @throws IOException In case the zip entry could not be extracted.
      */
     private static void extractFile(final ZipInputStream zipIn, final File file) throws IOException {
+        // An existing file may be a hard link shared with other installations, it is replaced
+        Files.deleteIfExists(file.toPath());
         final byte[] bytesIn = new byte[1024];
         try (final BufferedOutputStream bos = new BufferedOutputStream(new FileOutputStream(file))) {
             int read;
@@ -88,4 +88,69 @@ public interface Manageable {
      * @throws ApplicationException if the application could not be destroyed.
      */
     void destroy() throws ApplicationException;
+
+    /**
+     * Indicates whether a new version of the application can be created and initialized while the
+     * current version is still running, in which case the application manager can upgrade the application
+     * with almost no downtime if this mode has been enabled. The default implementation returns {@code false}.
+     * @return {@code true} if two versions of the application can run concurrently, {@code false} otherwise.
+     * @since 1.1.3
+     */
+    default boolean supportsConcurrentInstances() {
+        return false;
+    }
+
+    /**
+     * Asks the application to stop accepting new work and to complete the work in progress before the
+     * specified deadline. It is called before destroying the application, the application manager only
+     * waits for it a short grace period after the deadline. The default implementation has nothing to complete.
+     * @param deadline the time in milliseconds since the epoch before which the work in progress must
+     * be completed.
+     * @return the report of the quiesce phase.
+     * @since 1.1.3
+     */
+    default QuiesceReport quiesce(final long deadline) {
+        return QuiesceReport.EMPTY;
+    }
+
+    /**
+     * Asks the application that is being upgraded to write the snapshots of its state that the next version
+     * can use to start warm, such as the content of its caches. It is called once the new version is available,
+     * before initializing it, the snapshots can then be read by the next version from
+     * {@link ApplicationManager#getState(String)} while it is initialized. The default implementation has
+     * nothing to hand over.
+     * @param writer the writer of the snapshots.
+     * @throws ApplicationException if the state could not be exported, the next version then starts cold.
+     * @since 1.1.3
+     */
+    default void exportState(final StateWriter writer) throws ApplicationException {
+        // Nothing to export by default
+    }
+
+    /**
+     * Asks the initialized application to execute its hot paths before the specified deadline, so that they
+     * are compiled by the JIT compiler before the application is exposed to the users. It is called once the
+     * application has been initialized and before showing it, the representative calls to replay can for
+     * example be exported by the previous version with {@link #exportState(StateWriter)} as the snapshots are
+     * still available from {@link ApplicationManager#getState(String)}. The application manager only waits for
+     * it a short grace period after the deadline. The default implementation has nothing to warm up.
+     * @param deadline the time in milliseconds since the epoch before which the warm-up must be over.
+     * @return the amount of calls that have been executed.
+     * @since 1.1.3
+     */
+    default int warmUp(final long deadline) {
+        return 0;
+    }
+
+    /**
+     * Indicates whether the initialized application works as expected. When the guarded upgrades have been
+     * enabled, it is called periodically during the health window that follows the initialization of a new
+     * version, which is replaced with the previous version as soon as it returns {@code false}, fails or
+     * doesn't answer in time. The default implementation always returns {@code true}.
+     * @return {@code true} if the application is healthy, {@code false} otherwise.
+     * @since 1.1.3
+     */
+    default boolean isHealthy() {
+        return true;
+    }
 }
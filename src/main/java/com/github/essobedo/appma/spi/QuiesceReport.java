@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2016 essobedo.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.github.essobedo.appma.spi;
+
+/**
+ * The report of the quiesce phase of an application, describing what happened to the work that was
+ * in progress when the application has been asked to stop accepting new work.
+ *
+ * @author Nicolas Filotto (nicolas.filotto@gmail.com)
+ * @version $Id$
+ * @since 1.1.3
+ */
+public final class QuiesceReport {
+
+    /**
+     * The report of an application that had no work in progress.
+     */
+    public static final QuiesceReport EMPTY = new QuiesceReport(0, 0, 0);
+
+    /**
+     * The amount of units of work that were in progress when the quiesce phase started.
+     */
+    private final int inFlight;
+
+    /**
+     * The amount of units of work that could be completed before the deadline.
+     */
+    private final int drained;
+
+    /**
+     * The amount of units of work that could not be completed before the deadline.
+     */
+    private final int timedOut;
+
+    /**
+     * Constructs a {@code QuiesceReport} with the specified amounts of units of work.
+     * @param inFlight the amount of units of work that were in progress when the quiesce phase started.
+     * @param drained the amount of units of work that could be completed before the deadline.
+     * @param timedOut the amount of units of work that could not be completed before the deadline.
+     */
+    public QuiesceReport(final int inFlight, final int drained, final int timedOut) {
+        this.inFlight = inFlight;
+        this.drained = drained;
+        this.timedOut = timedOut;
+    }
+
+    /**
+     * Gives the amount of units of work that were in progress when the quiesce phase started.
+     * @return the amount of units of work that were in progress.
+     */
+    public int getInFlight() {
+        return inFlight;
+    }
+
+    /**
+     * Gives the amount of units of work that could be completed before the deadline.
+     * @return the amount of units of work that could be completed.
+     */
+    public int getDrained() {
+        return drained;
+    }
+
+    /**
+     * Gives the amount of units of work that could not be completed before the deadline.
+     * @return the amount of units of work that could not be completed.
+     */
+    public int getTimedOut() {
+        return timedOut;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("in-flight: %d, drained: %d, timed out: %d", inFlight, drained, timedOut);
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright (C) 2016 essobedo.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.github.essobedo.appma.spi;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Allows an application that is being upgraded to hand over named snapshots of its state to the next
+ * version. The content of a snapshot is a sequence of bytes whose format is defined by the application, it must
+ * not depend on the classes of the application, so that the next version can read it with its own classes, and it
+ * should start with an identifier of the format, so that a version that doesn't understand it can ignore it.
+ *
+ * @author Nicolas Filotto (nicolas.filotto@gmail.com)
+ * @version $Id$
+ * @since 1.1.3
+ */
+public interface StateWriter {
+
+    /**
+     * Opens the stream into which the snapshot with the specified name is written. The snapshot is only handed
+     * over once the stream has been closed, a snapshot with the same name replaces the previous one.
+     * @param name the name of the snapshot.
+     * @return the stream into which the snapshot is written.
+     * @throws IOException if the stream could not be opened.
+     */
+    OutputStream open(String name) throws IOException;
+}
@@ -18,25 +18,55 @@
  */
 package com.github.essobedo.appma.core;
 
+import com.github.essobedo.appma.core.config.ConfigurationFactory;
+import com.github.essobedo.appma.core.io.Folder;
+import com.github.essobedo.appma.core.io.MemoryArena;
 import com.github.essobedo.appma.core.io.RootFolder;
+import com.github.essobedo.appma.core.util.SharedArchive;
+import com.github.essobedo.appma.core.zip.UnzipTask;
 import com.github.essobedo.appma.exception.ApplicationException;
+import com.github.essobedo.appma.exception.InvalidPatchException;
+import com.github.essobedo.appma.exception.UpgradeAbortedException;
 import com.github.essobedo.appma.spi.Manageable;
+import com.github.essobedo.appma.spi.QuiesceReport;
+import com.github.essobedo.appma.spi.VersionManager;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.LogManager;
 import org.junit.After;
+import org.junit.Assume;
 import org.junit.BeforeClass;
 import org.junit.Test;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -75,6 +105,88 @@ public class TestDefaultApplicationManager {
         return new File(folder.getLocation(), folderName);
     }
 
+    /**
+     * Copies the fixture shared by the tests of the upgrade modes into a dedicated root folder, in which the
+     * version 1.0 is installed and whose patch upgrades to the version 2.0.
+     */
+    static File newModesFolder(String name) {
+        return copyFixture("app.upgrade.modes", name);
+    }
+
+    /**
+     * Copies the specified fixture into a dedicated root folder so that it can be modified.
+     */
+    static File copyFixture(String folderName, String name) {
+        File fixture = getRootFolder(folderName);
+        File root = new File(fixture.getParentFile(), fixture.getName() + "." + name);
+        if (root.exists()) {
+            new Folder(root).delete();
+        }
+        new Folder(fixture).copy(root);
+        return root;
+    }
+
+    /**
+     * Upgrades the application installed into the specified root folder with the specified system parameters
+     * defined as {@code name=value}.
+     */
+    static void doUpgrade(DefaultApplicationManager manager, File root, String... parameters) throws Exception {
+        try {
+            System.setProperty("test.folder", root.getName());
+            setProperties(parameters);
+            manager.doUpgrade();
+        } finally {
+            System.clearProperty("test.folder");
+            clearProperties(parameters);
+        }
+    }
+
+    static void setProperties(String... parameters) {
+        for (String parameter : parameters) {
+            int index = parameter.indexOf('=');
+            System.setProperty(parameter.substring(0, index), parameter.substring(index + 1));
+        }
+    }
+
+    static void clearProperties(String... parameters) {
+        for (String parameter : parameters) {
+            System.clearProperty(parameter.substring(0, parameter.indexOf('=')));
+        }
+    }
+
+    /**
+     * Upgrades the application of the specified root folder with the specified system parameters, checks that
+     * the new version has been installed into its own folder and that it is still used after a restart.
+     * @return the installation folder of the new version.
+     */
+    private File upgradeVersioned(File root, String... parameters) throws Exception {
+        this.temp = File.createTempFile("TestDefaultApplicationManager", "tmp");
+        DefaultApplicationManager manager = new DefaultApplicationManager(root, temp.getAbsolutePath());
+        assertEquals("1.0", manager.create().version());
+        assertNull(manager.init());
+        doUpgrade(manager, root, parameters);
+        assertEquals("2.0", manager.getApplication().version());
+        File installFolder = manager.getInstallFolder();
+        assertNotEquals(root, installFolder);
+        assertTrue(new File(installFolder, "test1v2.jar").exists());
+        assertFalse(new File(installFolder, "test1.jar").exists());
+        assertTrue(load(new File(installFolder, "appma.properties")).getProperty("classpath").contains("test1v2.jar"));
+        // The previous version is left untouched
+        assertTrue(new File(root, "test1.jar").exists());
+        assertFalse(new File(root, "test1v2.jar").exists());
+        assertFalse(load(new File(root, "appma.properties")).getProperty("classpath").contains("test1v2.jar"));
+        manager.onExit();
+        try {
+            setProperties(parameters);
+            manager = new DefaultApplicationManager(root, temp.getAbsolutePath());
+        } finally {
+            clearProperties(parameters);
+        }
+        assertEquals(installFolder, manager.getInstallFolder());
+        assertEquals("2.0", manager.create().version());
+        return installFolder;
+    }
+
     @Test
     public void testAppUndefined() throws Exception {
         DefaultApplicationManager manager = new DefaultApplicationManager(getRootFolder("app.ko"));
@@ -339,6 +451,384 @@ public class TestDefaultApplicationManager {
         testApp("app.dep.ok6");
     }
 
+    @Test
+    public void testAppProfiled() throws Exception {
+        this.temp = File.createTempFile("TestDefaultApplicationManager", "tmp");
+        File profile = File.createTempFile("TestDefaultApplicationManager", "csv");
+        try {
+            System.setProperty("essobedo.appma.core.profile", profile.getAbsolutePath());
+            assertTrue(profile.delete());
+            testApp("app.dep.ok1");
+            assertTrue(profile.exists());
+            assertTrue(new String(Files.readAllBytes(profile.toPath()), "UTF-8")
+                .contains("class,com.github.essobedo.foo.Dep,"));
+        } finally {
+            System.clearProperty("essobedo.appma.core.profile");
+            profile.delete();
+        }
+    }
+
+    @Test
+    public void testAppPreloaded() throws Exception {
+        File classList = new File(getRootFolder("app.dep.ok1"), "appma.classlist");
+        try {
+            System.setProperty("essobedo.appma.core.preload", "true");
+            assertFalse(classList.exists());
+            testApp("app.dep.ok1");
+            assertTrue(classList.exists());
+            List<String> lines = Files.readAllLines(classList.toPath());
+            assertEquals("#version=1.0", lines.get(0));
+            assertTrue(lines.contains("com.github.essobedo.foo.Dep"));
+            long lastModified = classList.lastModified();
+            testApp("app.dep.ok1");
+            assertEquals(lastModified, classList.lastModified());
+        } finally {
+            System.clearProperty("essobedo.appma.core.preload");
+            classList.delete();
+        }
+    }
+
+    @Test
+    public void testAppAsyncCreate() throws Exception {
+        this.temp = File.createTempFile("TestDefaultApplicationManager", "tmp");
+        File record = new File(getRootFolder("app.dep.ok1"), "appma.startup");
+        try {
+            DefaultApplicationManager manager = new DefaultApplicationManager(getRootFolder("app.dep.ok1"),
+                temp.getAbsolutePath());
+            assertFalse(manager.isJavaFXExpected());
+            Manageable application = manager.asyncCreate().get();
+            assertEquals("FooDep", application.name());
+            assertSame(application, manager.getApplication());
+            assertTrue(record.exists());
+            assertNull(manager.init());
+            manager.destroy();
+            manager = new DefaultApplicationManager(getRootFolder("app.dep.ok1"), temp.getAbsolutePath());
+            assertFalse(manager.isJavaFXExpected());
+            System.setProperty("essobedo.appma.core.javafx", "true");
+            assertTrue(manager.isJavaFXExpected());
+        } finally {
+            System.clearProperty("essobedo.appma.core.javafx");
+            record.delete();
+        }
+    }
+
+    @Test
+    public void testAppRecordedProvider() throws Exception {
+        this.temp = File.createTempFile("TestDefaultApplicationManager", "tmp");
+        File record = new File(getRootFolder("app.ko2"), "appma.startup");
+        try {
+            DefaultApplicationManager manager = new DefaultApplicationManager(getRootFolder("app.ko2"),
+                temp.getAbsolutePath());
+            assertEquals("com.github.essobedo.foo.Foo", manager.create().getClass().getName());
+            Properties properties = load(record);
+            String key = "provider";
+            assertEquals("com.github.essobedo.foo.Foo", properties.getProperty(key));
+            manager = new DefaultApplicationManager(getRootFolder("app.ko2"), temp.getAbsolutePath());
+            assertEquals("com.github.essobedo.foo.Foo", manager.create().getClass().getName());
+            properties.setProperty(key, "com.github.essobedo.foo.Unknown");
+            try (OutputStream output = new FileOutputStream(record)) {
+                properties.store(output, null);
+            }
+            manager = new DefaultApplicationManager(getRootFolder("app.ko2"), temp.getAbsolutePath());
+            assertEquals("com.github.essobedo.foo.Foo", manager.create().getClass().getName());
+            assertEquals("com.github.essobedo.foo.Foo", load(record).getProperty(key));
+            // Only the provider of the last arguments is recorded
+            properties = load(record);
+            String arguments = properties.getProperty("provider.arguments");
+            assertNotNull(arguments);
+            manager = new DefaultApplicationManager(getRootFolder("app.ko2"), temp.getAbsolutePath() + ".other");
+            assertEquals("com.github.essobedo.foo.Foo", manager.create().getClass().getName());
+            assertNotEquals(arguments, load(record).getProperty("provider.arguments"));
+            assertEquals(properties.size(), load(record).size());
+            manager = new DefaultApplicationManager(getRootFolder("app.ko2"));
+            try {
+                manager.create();
+                fail("An ApplicationException is expected");
+            } catch (ApplicationException e) {
+                // expected
+            }
+        } finally {
+            record.delete();
+        }
+    }
+
+    @Test
+    public void testAppQuiesced() throws Exception {
+        this.temp = File.createTempFile("TestDefaultApplicationManager", "tmp");
+        DefaultApplicationManager manager = new DefaultApplicationManager(getRootFolder("app.quiesce"),
+            temp.getAbsolutePath());
+        manager.create();
+        assertNull(manager.init());
+        manager.destroy();
+        Properties properties = load(temp);
+        assertEquals("true", properties.getProperty("quiesce"));
+        assertEquals("true", properties.getProperty("destroy"));
+        QuiesceReport report = manager.getQuiesceReport();
+        assertNotNull(report);
+        assertEquals(3, report.getInFlight());
+        assertEquals(2, report.getDrained());
+        assertEquals(1, report.getTimedOut());
+    }
+
+    @Test
+    public void testAppQuiesceTimeout() throws Exception {
+        this.temp = File.createTempFile("TestDefaultApplicationManager", "tmp");
+        DefaultApplicationManager manager = new DefaultApplicationManager(getRootFolder("app.quiesce"),
+            temp.getAbsolutePath());
+        manager.create();
+        assertNull(manager.init());
+        try {
+            System.setProperty("essobedo.appma.core.quiesce.timeout", "100");
+            System.setProperty("test.quiesce.sleep", "5000");
+            long start = System.currentTimeMillis();
+            manager.destroy();
+            assertTrue(System.currentTimeMillis() - start < 5000L);
+        } finally {
+            System.clearProperty("essobedo.appma.core.quiesce.timeout");
+            System.clearProperty("test.quiesce.sleep");
+        }
+        assertNull(manager.getQuiesceReport());
+        assertEquals("true", load(temp).getProperty("destroy"));
+    }
+
+    @Test
+    public void testServerSocketChannel() throws Exception {
+        this.temp = File.createTempFile("TestDefaultApplicationManager", "tmp");
+        DefaultApplicationManager manager = new DefaultApplicationManager(getRootFolder("app.dep.ok1"),
+            temp.getAbsolutePath());
+        manager.create();
+        assertNull(manager.init());
+        ServerSocketChannel channel = manager.getServerSocketChannel("http",
+            new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        assertTrue(channel.isOpen());
+        InetSocketAddress address = (InetSocketAddress) channel.getLocalAddress();
+        manager.destroy();
+        try (SocketChannel client = SocketChannel.open(address)) {
+            manager.create();
+            assertNull(manager.init());
+            assertSame(channel, manager.getServerSocketChannel("http",
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), 0)));
+            assertSame(channel, manager.getServerSocketChannel("http", address));
+            try (SocketChannel accepted = channel.accept()) {
+                assertNotNull(accepted);
+            }
+            try {
+                manager.getServerSocketChannel("http",
+                    new InetSocketAddress(InetAddress.getLoopbackAddress(), address.getPort() + 1));
+                fail("An ApplicationException was expected");
+            } catch (ApplicationException e) {
+                // expected
+            }
+        }
+        manager.onExit();
+        assertFalse(channel.isOpen());
+        try {
+            manager.getServerSocketChannel("http", address);
+            fail("An ApplicationException was expected");
+        } catch (ApplicationException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testMemoryArena() throws Exception {
+        this.temp = File.createTempFile("TestDefaultApplicationManager", "tmp");
+        File root = new File(Files.createTempDirectory("TestDefaultApplicationManager").toString());
+        new Folder(getRootFolder("app.dep.ok1")).copy(root);
+        try {
+            DefaultApplicationManager manager = new DefaultApplicationManager(root, temp.getAbsolutePath());
+            manager.create();
+            assertNull(manager.init());
+            MemoryArena arena = manager.getMemoryArena("table", 1024L);
+            arena.putLong(1016L, 42L);
+            manager.destroy();
+            manager.create();
+            assertNull(manager.init());
+            assertSame(arena, manager.getMemoryArena("table", 1024L));
+            try {
+                manager.getMemoryArena("table", 2048L);
+                fail("An ApplicationException was expected");
+            } catch (ApplicationException e) {
+                // expected
+            }
+            try {
+                manager.getMemoryArena("../table", 1024L);
+                fail("An ApplicationException was expected");
+            } catch (ApplicationException e) {
+                // expected
+            }
+            manager.onExit();
+
+            manager = new DefaultApplicationManager(root, temp.getAbsolutePath());
+            manager.create();
+            assertNull(manager.init());
+            assertEquals(42L, manager.getMemoryArena("table", 1024L).getLong(1016L));
+            manager.onExit();
+        } finally {
+            new Folder(root).delete();
+        }
+    }
+
+    @Test
+    public void testAppWarmedUp() throws Exception {
+        this.temp = File.createTempFile("TestDefaultApplicationManager", "tmp");
+        DefaultApplicationManager manager = new DefaultApplicationManager(getRootFolder("app.warmup"),
+            temp.getAbsolutePath());
+        manager.create();
+        assertEquals(-1, manager.getWarmUpCalls());
+        assertNull(manager.init());
+        assertEquals(10000, manager.getWarmUpCalls());
+        assertEquals("true", load(temp).getProperty("warmup"));
+        manager.onExit();
+    }
+
+    @Test
+    public void testAppWithoutWarmUp() throws Exception {
+        this.temp = File.createTempFile("TestDefaultApplicationManager", "tmp");
+        DefaultApplicationManager manager = new DefaultApplicationManager(getRootFolder("app.dep.ok1"),
+            temp.getAbsolutePath());
+        manager.create();
+        assertNull(manager.init());
+        // The warm-up phase is skipped as the application doesn't implement it
+        assertEquals(-1, manager.getWarmUpCalls());
+        manager.onExit();
+    }
+
+    @Test
+    public void testAppWarmUpTimeout() throws Exception {
+        this.temp = File.createTempFile("TestDefaultApplicationManager", "tmp");
+        DefaultApplicationManager manager = new DefaultApplicationManager(getRootFolder("app.warmup"),
+            temp.getAbsolutePath());
+        manager.create();
+        try {
+            System.setProperty("essobedo.appma.core.warmup.timeout", "100");
+            System.setProperty("test.warmup.sleep", "5000");
+            long start = System.currentTimeMillis();
+            assertNull(manager.init());
+            assertTrue(System.currentTimeMillis() - start < 5000L);
+        } finally {
+            System.clearProperty("essobedo.appma.core.warmup.timeout");
+            System.clearProperty("test.warmup.sleep");
+        }
+        assertEquals(-1, manager.getWarmUpCalls());
+        manager.onExit();
+        assertEquals("true", load(temp).getProperty("destroy"));
+    }
+
+    @Test
+    public void testExecutor() throws Exception {
+        this.temp = File.createTempFile("TestDefaultApplicationManager", "tmp");
+        DefaultApplicationManager manager = new DefaultApplicationManager(getRootFolder("app.dep.ok1"),
+            temp.getAbsolutePath());
+        ClassLoader contextCL = Thread.currentThread().getContextClassLoader();
+        try {
+            Manageable application = manager.create();
+            assertNull(manager.init());
+            ClassLoader classLoader = application.getClass().getClassLoader();
+            Thread.currentThread().setContextClassLoader(classLoader);
+            ScheduledExecutorService executor = manager.getExecutor("worker", 1);
+            assertSame(executor, manager.getExecutor("worker", 1));
+            assertSame(classLoader, executor.submit(() -> Thread.currentThread().getContextClassLoader()).get());
+            Thread thread = executor.submit(Thread::currentThread).get();
+            assertTrue(thread.getName().startsWith("appma-worker-"));
+            ScheduledFuture<?> periodic = executor.scheduleAtFixedRate(() -> { }, 0L, 10L, TimeUnit.MILLISECONDS);
+            CountDownLatch latch = new CountDownLatch(1);
+            Future<?> blocking = executor.submit(() -> {
+                latch.await();
+                return null;
+            });
+            manager.destroy();
+            assertTrue(periodic.isCancelled());
+            assertTrue(blocking.isCancelled());
+            assertTrue(executor.isShutdown());
+            try {
+                executor.submit(() -> { });
+                fail("A RejectedExecutionException was expected");
+            } catch (RejectedExecutionException e) {
+                // expected
+            }
+
+            application = manager.create();
+            assertNull(manager.init());
+            Thread.currentThread().setContextClassLoader(application.getClass().getClassLoader());
+            ScheduledExecutorService executor2 = manager.getExecutor("worker", 1);
+            assertNotSame(executor, executor2);
+            assertSame(thread, executor2.submit(Thread::currentThread).get());
+            assertSame(application.getClass().getClassLoader(),
+                executor2.submit(() -> Thread.currentThread().getContextClassLoader()).get());
+            manager.onExit();
+            assertTrue(executor2.isShutdown());
+            thread.join(5000L);
+            assertFalse(thread.isAlive());
+        } finally {
+            Thread.currentThread().setContextClassLoader(contextCL);
+        }
+    }
+
+    @Test
+    public void testSharedArchive() throws Exception {
+        Assume.assumeTrue(SharedArchive.isSupported());
+        this.temp = File.createTempFile("TestDefaultApplicationManager", "tmp");
+        File root = copyFixture("app.dep.ok1", "cds");
+        DefaultApplicationManager manager = new DefaultApplicationManager(root, temp.getAbsolutePath());
+        manager.create();
+        assertNull(manager.getArchiveGeneration());
+        try {
+            System.setProperty("essobedo.appma.core.cds", "true");
+            assertNull(manager.init());
+        } finally {
+            System.clearProperty("essobedo.appma.core.cds");
+        }
+        Future<Boolean> generation = manager.getArchiveGeneration();
+        assertNotNull(generation);
+        try {
+            assertTrue(generation.get(60L, TimeUnit.SECONDS));
+            assertTrue(new File(root, "appma.jsa").isFile());
+        } catch (ExecutionException e) {
+            // The classpath of the tests contains folders that cannot be archived
+            assertTrue(e.getCause() instanceof ApplicationException);
+            assertFalse(new File(root, "appma.jsa").exists());
+        }
+        manager.onExit();
+    }
+
+    @Test
+    public void testExecutorForeignContextClassLoader() throws Exception {
+        this.temp = File.createTempFile("TestDefaultApplicationManager", "tmp");
+        this.patchTargetFile = File.createTempFile("TestDefaultApplicationManager", "tmp");
+        this.patchContentTargetFolder = new File(Files.createTempDirectory("patchContentTargetFolder").toString());
+        File root = newModesFolder("executor");
+        DefaultApplicationManager manager = new DefaultApplicationManager(root,
+            patchTargetFile, patchContentTargetFolder, temp.getAbsolutePath());
+        ClassLoader contextCL = Thread.currentThread().getContextClassLoader();
+        URLClassLoader foreign = new URLClassLoader(new URL[0], null);
+        try {
+            Thread.currentThread().setContextClassLoader(foreign);
+            try {
+                manager.getExecutor("worker", 1);
+                fail("An ApplicationException was expected");
+            } catch (ApplicationException e) {
+                // expected
+            }
+            Manageable application = manager.create();
+            assertNull(manager.init());
+            Thread.currentThread().setContextClassLoader(foreign);
+            ScheduledExecutorService executor = manager.getExecutor("worker", 1);
+            assertSame(application.getClass().getClassLoader(),
+                executor.submit(() -> Thread.currentThread().getContextClassLoader()).get());
+            ScheduledFuture<?> periodic = executor.scheduleAtFixedRate(() -> { }, 0L, 10L, TimeUnit.MILLISECONDS);
+            doUpgrade(manager, root);
+            assertEquals("2.0", manager.getApplication().version());
+            assertTrue(periodic.isCancelled());
+            assertTrue(executor.isShutdown());
+            assertNotSame(executor, manager.getExecutor("worker", 1));
+            manager.onExit();
+        } finally {
+            Thread.currentThread().setContextClassLoader(contextCL);
+            foreign.close();
+        }
+    }
+
     @Test
     public void testAppDepInvalid1() throws Exception {
         this.temp = File.createTempFile("TestDefaultApplicationManager", "tmp");
@@ -711,6 +1201,513 @@ public class TestDefaultApplicationManager {
         assertEquals(2, properties.size());
     }
 
+    @Test
+    public void testAppUpgradeBlueGreen() throws Exception {
+        this.temp = File.createTempFile("TestDefaultApplicationManager", "tmp");
+        this.patchTargetFile = File.createTempFile("TestDefaultApplicationManager", "tmp");
+        this.patchContentTargetFolder = new File(Files.createTempDirectory("patchContentTargetFolder").toString());
+        String folderName = "app.upgrade.bg";
+        File root = getRootFolder(folderName);
+        DefaultApplicationManager manager = new DefaultApplicationManager(root,
+            patchTargetFile, patchContentTargetFolder, temp.getAbsolutePath());
+        Manageable application = manager.create();
+        assertEquals("1.0", application.version());
+        assertTrue(application.supportsConcurrentInstances());
+        assertNull(manager.init());
+        try {
+            System.setProperty("test.folder", folderName);
+            System.setProperty("essobedo.appma.core.bluegreen", "true");
+            manager.doUpgrade();
+        } finally {
+            System.clearProperty("test.folder");
+            System.clearProperty("essobedo.appma.core.bluegreen");
+        }
+        Manageable upgraded = manager.getApplication();
+        assertNotNull(upgraded);
+        assertEquals("2.0", upgraded.version());
+        assertEquals("true", load(temp).getProperty("destroy"));
+        File installFolder = manager.getInstallFolder();
+        assertNotEquals(root, installFolder);
+        assertTrue(new File(installFolder, "test1v2.jar").exists());
+        assertFalse(new File(installFolder, "test1.jar").exists());
+        assertTrue(new File(root, "test1.jar").exists());
+        assertFalse(load(new File(root, "appma.properties")).getProperty("classpath").contains("test1v2.jar"));
+        assertTrue(load(new File(installFolder, "appma.properties")).getProperty("classpath").contains("test1v2.jar"));
+        manager.onExit();
+        Properties properties = load(temp);
+        assertEquals("2", properties.getProperty("init"));
+        assertEquals("2", properties.getProperty("destroy"));
+        manager = new DefaultApplicationManager(root, temp.getAbsolutePath());
+        assertEquals(installFolder, manager.getInstallFolder());
+        assertEquals("2.0", manager.create().version());
+    }
+
+    @Test
+    public void testAppUpgradeVersioned() throws Exception {
+        File root = newModesFolder("versioned");
+        File installFolder = upgradeVersioned(root, "essobedo.appma.core.versioned=true");
+        assertEquals(installFolder, ConfigurationFactory.getActiveFolder(root));
+        assertEquals(new File(root, ".appma/current"), ConfigurationFactory.getCurrentPointer(root));
+        // The factory doesn't follow the pointer file, the manager resolves the active installation itself
+        assertTrue(new ConfigurationFactory(root).create().getClasspath().contains(new File(root, "test1.jar")));
+        assertTrue(new ConfigurationFactory(installFolder).create().getClasspath()
+            .contains(new File(installFolder, "test1v2.jar")));
+    }
+
+    @Test
+    public void testAppUpgradeDurable() throws Exception {
+        File root = newModesFolder("durable");
+        File installFolder = upgradeVersioned(root, "essobedo.appma.core.versioned=true",
+            "essobedo.appma.core.durable=true");
+        assertFalse(new File(installFolder, "appma.properties.tmp").exists());
+        assertFalse(new File(root, ".appma/current.tmp").exists());
+        assertEquals(0, new File(root, ".appma/staging").list().length);
+    }
+
+    @Test
+    public void testAppUpgradeSharedStore() throws Exception {
+        File root = newModesFolder("store");
+        File store = new File(root, "store");
+        File installFolder = upgradeVersioned(root, "essobedo.appma.core.versioned=true",
+            "essobedo.appma.core.store=" + store.getAbsolutePath());
+        // The unchanged jar files are hard links to the blobs of the store
+        assertEquals(2, Files.getAttribute(new File(installFolder, "test2.jar").toPath(), "unix:nlink"));
+        assertEquals(1, Files.getAttribute(new File(root, "test2.jar").toPath(), "unix:nlink"));
+        assertEquals(1, Files.getAttribute(new File(installFolder, "test1v2.jar").toPath(), "unix:nlink"));
+        assertTrue(store.isDirectory());
+    }
+
+    @Test
+    public void testAppRollback() throws Exception {
+        this.temp = File.createTempFile("TestDefaultApplicationManager", "tmp");
+        this.patchTargetFile = File.createTempFile("TestDefaultApplicationManager", "tmp");
+        this.patchContentTargetFolder = new File(Files.createTempDirectory("patchContentTargetFolder").toString());
+        File root = newModesFolder("rollback");
+        DefaultApplicationManager manager = new DefaultApplicationManager(root,
+            patchTargetFile, patchContentTargetFolder, temp.getAbsolutePath());
+        assertEquals("1.0", manager.create().version());
+        assertNull(manager.init());
+        try {
+            manager.doRollback();
+            fail("An UpgradeAbortedException was expected");
+        } catch (UpgradeAbortedException e) {
+            // expected
+        }
+        assertEquals("1.0", manager.getApplication().version());
+        doUpgrade(manager, root, "essobedo.appma.core.versioned=true", "essobedo.appma.core.retained=1");
+        assertEquals("2.0", manager.getApplication().version());
+        File installFolder = manager.getInstallFolder();
+        assertEquals(Collections.singletonList(root), manager.getPreviousFolders());
+
+        manager.doRollback();
+        assertEquals("1.0", manager.getApplication().version());
+        assertEquals(root, manager.getInstallFolder());
+        assertEquals(root, ConfigurationFactory.getActiveFolder(root));
+        assertTrue(manager.getPreviousFolders().isEmpty());
+        assertFalse(installFolder.exists());
+        try {
+            manager.doRollback();
+            fail("An UpgradeAbortedException was expected");
+        } catch (UpgradeAbortedException e) {
+            // expected
+        }
+        manager.onExit();
+        assertEquals("1.0", new DefaultApplicationManager(root, temp.getAbsolutePath()).create().version());
+    }
+
+    @Test
+    public void testAppUpgradeGuarded() throws Exception {
+        this.temp = File.createTempFile("TestDefaultApplicationManager", "tmp");
+        this.patchTargetFile = File.createTempFile("TestDefaultApplicationManager", "tmp");
+        this.patchContentTargetFolder = new File(Files.createTempDirectory("patchContentTargetFolder").toString());
+        File root = newModesFolder("guarded");
+        DefaultApplicationManager manager = new DefaultApplicationManager(root,
+            patchTargetFile, patchContentTargetFolder, temp.getAbsolutePath());
+        assertEquals("1.0", manager.create().version());
+        assertNull(manager.init());
+        try {
+            System.setProperty("test.folder", root.getName());
+            System.setProperty("essobedo.appma.core.guarded", "true");
+            System.setProperty("essobedo.appma.core.health.window", "200");
+            System.setProperty("essobedo.appma.core.health.interval", "50");
+            System.setProperty("test.unhealthy", "true");
+            try {
+                manager.doUpgrade();
+                fail("An UpgradeAbortedException was expected");
+            } catch (UpgradeAbortedException e) {
+                // expected
+            }
+            assertEquals("1.0", manager.getApplication().version());
+            assertEquals(root, manager.getInstallFolder());
+            assertTrue(manager.getRollbackReason().contains("unhealthy"));
+            // The previous version has been initialized again
+            assertEquals("true", load(temp).getProperty("init"));
+            System.clearProperty("test.unhealthy");
+
+            System.setProperty("test.init.ko", "true");
+            try {
+                manager.doUpgrade();
+                fail("An UpgradeAbortedException was expected");
+            } catch (UpgradeAbortedException e) {
+                // expected
+            }
+            assertEquals("1.0", manager.getApplication().version());
+            assertEquals(root, manager.getInstallFolder());
+            assertTrue(manager.getRollbackReason().contains("could not be started"));
+            System.clearProperty("test.init.ko");
+
+            // An interrupted health check is considered as failed
+            System.setProperty("essobedo.appma.core.health.window", "60000");
+            Thread upgrader = Thread.currentThread();
+            Thread interrupter = new Thread(() -> {
+                try {
+                    Manageable application = manager.getApplication();
+                    while (application == null || !"2.0".equals(application.version())) {
+                        Thread.sleep(10L);
+                        application = manager.getApplication();
+                    }
+                    upgrader.interrupt();
+                } catch (InterruptedException e) {
+                    // ignore me
+                }
+            });
+            interrupter.start();
+            try {
+                manager.doUpgrade();
+                fail("An UpgradeAbortedException was expected");
+            } catch (UpgradeAbortedException e) {
+                // expected
+            }
+            assertTrue(Thread.interrupted());
+            interrupter.join();
+            assertEquals("1.0", manager.getApplication().version());
+            assertEquals(root, manager.getInstallFolder());
+            assertTrue(manager.getRollbackReason().contains("interrupted"));
+            System.setProperty("essobedo.appma.core.health.window", "200");
+
+            manager.doUpgrade();
+        } finally {
+            System.clearProperty("test.folder");
+            System.clearProperty("essobedo.appma.core.guarded");
+            System.clearProperty("essobedo.appma.core.health.window");
+            System.clearProperty("essobedo.appma.core.health.interval");
+            System.clearProperty("test.unhealthy");
+            System.clearProperty("test.init.ko");
+        }
+        assertEquals("2.0", manager.getApplication().version());
+        assertNotEquals(root, manager.getInstallFolder());
+        manager.onExit();
+    }
+
+    @Test
+    public void testUpgradeRecoveredInPlace() throws Exception {
+        this.temp = File.createTempFile("TestDefaultApplicationManager", "tmp");
+        File root = newModesFolder("journal");
+        File journalFile = new File(root, ".appma/journal");
+        UpgradeJournal journal = new UpgradeJournal(journalFile);
+        // Interrupted while getting the patch
+        journal.begin("BEGIN", "com.github.essobedo.foo.FooDep", "1.0", "in-place");
+        DefaultApplicationManager manager = new DefaultApplicationManager(root, temp.getAbsolutePath());
+        assertFalse(journal.exists());
+        assertEquals("1.0", manager.create().version());
+
+        // Interrupted while patching, the last entry has not been completely written
+        File patchFolder = new File(Files.createTempDirectory("patchContentTargetFolder").toString());
+        new UnzipTask(new File(root, "upgrade.zip"), patchFolder).execute();
+        journal.begin("BEGIN", "com.github.essobedo.foo.FooDep", "1.0", "in-place");
+        journal.append("EXTRACTED", patchFolder.getAbsolutePath());
+        journal.append("PATCHING");
+        Files.write(journalFile.toPath(), "INSTALL".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+        assertEquals(3, journal.read().size());
+        manager = new DefaultApplicationManager(root, temp.getAbsolutePath());
+        assertFalse(journal.exists());
+        assertFalse(patchFolder.exists());
+        assertEquals(root, manager.getInstallFolder());
+        assertTrue(new File(root, "test1v2.jar").exists());
+        assertEquals("2.0", manager.create().version());
+    }
+
+    @Test
+    public void testUpgradeRecoveredVersioned() throws Exception {
+        this.temp = File.createTempFile("TestDefaultApplicationManager", "tmp");
+        File root = newModesFolder("journal2");
+        UpgradeJournal journal = new UpgradeJournal(new File(root, ".appma/journal"));
+        File patchFolder = new File(Files.createTempDirectory("patchContentTargetFolder").toString());
+        new UnzipTask(new File(root, "upgrade.zip"), patchFolder).execute();
+        // Interrupted while installing the new version
+        File incomplete = new File(root, ".appma/instances/1");
+        assertTrue(incomplete.mkdirs());
+        assertTrue(new File(incomplete, "test2.jar").createNewFile());
+        journal.begin("BEGIN", "com.github.essobedo.foo.FooDep", "1.0", "versioned");
+        journal.append("EXTRACTED", patchFolder.getAbsolutePath());
+        journal.append("INSTALLING", incomplete.getAbsolutePath());
+        DefaultApplicationManager manager = new DefaultApplicationManager(root, temp.getAbsolutePath());
+        assertFalse(journal.exists());
+        assertFalse(patchFolder.exists());
+        assertFalse(incomplete.exists());
+        File installFolder = manager.getInstallFolder();
+        assertNotEquals(root, installFolder);
+        assertTrue(new File(installFolder, "test1v2.jar").exists());
+        assertFalse(new File(root, "test1v2.jar").exists());
+        assertEquals("2.0", manager.create().version());
+
+        // Interrupted after the installation of the new version
+        File installed = new File(root, ".appma/instances/2");
+        new Folder(installFolder).copy(installed);
+        journal.begin("BEGIN", "com.github.essobedo.foo.FooDep", "2.0", "versioned");
+        journal.append("INSTALLED", installed.getAbsolutePath(), installFolder.getAbsolutePath());
+        manager = new DefaultApplicationManager(root, temp.getAbsolutePath());
+        assertFalse(journal.exists());
+        assertEquals(installed, manager.getInstallFolder());
+        assertFalse(installFolder.exists());
+    }
+
+    @Test
+    public void testAppUpgradeStagingFolder() throws Exception {
+        this.temp = File.createTempFile("TestDefaultApplicationManager", "tmp");
+        File root = newModesFolder("staging");
+        DefaultApplicationManager manager = new DefaultApplicationManager(root, temp.getAbsolutePath());
+        File staging = new File(root, ".appma/staging");
+        assertEquals(staging, manager.getStagingFolder());
+        try {
+            System.setProperty("essobedo.appma.core.staging", "foo");
+            assertEquals(new File("foo"), manager.getStagingFolder());
+        } finally {
+            System.clearProperty("essobedo.appma.core.staging");
+        }
+        assertEquals("1.0", manager.create().version());
+        assertNull(manager.init());
+        doUpgrade(manager, root, "essobedo.appma.core.versioned=true");
+        assertEquals("2.0", manager.getApplication().version());
+        assertTrue(staging.isDirectory());
+        assertEquals(0, staging.list().length);
+        manager.onExit();
+
+        // The patches left by an interrupted upgrade are deleted at launch
+        assertTrue(new File(staging, "upgrade1").mkdir());
+        assertTrue(new File(staging, "upgrade1/foo.txt").createNewFile());
+        assertTrue(new File(staging, "upgrade2tmp").createNewFile());
+        new DefaultApplicationManager(root, temp.getAbsolutePath());
+        assertEquals(0, staging.list().length);
+    }
+
+    @Test
+    public void testAppUpgradeStagingFolderReplacedRoot() throws Exception {
+        this.temp = File.createTempFile("TestDefaultApplicationManager", "tmp");
+        // The version manager deletes the whole content of the root folder before copying the patch
+        File root = copyFixture("app.upgrade.ok7", "staging");
+        DefaultApplicationManager manager = new DefaultApplicationManager(root, temp.getAbsolutePath());
+        assertEquals("1.0", manager.create().version());
+        assertNull(manager.init());
+        // The patch applied in place is extracted out of the root folder
+        assertTrue(manager.getStagingFolder().toPath().startsWith(root.toPath()));
+        doUpgrade(manager, root);
+        assertEquals("2.0", load(temp).getProperty("init"));
+        manager.onExit();
+        Properties properties = load(temp);
+        assertEquals("2.0", properties.getProperty("init"));
+        assertEquals("2.0", properties.getProperty("destroy"));
+    }
+
+    @Test
+    public void testAppUpgradeStateHandedOver() throws Exception {
+        this.temp = File.createTempFile("TestDefaultApplicationManager", "tmp");
+        this.patchTargetFile = File.createTempFile("TestDefaultApplicationManager", "tmp");
+        this.patchContentTargetFolder = new File(Files.createTempDirectory("patchContentTargetFolder").toString());
+        String folderName = "app.upgrade.state";
+        DefaultApplicationManager manager = new DefaultApplicationManager(getRootFolder(folderName),
+            patchTargetFile, patchContentTargetFolder, temp.getAbsolutePath());
+        assertEquals("1.0", manager.create().version());
+        assertNull(manager.init());
+        assertNull(manager.getState("cache"));
+        try {
+            System.setProperty("test.folder", folderName);
+            manager.doUpgrade();
+        } finally {
+            System.clearProperty("test.folder");
+        }
+        assertEquals("2.0", manager.getApplication().version());
+        assertEquals("FooDep 1.0", load(temp).getProperty("state"));
+        assertNull(manager.getState("cache"));
+        manager.onExit();
+    }
+
+    @Test
+    public void testAppUpgradeBlueGreenStateHandedOver() throws Exception {
+        this.temp = File.createTempFile("TestDefaultApplicationManager", "tmp");
+        this.patchTargetFile = File.createTempFile("TestDefaultApplicationManager", "tmp");
+        this.patchContentTargetFolder = new File(Files.createTempDirectory("patchContentTargetFolder").toString());
+        String folderName = "app.upgrade.state.bg";
+        DefaultApplicationManager manager = new DefaultApplicationManager(getRootFolder(folderName),
+            patchTargetFile, patchContentTargetFolder, temp.getAbsolutePath());
+        assertEquals("1.0", manager.create().version());
+        assertNull(manager.init());
+        try {
+            System.setProperty("test.folder", folderName);
+            System.setProperty("essobedo.appma.core.bluegreen", "true");
+            manager.doUpgrade();
+        } finally {
+            System.clearProperty("test.folder");
+            System.clearProperty("essobedo.appma.core.bluegreen");
+        }
+        assertEquals("2.0", manager.getApplication().version());
+        assertNull(manager.getState("cache"));
+        manager.onExit();
+        assertEquals("FooDep 1.0", load(temp).getProperty("state"));
+    }
+
+    @Test
+    public void testAppUpgradeStaged() throws Exception {
+        this.temp = File.createTempFile("TestDefaultApplicationManager", "tmp");
+        this.patchTargetFile = File.createTempFile("TestDefaultApplicationManager", "tmp");
+        this.patchContentTargetFolder = new File(Files.createTempDirectory("patchContentTargetFolder").toString());
+        File root = newModesFolder("staged");
+        DefaultApplicationManager manager = new DefaultApplicationManager(root,
+            patchTargetFile, patchContentTargetFolder, temp.getAbsolutePath());
+        assertEquals("1.0", manager.create().version());
+        assertNull(manager.init());
+        try {
+            manager.doApplyStaged();
+            fail("An UpgradeAbortedException was expected");
+        } catch (UpgradeAbortedException e) {
+            // expected
+        }
+        try {
+            System.setProperty("test.folder", root.getName());
+            assertTrue(manager.doStage());
+        } finally {
+            System.clearProperty("test.folder");
+        }
+        assertEquals("1.0", manager.getApplication().version());
+        assertEquals(root, manager.getInstallFolder());
+        File stagedFolder = manager.getStagedFolder();
+        assertNotNull(stagedFolder);
+        assertTrue(new File(stagedFolder, "test1v2.jar").exists());
+        assertTrue(new File(root, "test1.jar").exists());
+        assertNull(load(temp).getProperty("destroy"));
+
+        manager.doApplyStaged();
+        assertEquals("2.0", manager.getApplication().version());
+        assertEquals(stagedFolder, manager.getInstallFolder());
+        assertNull(manager.getStagedFolder());
+        assertFalse(load(new File(root, "appma.properties")).getProperty("classpath").contains("test1v2.jar"));
+        assertTrue(load(new File(stagedFolder, "appma.properties")).getProperty("classpath").contains("test1v2.jar"));
+        manager.onExit();
+        assertEquals("2", load(temp).getProperty("destroy"));
+        assertEquals("2.0", new DefaultApplicationManager(root, temp.getAbsolutePath()).create().version());
+    }
+
+    @Test
+    public void testAppUpgradeStagedAppliedAtLaunch() throws Exception {
+        this.temp = File.createTempFile("TestDefaultApplicationManager", "tmp");
+        this.patchTargetFile = File.createTempFile("TestDefaultApplicationManager", "tmp");
+        this.patchContentTargetFolder = new File(Files.createTempDirectory("patchContentTargetFolder").toString());
+        File root = newModesFolder("staged2");
+        DefaultApplicationManager manager = new DefaultApplicationManager(root,
+            patchTargetFile, patchContentTargetFolder, temp.getAbsolutePath());
+        assertEquals("1.0", manager.create().version());
+        assertNull(manager.init());
+        try {
+            System.setProperty("test.folder", root.getName());
+            assertTrue(manager.doStage());
+        } finally {
+            System.clearProperty("test.folder");
+        }
+        File stagedFolder = manager.getStagedFolder();
+        manager.onExit();
+        // Not applied unless enabled
+        manager = new DefaultApplicationManager(root, temp.getAbsolutePath());
+        assertEquals(stagedFolder, manager.getStagedFolder());
+        assertEquals("1.0", manager.create().version());
+        try {
+            System.setProperty("essobedo.appma.core.staged.auto", "true");
+            manager = new DefaultApplicationManager(root, temp.getAbsolutePath());
+        } finally {
+            System.clearProperty("essobedo.appma.core.staged.auto");
+        }
+        assertNull(manager.getStagedFolder());
+        assertEquals(stagedFolder, manager.getInstallFolder());
+        assertEquals("2.0", manager.create().version());
+    }
+
+    @Test
+    public void testAppUpgradeVerified() throws Exception {
+        this.temp = File.createTempFile("TestDefaultApplicationManager", "tmp");
+        this.patchTargetFile = File.createTempFile("TestDefaultApplicationManager", "tmp");
+        this.patchContentTargetFolder = new File(Files.createTempDirectory("patchContentTargetFolder").toString());
+        String folderName = "app.upgrade.ok11";
+        DefaultApplicationManager manager = new DefaultApplicationManager(getRootFolder(folderName),
+            patchTargetFile, patchContentTargetFolder, temp.getAbsolutePath());
+        Manageable application = manager.create();
+        assertEquals("1.0", application.version());
+        assertNull(manager.init());
+        try {
+            System.setProperty("test.folder", folderName);
+            System.setProperty("essobedo.appma.core.verify", "true");
+            manager.doUpgrade();
+        } finally {
+            System.clearProperty("test.folder");
+            System.clearProperty("essobedo.appma.core.verify");
+        }
+        application = manager.getApplication();
+        assertNotNull(application);
+        assertEquals("FooDep2", application.name());
+        assertEquals("2.0", application.version());
+        manager.onExit();
+        Properties properties = load(temp);
+        assertEquals("2", properties.getProperty("init"));
+        assertEquals("2", properties.getProperty("destroy"));
+        assertFalse(patchContentTargetFolder.exists());
+    }
+
+    @Test
+    public void testAppUpgradeVerifiedInvalid() throws Exception {
+        this.temp = File.createTempFile("TestDefaultApplicationManager", "tmp");
+        this.patchTargetFile = File.createTempFile("TestDefaultApplicationManager", "tmp");
+        this.patchContentTargetFolder = new File(Files.createTempDirectory("patchContentTargetFolder").toString());
+        String folderName = "app.upgrade.ko3";
+        DefaultApplicationManager manager = new DefaultApplicationManager(getRootFolder(folderName),
+            patchTargetFile, patchContentTargetFolder, temp.getAbsolutePath());
+        Manageable application = manager.create();
+        assertEquals("1.0", application.version());
+        assertNull(manager.init());
+        try {
+            System.setProperty("test.folder", folderName);
+            System.setProperty("essobedo.appma.core.verify", "true");
+            manager.upgrade().get();
+            fail("An InvalidPatchException is expected");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof InvalidPatchException);
+        } finally {
+            System.clearProperty("test.folder");
+            System.clearProperty("essobedo.appma.core.verify");
+        }
+        assertSame(application, manager.getApplication());
+        assertNotNull(manager.checkForUpdate());
+        manager.onExit();
+        Properties properties = load(temp);
+        assertEquals("true", properties.getProperty("init"));
+        assertEquals("true", properties.getProperty("destroy"));
+        assertFalse(patchContentTargetFolder.exists());
+    }
+
+    @Test
+    public void testVersionManagerCached() throws Exception {
+        this.temp = File.createTempFile("TestDefaultApplicationManager", "tmp");
+        DefaultApplicationManager manager = new DefaultApplicationManager(getRootFolder("app.upgrade.ok12"),
+            temp.getAbsolutePath());
+        Manageable application = manager.create();
+        manager.init();
+        VersionManager<?> versionManager = manager.getVersionManager(application);
+        assertNotNull(versionManager);
+        assertSame(versionManager, manager.getVersionManager(application));
+        manager.destroy();
+        application = manager.create();
+        manager.init();
+        assertNotSame(versionManager, manager.getVersionManager(application));
+        manager.destroy();
+    }
+
     @Test
     public void testNoVersionManager() throws Exception {
         this.temp = File.createTempFile("TestDefaultApplicationManager", "tmp");
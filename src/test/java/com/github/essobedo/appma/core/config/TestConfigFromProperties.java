@@ -18,10 +18,16 @@
  */
 package com.github.essobedo.appma.core.config;
 
+import com.github.essobedo.appma.core.io.Folder;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
 import java.util.Properties;
 import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 
 /**
  * @author Nicolas Filotto (nicolas.filotto@gmail.com)
@@ -35,4 +41,21 @@ public class TestConfigFromProperties {
         ConfigFromProperties configFromProperties = new ConfigFromProperties(new File("foo"), new Properties());
         ConfigFromProperties.store(configFromProperties, new File("bar"));
     }
+
+    @Test
+    public void testStoreDurable() throws IOException {
+        File folder = Files.createTempDirectory("TestConfigFromProperties").toFile();
+        Properties properties = new Properties();
+        properties.setProperty("classpath", "lib/foo.jar;bar.jar");
+        File target = new File(folder, "appma.properties");
+        ConfigFromProperties.store(new ConfigFromProperties(folder, properties), target, true);
+        assertFalse(new File(folder, "appma.properties.tmp").exists());
+        Properties stored = new Properties();
+        try (InputStream in = new FileInputStream(target)) {
+            stored.load(in);
+        }
+        assertEquals(2, new ConfigFromProperties(folder, stored).getClasspath().size());
+        assertEquals(new File(folder, "lib/foo.jar"), new ConfigFromProperties(folder, stored).getClasspath().get(0));
+        new Folder(folder).delete();
+    }
 }
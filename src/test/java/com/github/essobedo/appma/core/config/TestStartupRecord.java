@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2016 essobedo.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.github.essobedo.appma.core.config;
+
+import java.io.File;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Nicolas Filotto (nicolas.filotto@gmail.com)
+ * @version $Id$
+ * @since 1.1.3
+ */
+public class TestStartupRecord {
+
+    @Test
+    public void testStartupRecord() throws Exception {
+        File file = File.createTempFile("TestStartupRecord", "startup");
+        try {
+            assertTrue(file.delete());
+            StartupRecord record = new StartupRecord(file);
+            assertNull(record.get("foo"));
+            record.store();
+            assertFalse(file.exists());
+            record.set("foo", "bar");
+            assertEquals("bar", record.get("foo"));
+            record.store();
+            assertTrue(file.exists());
+            record = new StartupRecord(file);
+            assertEquals("bar", record.get("foo"));
+            record.set("foo", null);
+            record.store();
+            assertNull(new StartupRecord(file).get("foo"));
+        } finally {
+            file.delete();
+        }
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright (C) 2016 essobedo.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.github.essobedo.appma.core.io;
+
+import com.github.essobedo.appma.core.zip.ZipFile;
+import java.io.File;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import org.junit.Test;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Nicolas Filotto (nicolas.filotto@gmail.com)
+ * @version $Id$
+ * @since 1.1.3
+ */
+public class TestContentStore {
+
+    @Test
+    public void testCopyAndAdd() throws Exception {
+        Path tempDir = Files.createTempDirectory("TestContentStore");
+        ContentStore store = new ContentStore(new File(tempDir.toFile(), "store"));
+        Path source = tempDir.resolve("foo.jar");
+        Files.write(source, "foo".getBytes(StandardCharsets.UTF_8));
+        Path copy = tempDir.resolve("copy.jar");
+        assertTrue(store.copy(source, copy));
+        String hash = ContentStore.hash(source);
+        assertEquals(64, hash.length());
+        Path blob = tempDir.resolve("store").resolve(hash.substring(0, 2)).resolve(hash);
+        assertTrue(Files.isSameFile(blob, copy));
+        // The blob is a read-only private copy
+        assertFalse(Files.isSameFile(source, copy));
+        assertFalse(Files.getPosixFilePermissions(blob).contains(PosixFilePermission.OWNER_WRITE));
+
+        // Identical content extracted elsewhere is replaced with a link
+        Path other = tempDir.resolve("other.jar");
+        Files.write(other, "foo".getBytes(StandardCharsets.UTF_8));
+        assertFalse(Files.isSameFile(blob, other));
+        assertTrue(store.add(other));
+        assertTrue(Files.isSameFile(blob, other));
+        assertArrayEquals("foo".getBytes(StandardCharsets.UTF_8), Files.readAllBytes(other));
+
+        // Only the jar files are stored
+        Path text = tempDir.resolve("foo.txt");
+        Files.write(text, "foo".getBytes(StandardCharsets.UTF_8));
+        Path textCopy = tempDir.resolve("copy.txt");
+        assertFalse(store.copy(text, textCopy));
+        assertFalse(Files.isSameFile(text, textCopy));
+        assertFalse(store.add(text));
+        new Folder(tempDir.toFile()).delete();
+    }
+
+    @Test
+    public void testLinkedFileReplaced() throws Exception {
+        Path tempDir = Files.createTempDirectory("TestContentStore");
+        File folder = new File(tempDir.toFile(), "store");
+        Path source = tempDir.resolve("source");
+        Files.createDirectories(source);
+        Files.write(source.resolve("foo.jar"), "foo".getBytes(StandardCharsets.UTF_8));
+        File install1 = tempDir.resolve("install1").toFile();
+        File install2 = tempDir.resolve("install2").toFile();
+        Path patch = tempDir.resolve("patch.zip");
+        try (OutputStream out = Files.newOutputStream(patch); ZipOutputStream zip = new ZipOutputStream(out)) {
+            zip.putNextEntry(new ZipEntry("foo.jar"));
+            zip.write("bar".getBytes(StandardCharsets.UTF_8));
+            zip.closeEntry();
+        }
+        try {
+            System.setProperty("essobedo.appma.core.store", folder.getAbsolutePath());
+            new Folder(source.toFile()).copy(install1);
+            new Folder(source.toFile()).copy(install2);
+            assertTrue(Files.isSameFile(install1.toPath().resolve("foo.jar"), install2.toPath().resolve("foo.jar")));
+            // The jar file of the second installation is rewritten by the extraction of a patch
+            new ZipFile(patch.toFile()).unzip(install2);
+        } finally {
+            System.clearProperty("essobedo.appma.core.store");
+        }
+        assertArrayEquals("bar".getBytes(StandardCharsets.UTF_8),
+            Files.readAllBytes(install2.toPath().resolve("foo.jar")));
+        // The first installation and the blob are left untouched
+        assertArrayEquals("foo".getBytes(StandardCharsets.UTF_8),
+            Files.readAllBytes(install1.toPath().resolve("foo.jar")));
+        String hash = ContentStore.hash(source.resolve("foo.jar"));
+        assertEquals(hash, ContentStore.hash(folder.toPath().resolve(hash.substring(0, 2)).resolve(hash)));
+        new Folder(tempDir.toFile()).delete();
+    }
+
+    @Test
+    public void testModifiedBlobReplaced() throws Exception {
+        Path tempDir = Files.createTempDirectory("TestContentStore");
+        ContentStore store = new ContentStore(new File(tempDir.toFile(), "store"));
+        Path source = tempDir.resolve("foo.jar");
+        Files.write(source, "foo".getBytes(StandardCharsets.UTF_8));
+        assertTrue(store.copy(source, tempDir.resolve("copy.jar")));
+        String hash = ContentStore.hash(source);
+        Path blob = tempDir.resolve("store").resolve(hash.substring(0, 2)).resolve(hash);
+        assertTrue(blob.toFile().setWritable(true));
+        Files.write(blob, "bar".getBytes(StandardCharsets.UTF_8));
+        Path copy = tempDir.resolve("copy2.jar");
+        assertTrue(store.copy(source, copy));
+        assertArrayEquals("foo".getBytes(StandardCharsets.UTF_8), Files.readAllBytes(copy));
+        assertEquals(hash, ContentStore.hash(blob));
+        new Folder(tempDir.toFile()).delete();
+    }
+
+    @Test
+    public void testCollectGarbage() throws Exception {
+        Path tempDir = Files.createTempDirectory("TestContentStore");
+        File folder = new File(tempDir.toFile(), "store");
+        ContentStore store = new ContentStore(folder);
+        assertEquals(0, store.collectGarbage());
+        Path foo = tempDir.resolve("foo.jar");
+        Files.write(foo, "foo".getBytes(StandardCharsets.UTF_8));
+        Path bar = tempDir.resolve("bar.jar");
+        Files.write(bar, "bar".getBytes(StandardCharsets.UTF_8));
+        assertTrue(store.add(foo));
+        assertTrue(store.add(bar));
+        assertTrue(store.copy(foo, tempDir.resolve("foo2.jar")));
+        assertEquals(0, store.collectGarbage());
+        Files.delete(bar);
+        assertEquals(1, store.collectGarbage());
+        Files.delete(foo);
+        // Still used by the copy
+        assertEquals(0, store.collectGarbage());
+        Files.delete(tempDir.resolve("foo2.jar"));
+        assertEquals(1, store.collectGarbage());
+        new Folder(tempDir.toFile()).delete();
+    }
+
+    @Test
+    public void testShared() throws Exception {
+        assertNull(ContentStore.getShared());
+        Path tempDir = Files.createTempDirectory("TestContentStore");
+        Path source = tempDir.resolve("source");
+        Files.createDirectories(source.resolve("lib"));
+        Files.write(source.resolve("lib/foo.jar"), "foo".getBytes(StandardCharsets.UTF_8));
+        Files.write(source.resolve("foo.txt"), "foo".getBytes(StandardCharsets.UTF_8));
+        File store = new File(tempDir.toFile(), "store");
+        try {
+            System.setProperty("essobedo.appma.core.store", store.getAbsolutePath());
+            assertEquals(store, ContentStore.getShared().getFolder());
+            new Folder(source.toFile()).copy(tempDir.resolve("target").toFile());
+            new ParallelCopyTask(source.toFile(), tempDir.resolve("target2").toFile(), 2).execute();
+        } finally {
+            System.clearProperty("essobedo.appma.core.store");
+        }
+        assertTrue(Files.isSameFile(tempDir.resolve("target/lib/foo.jar"), tempDir.resolve("target2/lib/foo.jar")));
+        assertFalse(Files.isSameFile(source.resolve("lib/foo.jar"), tempDir.resolve("target/lib/foo.jar")));
+        assertFalse(Files.isSameFile(source.resolve("foo.txt"), tempDir.resolve("target/foo.txt")));
+        assertFalse(Files.isSameFile(source.resolve("foo.txt"), tempDir.resolve("target2/foo.txt")));
+        new Folder(tempDir.toFile()).delete();
+    }
+}
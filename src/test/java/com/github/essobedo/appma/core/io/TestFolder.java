@@ -19,8 +19,10 @@
 package com.github.essobedo.appma.core.io;
 
 import java.io.File;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Arrays;
 import org.junit.Test;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
@@ -53,6 +55,104 @@ public class TestFolder {
         assertFalse(target.exists());
     }
 
+    @Test
+    public void testCopyExcluded() throws Exception {
+        Path tempDir = Files.createTempDirectory("TestFolder");
+        File source = new File(TestFolder.class.getResource("/folder").toURI());
+        Folder folder = new Folder(source);
+        File target = new File(tempDir.toString());
+        folder.copy(target, new File(source, "subfolder1"));
+        assertEquals(1, target.list().length);
+        assertTrue(new File(target, "test.properties").isFile());
+        assertFalse(new File(target, "subfolder1").exists());
+        new Folder(target).delete();
+    }
+
+    @Test
+    public void testSyncTo() throws Exception {
+        Path tempDir = Files.createTempDirectory("TestFolder");
+        Folder folder = new Folder(new File(TestFolder.class.getResource("/folder").toURI()));
+        File target = new File(tempDir.toString(), "target");
+        SyncSummary summary = folder.syncTo(target);
+        assertEquals(2, summary.getAdded());
+        assertEquals(0, summary.getUnchanged());
+        assertEquals(42L, summary.getBytesCopied());
+        assertTrue(new File(target, "subfolder1/foo.properties").isFile());
+
+        summary = folder.syncTo(target);
+        assertEquals(0, summary.getAdded());
+        assertEquals(0, summary.getUpdated());
+        assertEquals(2, summary.getUnchanged());
+        assertEquals(0L, summary.getBytesCopied());
+
+        File changed = new File(target, "test.properties");
+        long lastModified = changed.lastModified();
+        Files.write(changed.toPath(), "init=3.0\ndestroy=3.0\n".getBytes(StandardCharsets.UTF_8));
+        assertTrue(changed.setLastModified(lastModified));
+        assertTrue(new File(target, "extra").mkdir());
+        assertTrue(new File(target, "extra/foo.txt").createNewFile());
+        assertTrue(new File(target, "extra.txt").createNewFile());
+        assertTrue(new File(target, "excluded").mkdir());
+        summary = folder.syncTo(target, new File(target, "excluded"));
+        // Same size and same last modification time
+        assertEquals(2, summary.getUnchanged());
+        assertEquals(2, summary.getDeleted());
+        assertFalse(new File(target, "extra").exists());
+        assertFalse(new File(target, "extra.txt").exists());
+        assertTrue(new File(target, "excluded").exists());
+
+        summary = folder.syncTo(target, true, new File(target, "excluded"));
+        assertEquals(1, summary.getUpdated());
+        assertEquals(1, summary.getUnchanged());
+        assertEquals(0, summary.getDeleted());
+        assertEquals(3, target.list().length);
+        new Folder(tempDir.toFile()).delete();
+    }
+
+    @Test
+    public void testSyncToMoreRecent() throws Exception {
+        Path tempDir = Files.createTempDirectory("TestFolder");
+        File source = new File(tempDir.toString(), "source");
+        assertTrue(source.mkdir());
+        byte[] content = new byte[20000];
+        Arrays.fill(content, (byte) 1);
+        Files.write(new File(source, "foo.jar").toPath(), content);
+        File target = new File(tempDir.toString(), "target");
+        assertEquals(1, new Folder(source).syncTo(target).getAdded());
+        assertEquals(1, new Folder(source).syncTo(target).getUnchanged());
+
+        // Like a freshly extracted patch, the source is more recent than the copy
+        File file = new File(source, "foo.jar");
+        assertTrue(file.setLastModified(new File(target, "foo.jar").lastModified() + 10000L));
+        SyncSummary summary = new Folder(source).syncTo(target, true);
+        assertEquals(1, summary.getUnchanged());
+        assertEquals(0L, summary.getBytesCopied());
+        assertEquals(1, new Folder(source).syncTo(target).getUpdated());
+
+        // Only the last byte differs
+        content[content.length - 1] = 2;
+        Files.write(file.toPath(), content);
+        summary = new Folder(source).syncTo(target, true);
+        assertEquals(1, summary.getUpdated());
+        assertEquals(20000L, summary.getBytesCopied());
+        new Folder(tempDir.toFile()).delete();
+    }
+
+    @Test
+    public void testForce() throws Exception {
+        Path tempDir = Files.createTempDirectory("TestFolder");
+        File target = new File(tempDir.toString(), "target");
+        new Folder(new File(TestFolder.class.getResource("/folder").toURI())).copy(target);
+        new Folder(target).force();
+        Folder.force(new File(target, "test.properties"));
+        Folder.force(target);
+        // Only the recent modifications out of the excluded folder
+        new Folder(target).force(System.currentTimeMillis() - 2000L, new File(target, "subfolder1"));
+        new Folder(target).force(Long.MAX_VALUE);
+        assertTrue(new File(target, "subfolder1/foo.properties").isFile());
+        new Folder(tempDir.toFile()).delete();
+    }
+
     @Test
     public void testActionsFailure() throws Exception {
         Path tempDir = Files.createTempDirectory("TestFolder");
@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2016 essobedo.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.github.essobedo.appma.core.io;
+
+import java.io.File;
+import org.junit.Test;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Nicolas Filotto (nicolas.filotto@gmail.com)
+ * @version $Id$
+ * @since 1.1.3
+ */
+public class TestMemoryArena {
+
+    @Test
+    public void testSegments() throws Exception {
+        File file = File.createTempFile("TestMemoryArena", "arena");
+        try {
+            // Segments of 16 bytes
+            MemoryArena arena = new MemoryArena(file, 40L, 4);
+            assertEquals(40L, file.length());
+            arena.putLong(12L, Long.MAX_VALUE);
+            arena.putInt(30L, 42);
+            arena.putByte(39L, (byte) 7);
+            byte[] content = new byte[40];
+            for (int i = 0; i < content.length; i++) {
+                content[i] = (byte) i;
+            }
+            arena.put(0L, content, 0, 12);
+            assertEquals(Long.MAX_VALUE, arena.getLong(12L));
+            assertEquals(42, arena.getInt(30L));
+            assertEquals((byte) 7, arena.getByte(39L));
+            arena.put(0L, content, 0, content.length);
+            byte[] result = new byte[content.length];
+            arena.get(0L, result, 0, result.length);
+            assertArrayEquals(content, result);
+            arena.close();
+
+            arena = new MemoryArena(file, 40L, 4);
+            result = new byte[content.length];
+            arena.get(0L, result, 0, result.length);
+            assertArrayEquals(content, result);
+            try {
+                arena.getByte(40L);
+                fail("An IndexOutOfBoundsException was expected");
+            } catch (IndexOutOfBoundsException e) {
+                // expected
+            }
+            try {
+                arena.get(30L, result, 0, 11);
+                fail("An IndexOutOfBoundsException was expected");
+            } catch (IndexOutOfBoundsException e) {
+                // expected
+            }
+            arena.close();
+
+            arena = new MemoryArena(file, 20L, 4);
+            assertEquals(20L, file.length());
+            assertEquals((byte) 19, arena.getByte(19L));
+            arena.close();
+        } finally {
+            file.delete();
+        }
+    }
+}
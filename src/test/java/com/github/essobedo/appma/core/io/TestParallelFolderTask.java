@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2016 essobedo.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.github.essobedo.appma.core.io;
+
+import com.github.essobedo.appma.exception.ApplicationException;
+import com.github.essobedo.appma.exception.TaskInterruptedException;
+import java.io.File;
+import java.nio.file.Files;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Nicolas Filotto (nicolas.filotto@gmail.com)
+ * @version $Id$
+ * @since 1.1.3
+ */
+public class TestParallelFolderTask {
+
+    @Test
+    public void testActions() throws Exception {
+        File source = new File(TestParallelFolderTask.class.getResource("/folder").toURI());
+        File target = new File(Files.createTempDirectory("TestParallelFolderTask").toString(), "copy");
+        ParallelCopyTask copy = new ParallelCopyTask(source, target, 4);
+        copy.execute();
+        assertEquals(2, target.list().length);
+        assertTrue(new File(target, "subfolder1/foo.properties").isFile());
+        assertTrue(new File(target, "test.properties").isFile());
+        assertEquals(copy.getMax(), copy.getWorkDone());
+
+        ParallelDeleteTask delete = new ParallelDeleteTask(target, 4);
+        delete.execute();
+        assertFalse(target.exists());
+        // Nothing to delete
+        delete.execute();
+    }
+
+    @Test
+    public void testCopyExcluded() throws Exception {
+        File source = new File(TestParallelFolderTask.class.getResource("/folder").toURI());
+        File target = new File(Files.createTempDirectory("TestParallelFolderTask").toString(), "copy");
+        new ParallelCopyTask(source, target, 2, new File(source, "subfolder1")).execute();
+        assertEquals(1, target.list().length);
+        assertTrue(new File(target, "test.properties").isFile());
+        new ParallelDeleteTask(target.getParentFile(), 2).execute();
+    }
+
+    @Test
+    public void testCopyFailure() throws Exception {
+        File source = new File(TestParallelFolderTask.class.getResource("/folder").toURI());
+        File target = new File(Files.createTempDirectory("TestParallelFolderTask").toString(), "foo/copy");
+        try {
+            new ParallelCopyTask(source, target, 2).execute();
+            fail("An ApplicationException was expected");
+        } catch (ApplicationException e) {
+            assertEquals(1, e.getSuppressed().length);
+        }
+        assertFalse(target.exists());
+    }
+
+    @Test(expected = TaskInterruptedException.class)
+    public void testCancel() throws Exception {
+        File source = new File(TestParallelFolderTask.class.getResource("/folder").toURI());
+        File target = new File(Files.createTempDirectory("TestParallelFolderTask").toString(), "copy");
+        ParallelCopyTask copy = new ParallelCopyTask(source, target, 2);
+        copy.cancel();
+        copy.execute();
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2016 essobedo.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.github.essobedo.appma.core.io;
+
+import java.io.File;
+import java.nio.file.Files;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Nicolas Filotto (nicolas.filotto@gmail.com)
+ * @version $Id$
+ * @since 1.1.3
+ */
+public class TestTrash {
+
+    @Test
+    public void testDiscard() throws Exception {
+        File tempDir = new File(Files.createTempDirectory("TestTrash").toString());
+        File source = new File(TestTrash.class.getResource("/folder").toURI());
+        File folder = new File(tempDir, "folder");
+        new Folder(source).copy(folder);
+        File trashFolder = new File(tempDir, "trash");
+        Trash trash = new Trash(trashFolder, 4);
+        assertTrue(trash.discard(folder));
+        assertFalse(folder.exists());
+        assertTrue(waitForEmpty(trashFolder));
+        // Nothing to discard
+        assertTrue(trash.discard(folder));
+
+        new Folder(source).copy(folder);
+        new Folder(folder).delete(trash);
+        assertFalse(folder.exists());
+        assertTrue(waitForEmpty(trashFolder));
+        new Folder(tempDir).delete();
+    }
+
+    @Test
+    public void testSweep() throws Exception {
+        File tempDir = new File(Files.createTempDirectory("TestTrash").toString());
+        File trashFolder = new File(tempDir, "trash");
+        assertTrue(trashFolder.mkdir());
+        new Folder(new File(TestTrash.class.getResource("/folder").toURI())).copy(new File(trashFolder, "leftover"));
+        assertEquals(1, trashFolder.list().length);
+        new Trash(trashFolder).sweep();
+        assertTrue(waitForEmpty(trashFolder));
+        new Folder(tempDir).delete();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidParallelism() throws Exception {
+        new Trash(new File(Files.createTempDirectory("TestTrash").toString(), "trash"), 0);
+    }
+
+    private static boolean waitForEmpty(File folder) throws InterruptedException {
+        for (int i = 0; i < 100; i++) {
+            String[] content = folder.list();
+            if (content != null && content.length == 0) {
+                return true;
+            }
+            Thread.sleep(50L);
+        }
+        return false;
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2016 essobedo.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.github.essobedo.appma.core.loader;
+
+import java.io.File;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Nicolas Filotto (nicolas.filotto@gmail.com)
+ * @version $Id$
+ * @since 1.1.3
+ */
+public class TestClassList {
+
+    @Test
+    public void testStoreNLoad() throws Exception {
+        File file = File.createTempFile("TestClassList", "classlist");
+        try {
+            ClassList classList = new ClassList("1.0", "abc", Arrays.asList("com.foo.A", "com.foo.B"));
+            classList.store(file);
+            ClassList result = ClassList.load(file);
+            assertNotNull(result);
+            assertEquals("1.0", result.getVersion());
+            assertEquals("abc", result.getFingerprint());
+            assertEquals(Arrays.asList("com.foo.A", "com.foo.B"), result.getClassNames());
+        } finally {
+            file.delete();
+        }
+        assertNull(ClassList.load(file));
+    }
+
+    @Test
+    public void testFingerprint() throws Exception {
+        File root = new File(TestClassList.class.getResource("/").toURI());
+        File test1 = new File(root, "app.dep.ok1/test1.jar");
+        File test2 = new File(root, "app.dep.ok1/test2.jar");
+        assertEquals(ClassList.fingerprint(Arrays.asList(test1, test2)),
+            ClassList.fingerprint(Arrays.asList(test1, test2)));
+        assertNotEquals(ClassList.fingerprint(Arrays.asList(test1, test2)),
+            ClassList.fingerprint(Arrays.asList(test2, test1)));
+    }
+
+    @Test
+    public void testRecordNPreload() throws Exception {
+        File root = new File(TestClassList.class.getResource("/").toURI());
+        URL[] urls = {new File(root, "app.dep.ok1/test1.jar").toURI().toURL(),
+            new File(root, "app.dep.ok1/test2.jar").toURI().toURL()};
+        ClassListRecorder recorder = new ClassListRecorder();
+        try (GuestClassLoader classLoader = new GuestClassLoader(urls, TestClassList.class.getClassLoader(),
+            recorder)) {
+            classLoader.loadClass("com.github.essobedo.foo.FooDep");
+            classLoader.loadClass("com.github.essobedo.foo.Dep");
+        }
+        List<String> classNames = recorder.stop();
+        assertEquals(Arrays.asList("com.github.essobedo.foo.FooDep", "com.github.essobedo.foo.Dep"), classNames);
+        ClassListRecorder listener = new ClassListRecorder();
+        try (GuestClassLoader classLoader = new GuestClassLoader(urls, TestClassList.class.getClassLoader(),
+            listener)) {
+            ClassPreloader preloader = new ClassPreloader(classLoader, classNames);
+            preloader.start();
+            assertTrue(preloader.await(10L, TimeUnit.SECONDS));
+            assertEquals(2, listener.stop().size());
+        }
+    }
+}
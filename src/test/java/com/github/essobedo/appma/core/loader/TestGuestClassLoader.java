@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2016 essobedo.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.github.essobedo.appma.core.loader;
+
+import java.io.File;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Nicolas Filotto (nicolas.filotto@gmail.com)
+ * @version $Id$
+ * @since 1.1.3
+ */
+public class TestGuestClassLoader {
+
+    @Test
+    public void testProfiling() throws Exception {
+        ClassLoadingProfiler profiler = new ClassLoadingProfiler();
+        URL test1 = getURL("app.dep.ok1/test1.jar");
+        URL test2 = getURL("app.dep.ok1/test2.jar");
+        try (GuestClassLoader classLoader = new GuestClassLoader(new URL[]{test1, test2},
+            TestGuestClassLoader.class.getClassLoader(), profiler)) {
+            Class<?> clazz = classLoader.loadClass("com.github.essobedo.foo.FooDep");
+            assertSame(classLoader, clazz.getClassLoader());
+            assertEquals("com.github.essobedo.foo", clazz.getPackage().getName());
+            assertSame(clazz, classLoader.loadClass("com.github.essobedo.foo.FooDep"));
+            classLoader.loadClass("com.github.essobedo.foo.Dep");
+        }
+        String report = profiler.getReport(10);
+        assertTrue(report.contains("com.github.essobedo.foo.FooDep"));
+        assertTrue(report.contains("com.github.essobedo.foo.Dep"));
+        assertTrue(report.contains(test1.toString()));
+        File file = File.createTempFile("TestGuestClassLoader", "csv");
+        try {
+            profiler.writeReport(file);
+            List<String> lines = Files.readAllLines(file.toPath());
+            assertEquals(5, lines.size());
+            assertEquals("type,name,source,size,read,define,load,init,hits", lines.get(0));
+            assertTrue(lines.contains(String.format("source,%s,%s,1963,,,,,1", test1, test1)));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testCsvEscaping() {
+        assertEquals("com.github.essobedo.foo.Foo", ClassLoadingProfiler.escape("com.github.essobedo.foo.Foo"));
+        assertEquals("\"file:/a,b/test1.jar\"", ClassLoadingProfiler.escape("file:/a,b/test1.jar"));
+        assertEquals("\"file:/a\"\"b/test1.jar\"", ClassLoadingProfiler.escape("file:/a\"b/test1.jar"));
+        assertEquals("", ClassLoadingProfiler.escape(null));
+    }
+
+    @Test
+    public void testNoListener() throws Exception {
+        try (GuestClassLoader classLoader = new GuestClassLoader(new URL[]{getURL("app.dep.ok1/test1.jar")},
+            TestGuestClassLoader.class.getClassLoader())) {
+            Class<?> clazz = classLoader.loadClass("com.github.essobedo.foo.FooDep");
+            assertSame(classLoader, clazz.getClassLoader());
+        }
+    }
+
+    private static URL getURL(String path) throws Exception {
+        return new File(new File(TestGuestClassLoader.class.getResource("/").toURI()), path).toURI().toURL();
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2016 essobedo.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.github.essobedo.appma.core.util;
+
+import com.github.essobedo.appma.exception.InvalidPatchException;
+import java.io.File;
+import java.net.JarURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.jar.JarFile;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Nicolas Filotto (nicolas.filotto@gmail.com)
+ * @version $Id$
+ * @since 1.1.3
+ */
+public class TestClassVerifier {
+
+    @Test
+    public void testVerifyFolder() throws Exception {
+        ClassVerifier verifier = new ClassVerifier(TestClassVerifier.class.getClassLoader(),
+            new URL[]{getURL("app.ok")});
+        assertTrue(verifier.verify().isEmpty());
+    }
+
+    @Test
+    public void testVerifyJarWithDependency() throws Exception {
+        ClassVerifier verifier = new ClassVerifier(TestClassVerifier.class.getClassLoader(),
+            new URL[]{getURL("app.dep.ok1/test1.jar")}, getURL("app.dep.ok1/test2.jar"));
+        assertTrue(verifier.verify().isEmpty());
+    }
+
+    @Test
+    public void testVerifyMissingDependency() throws Exception {
+        ClassVerifier verifier = new ClassVerifier(TestClassVerifier.class.getClassLoader(),
+            new URL[]{getURL("app.dep.ko1/test1.jar")});
+        List<String> errors = verifier.verify();
+        assertEquals(1, errors.size());
+        assertTrue(errors.get(0).contains("com.github.essobedo.foo.FooDep"));
+    }
+
+    @Test
+    public void testVerifyKeepsSharedJarFiles() throws Exception {
+        URL dependency = getURL("app.dep.ok1/test2.jar");
+        // The jar file is cached as it would be by the running version
+        JarURLConnection connection = (JarURLConnection) new URL(String.format("jar:%s!/", dependency))
+            .openConnection();
+        JarFile jarFile = connection.getJarFile();
+        ClassVerifier verifier = new ClassVerifier(TestClassVerifier.class.getClassLoader(),
+            new URL[]{getURL("app.dep.ok1/test1.jar")}, dependency);
+        assertTrue(verifier.verify().isEmpty());
+        // The cached jar file is still open and still shared
+        assertNotNull(jarFile.entries().nextElement());
+        assertSame(jarFile, ((JarURLConnection) new URL(String.format("jar:%s!/", dependency)).openConnection())
+            .getJarFile());
+    }
+
+    @Test
+    public void testVerifyInvalidJar() throws Exception {
+        File file = File.createTempFile("TestClassVerifier", ".jar");
+        try {
+            Files.write(file.toPath(), "not a jar".getBytes(StandardCharsets.UTF_8));
+            new ClassVerifier(TestClassVerifier.class.getClassLoader(), new URL[]{file.toURI().toURL()}).verify();
+            fail("An InvalidPatchException was expected");
+        } catch (InvalidPatchException e) {
+            // expected
+        } finally {
+            file.delete();
+        }
+    }
+
+    private static URL getURL(String path) throws Exception {
+        return new File(new File(TestClassVerifier.class.getResource("/").toURI()), path).toURI().toURL();
+    }
+}
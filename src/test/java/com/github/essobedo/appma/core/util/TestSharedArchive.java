@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2016 essobedo.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.github.essobedo.appma.core.util;
+
+import com.github.essobedo.appma.exception.ApplicationException;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.Assume;
+import org.junit.Test;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Nicolas Filotto (nicolas.filotto@gmail.com)
+ * @version $Id$
+ * @since 1.1.3
+ */
+public class TestSharedArchive {
+
+    @Test
+    public void testGenerate() throws Exception {
+        Assume.assumeTrue(SharedArchive.isSupported());
+        File root = new File(TestSharedArchive.class.getResource("/").toURI());
+        List<File> classpath = Arrays.asList(new File(root, "app.dep.ok1/test1.jar"),
+            new File(root, "app.dep.ok1/test2.jar"));
+        File folder = Files.createTempDirectory("TestSharedArchive").toFile();
+        SharedArchive archive = new SharedArchive(new File(folder, "appma.jsa"));
+        try {
+            assertFalse(archive.isUpToDate("1.0"));
+            assertTrue(archive.generate(classpath, "1.0").get(60L, TimeUnit.SECONDS));
+            assertTrue(archive.getArchive().isFile());
+            assertTrue(archive.isUpToDate("1.0"));
+            assertFalse(archive.isUpToDate("2.0"));
+            assertFalse(archive.isInUse());
+        } finally {
+            for (File file : folder.listFiles()) {
+                file.delete();
+            }
+            folder.delete();
+        }
+    }
+
+    @Test
+    public void testGenerateFolder() throws Exception {
+        Assume.assumeTrue(SharedArchive.isSupported());
+        File root = new File(TestSharedArchive.class.getResource("/").toURI());
+        SharedArchive archive = new SharedArchive(File.createTempFile("TestSharedArchive", "jsa"));
+        try {
+            archive.generate(Collections.singletonList(new File(root, "app.ok")), "1.0");
+            fail("An ApplicationException is expected");
+        } catch (ApplicationException e) {
+            // expected
+        } finally {
+            archive.getArchive().delete();
+        }
+    }
+}